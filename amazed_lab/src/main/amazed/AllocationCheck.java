@@ -0,0 +1,253 @@
+package amazed;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.sun.management.ThreadMXBean;
+
+import amazed.maze.CellLayout;
+import amazed.maze.Maze;
+
+
+// allocation regression check of map loading, neighbor queries and solvers
+//
+// Every metric is the number of bytes allocated on the heap by all
+// threads, from ThreadMXBean, per unit of work: per cell of the map
+// for loading, per call of Maze.neighbors, and per node visited by a
+// solver, for every solver of SOLVERS on every cell layout. Every
+// metric is measured `RUNS' times after `WARMUP_RUNS' unmeasured
+// runs, for the JIT compiler to settle, and the median is compared to
+// the budget of the metric in a properties file; any metric over its
+// budget, or without one, fails the check.
+//
+// Nodes visited are those onto which players moved, as recorded by
+// Maze.recordVisits, and at least the nodes of the path found: solvers
+// that move over few of the nodes they search, such as the bitboard
+// solver, have a high allocation per node, which is only compared to
+// their own budget.
+class AllocationCheck
+{
+    static final String DEFAULT_FILE = "allocation-budgets.properties";
+
+    static final String USAGE =
+        "usage: java " + Main.class.getName() + " alloc MAP [BUDGETS] [MODE]\n"
+        + "\n"
+        + " MAP            filename with map file\n"
+        + " BUDGETS        properties file with the budget of every metric, in bytes\n"
+        + "                (default: " + DEFAULT_FILE + ")\n"
+        + " MODE           'check' (default): exit with status 1 if any metric is over\n"
+        + "                its budget, or 'record': save the measures, with some headroom,\n"
+        + "                as the new budgets";
+
+    // solvers measured, by name as in Solvers
+    private static final List<String> SOLVERS =
+        Arrays.asList("sequential", "primitive", "bfs", "bidirectional", "jps", "bitboard",
+                      "dijkstra", "delta", "hpa", "parallel-9", "steal");
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+    // recorded budgets exceed the measures by this fraction, and by at least SLACK bytes
+    private static final double HEADROOM = 0.25;
+    private static final double SLACK = 4;
+
+    private final String map;
+    private final ThreadMXBean threads =
+        (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // bytes allocated by the threads that solvers started outside of the pool, which end with the search
+    private final AtomicLong ended = new AtomicLong();
+    // bytes that a call of allocated() allocates itself
+    private final long overhead;
+
+    // measures, by metric, in the order measured
+    private final Map<String, Double> measures = new LinkedHashMap<>();
+
+    AllocationCheck(String map)
+    {
+        this.map = map;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Error: this JVM does not measure the memory allocated by threads");
+            System.exit(1);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        allocated();
+        long start = allocated();
+        overhead = allocated() - start;
+    }
+
+    // measure all metrics on every layout, then check them against,
+    // or record them as, the budgets in `file'; exit with status 1 if
+    // the check fails
+    void run(String file, boolean record)
+    throws IOException
+    {
+        for (CellLayout layout: CellLayout.values()) {
+            String suffix = "." + layout.name().toLowerCase().replace('_', '-');
+            Maze maze = measureLoad(layout, "load" + suffix);
+            maze.setDelay(-1);
+            measureNeighbors(maze, "neighbors" + suffix);
+            for (String name: SOLVERS)
+                measureSolver(maze, factory(name), "visit." + name + suffix);
+        }
+        if (record)
+            save(file);
+        else if (!check(file))
+            System.exit(1);
+    }
+
+    // bytes per cell of loading the map in `layout'; the last maze loaded
+    private Maze measureLoad(CellLayout layout, String metric)
+    {
+        double[] bytes = new double[RUNS];
+        Maze maze = null;
+        for (int i = -WARMUP_RUNS; i < RUNS; i++) {
+            long start = allocated();
+            maze = new Maze(map, layout);
+            long used = allocatedSince(start);
+            if (i >= 0)
+                bytes[i] = (double) used/maze.cells();
+        }
+        report(metric, bytes, "cell");
+        return maze;
+    }
+
+    // bytes per call of neighbors, over all accessible nodes of `maze'
+    private void measureNeighbors(Maze maze, String metric)
+    {
+        double[] bytes = new double[RUNS];
+        for (int i = -WARMUP_RUNS; i < RUNS; i++) {
+            long calls = 0;
+            long start = allocated();
+            for (int cell = 0; cell < maze.cells(); cell++) {
+                int id = maze.cellId(cell);
+                if (maze.isAccessible(id)) {
+                    maze.neighbors(id);
+                    calls += 1;
+                }
+            }
+            long used = allocatedSince(start);
+            if (i >= 0)
+                bytes[i] = (double) used/Math.max(calls, 1);
+        }
+        report(metric, bytes, "call");
+    }
+
+    // bytes per node visited by searches of `maze' in the common pool
+    private void measureSolver(Maze maze, Function<Maze, RecursiveTask<List<Integer>>> factory,
+                               String metric)
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        double[] bytes = new double[RUNS];
+        for (int i = -WARMUP_RUNS; i < RUNS; i++) {
+            RecursiveTask<List<Integer>> solver = factory.apply(maze);
+            maze.recordVisits();
+            long start = allocated();
+            List<Integer> path = pool.invoke(solver);
+            long used = allocatedSince(start);
+            if (path == null && maze.canReachGoal(maze.start()))
+                throw new IllegalStateException(metric + ": solver missed a reachable goal");
+            if (i >= 0)
+                bytes[i] = (double) used/Math.max(maze.visitedNodes(), path == null ? 1 : path.size());
+        }
+        report(metric, bytes, "node");
+    }
+
+    // factory of solver `name', whose threads outside of the pool add
+    // what they allocated to `ended' when they end
+    private Function<Maze, RecursiveTask<List<Integer>>> factory(String name)
+    {
+        return Solvers.byName(name, task -> new Thread(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        ended.addAndGet(threads.getCurrentThreadAllocatedBytes());
+                    }
+                }));
+    }
+
+    // bytes allocated so far by all live threads, and by the ended workers
+    private long allocated()
+    {
+        long total = ended.get();
+        for (long bytes: threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            if (bytes > 0)
+                total += bytes;
+        return total;
+    }
+
+    // bytes allocated since allocated() returned `start', without the
+    // bytes of the calls of allocated() themselves
+    private long allocatedSince(long start)
+    {
+        return allocated() - start - overhead;
+    }
+
+    private void report(String metric, double[] bytes, String unit)
+    {
+        Arrays.sort(bytes);
+        double median = bytes[bytes.length/2];
+        measures.put(metric, median);
+        System.out.printf("%-36s %12.1f bytes/%s%n", metric, median, unit);
+    }
+
+    // whether every measure is within its budget in `file'
+    private boolean check(String file)
+    throws IOException
+    {
+        Properties budgets = new Properties();
+        try (Reader in = Files.newBufferedReader(Paths.get(file))) {
+            budgets.load(in);
+        } catch (NoSuchFileException e) {
+            System.err.println("Error: no allocation budgets in " + file);
+            return false;
+        }
+        int failures = 0;
+        for (Map.Entry<String, Double> measure: measures.entrySet()) {
+            String budget = budgets.getProperty(measure.getKey());
+            if (budget == null) {
+                System.err.println("Error: no budget for " + measure.getKey());
+                failures += 1;
+            } else if (measure.getValue() > Double.parseDouble(budget)) {
+                System.err.printf("Error: %s allocates %.1f bytes, over its budget of %s%n",
+                                  measure.getKey(), measure.getValue(), budget);
+                failures += 1;
+            }
+        }
+        if (failures > 0)
+            System.err.println("Error: " + failures + " of " + measures.size()
+                               + " allocation metrics over budget");
+        else
+            System.out.println("All " + measures.size() + " allocation metrics within budget");
+        return failures == 0;
+    }
+
+    // write the measures, plus headroom, as the budgets in `file', in
+    // the order measured
+    private void save(String file)
+    throws IOException
+    {
+        try (Writer out = Files.newBufferedWriter(Paths.get(file))) {
+            out.write("# bytes allocated per map-load cell, per neighbors() call and per visited node,\n");
+            out.write("# recorded on " + map + "\n");
+            for (Map.Entry<String, Double> measure: measures.entrySet()) {
+                double value = measure.getValue();
+                double budget = Math.ceil(Math.max(value*(1 + HEADROOM), value + SLACK));
+                out.write(measure.getKey() + "=" + (long) budget + "\n");
+            }
+        }
+        System.out.println("Budgets saved to " + file);
+    }
+}
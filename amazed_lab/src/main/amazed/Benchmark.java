@@ -0,0 +1,172 @@
+package amazed;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import amazed.maze.CellLayout;
+import amazed.maze.Maze;
+
+
+// scaling sweep of a solver over dedicated pools of increasing parallelism
+//
+// For every parallelism level from 1 to maxParallelism, the solver
+// runs on a fresh ForkJoinPool with that parallelism: first `warmup'
+// unmeasured runs, then `runs' measured ones. Every measured run
+// records its wall-clock time and the CPU time of all the pool's
+// worker threads, from ThreadMXBean; workers that the pool retires
+// during a run count the CPU time they had when they ended.
+class Benchmark
+{
+    static final int DEFAULT_RUNS = 15;
+
+    static final String USAGE =
+        "usage: java " + Main.class.getName() + " bench MAP [SOLVER] [MAXPARALLELISM] [RUNS] [LAYOUT]\n"
+        + "\n"
+        + " MAP            filename with map file\n"
+        + " SOLVER         solver, as in the first usage (default: parallel-3)\n"
+        + " MAXPARALLELISM largest parallelism level measured (default: available processors)\n"
+        + " RUNS           measured runs per level (default: " + DEFAULT_RUNS + ")\n"
+        + " LAYOUT         order of the cells in memory: 'row-major' (default), 'morton',\n"
+        + "                or 'hilbert'";
+
+    // unmeasured runs per level, for the JIT compiler to settle
+    private static final int WARMUP_RUNS = 5;
+
+    private final Maze maze;
+    private final Function<Maze, RecursiveTask<List<Integer>>> solverFactory;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    // CPU time of the pool workers that ended, and of the threads that
+    // solvers started outside of the pool, which end with the search;
+    // guarded by this, with the set of live workers
+    private long endedCpuTime = 0;
+
+    // benchmark of the solver called `solverName', which must exist
+    Benchmark(String map, String solverName, CellLayout layout)
+    {
+        this.maze = new Maze(map, layout);
+        this.maze.setDelay(-1);
+        this.solverFactory = Solvers.byName(solverName, this::newSolverThread);
+        if (threads.isThreadCpuTimeSupported())
+            threads.setThreadCpuTimeEnabled(true);
+    }
+
+    // thread of a solver, which adds its CPU time to endedCpuTime when it ends
+    private Thread newSolverThread(Runnable task)
+    {
+        return new Thread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    threadEnded(null);
+                }
+            });
+    }
+
+    // add the CPU time of the current thread, which is ending, to
+    // endedCpuTime, and remove it from `workers' if it is one
+    private synchronized void threadEnded(Set<Thread> workers)
+    {
+        long time = threads.getCurrentThreadCpuTime();
+        if (time > 0)
+            endedCpuTime += time;
+        if (workers != null)
+            workers.remove(Thread.currentThread());
+    }
+
+    void run(int maxParallelism, int runs)
+    {
+        System.out.println("parallelism   median ms      p95 ms   speedup  efficiency   cpu ms/run");
+        double baseline = 0;
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism++) {
+            long[] wall = new long[runs];
+            long[] cpu = new long[runs];
+            measure(parallelism, runs, wall, cpu);
+            Arrays.sort(wall);
+            double median = percentile(wall, 0.50)/1e6;
+            double p95 = percentile(wall, 0.95)/1e6;
+            if (parallelism == 1)
+                baseline = median;
+            double speedup = baseline/median;
+            System.out.printf("%11d %11.3f %11.3f %9.2f %11.2f %12.3f%n",
+                              parallelism, median, p95, speedup, speedup/parallelism,
+                              Arrays.stream(cpu).average().orElse(0)/1e6);
+        }
+    }
+
+    private void measure(int parallelism, int runs, long[] wall, long[] cpu)
+    {
+        Set<Thread> workers = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread worker = new ForkJoinWorkerThread(p) {
+                        @Override
+                        protected void onTermination(Throwable exception)
+                        {
+                            threadEnded(workers);
+                        }
+                    };
+                workers.add(worker);
+                return worker;
+            }, null, false);
+        try {
+            for (int i = 0; i < WARMUP_RUNS; i++)
+                check(pool.invoke(newSolver()));
+            for (int i = 0; i < runs; i++) {
+                RecursiveTask<List<Integer>> solver = newSolver();
+                long cpuStart = cpuTime(workers);
+                long start = System.nanoTime();
+                List<Integer> path = pool.invoke(solver);
+                wall[i] = System.nanoTime() - start;
+                cpu[i] = cpuTime(workers) - cpuStart;
+                check(path);
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private RecursiveTask<List<Integer>> newSolver()
+    {
+        return solverFactory.apply(maze);
+    }
+
+    private void check(List<Integer> path)
+    {
+        if (path == null && maze.canReachGoal(maze.start()))
+            throw new IllegalStateException("solver missed a reachable goal");
+    }
+
+    // total CPU time of workers that are alive, and of the workers and
+    // solver threads that ended
+    private synchronized long cpuTime(Set<Thread> workers)
+    {
+        long total = endedCpuTime;
+        for (Thread worker: workers) {
+            long time = threads.getThreadCpuTime(worker.getId());
+            if (time > 0)
+                total += time;
+        }
+        return total;
+    }
+
+    // nearest-rank percentile of sorted values
+    private static long percentile(long[] sorted, double quantile)
+    {
+        int rank = (int) Math.ceil(quantile*sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,81 @@
+package amazed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import amazed.maze.Maze;
+import amazed.maze.MazeProfile;
+import amazed.solver.PortfolioSolver;
+import amazed.solver.SolverSelector;
+
+
+// calibration of the auto solver on the machine it runs on
+//
+// Every candidate of SolverSelector runs on every sample map, in the
+// common pool as in a normal search: first `WARMUP_RUNS' unmeasured
+// runs, then `runs' measured ones, whose median is kept. The selector
+// fitted to the medians is printed and saved, for the auto solver to
+// read.
+class Calibration
+{
+    static final int DEFAULT_RUNS = 3;
+
+    static final String USAGE =
+        "usage: java " + Main.class.getName() + " calibrate MAP...\n"
+        + "\n"
+        + " MAP            filename with a sample map; the thresholds of the 'auto' solver\n"
+        + "                are fitted to the times of its candidates on all the maps, and\n"
+        + "                saved to " + SolverSelector.DEFAULT_FILE;
+
+    // unmeasured runs per candidate, for the JIT compiler to settle
+    private static final int WARMUP_RUNS = 1;
+
+    static void run(List<String> maps, int runs)
+    throws IOException
+    {
+        List<PortfolioSolver.Strategy> candidates = SolverSelector.candidates();
+        List<MazeProfile> profiles = new ArrayList<>();
+        double[][] millis = new double[maps.size()][];
+        StringBuilder header = new StringBuilder(String.format("%-30s", "map"));
+        for (PortfolioSolver.Strategy candidate: candidates)
+            header.append(String.format(" %12s", candidate.name()));
+        System.out.println(header);
+        for (int m = 0; m < maps.size(); m++) {
+            Maze maze = new Maze(maps.get(m));
+            maze.setDelay(-1);
+            MazeProfile profile = maze.profile();
+            profiles.add(profile);
+            millis[m] = new double[candidates.size()];
+            StringBuilder line = new StringBuilder(String.format("%-30s", maps.get(m)));
+            for (int c = 0; c < candidates.size(); c++) {
+                millis[m][c] = median(maze, candidates.get(c), runs);
+                line.append(String.format(" %12.3f", millis[m][c]));
+            }
+            System.out.println(line);
+            System.out.println("    " + profile);
+        }
+        SolverSelector selector = SolverSelector.fit(profiles, millis);
+        System.out.println("Fitted: " + selector);
+        selector.save(SolverSelector.DEFAULT_FILE);
+    }
+
+    // median milliseconds of `runs' searches of `maze' by `candidate'
+    private static double median(Maze maze, PortfolioSolver.Strategy candidate, int runs)
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long[] times = new long[runs];
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            pool.invoke(candidate.newSolver(maze, new AtomicBoolean()));
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            pool.invoke(candidate.newSolver(maze, new AtomicBoolean()));
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[runs/2]/1e6;
+    }
+}
@@ -0,0 +1,149 @@
+package amazed;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import amazed.maze.Maze;
+import amazed.solver.IncrementalSolver;
+
+
+// applies random wall toggles to a maze, keeping a path current with
+// an IncrementalSolver, and compares it with searching from scratch
+//
+// A toggle that leaves no goal reachable from the start is undone,
+// untimed, and another one is drawn, so that repairs are timed on
+// mazes that have a path to keep current.
+public class DynamicBenchmark
+{
+    private static void printUsageAndExit()
+    {
+        String className = MethodHandles.lookup().lookupClass().getName();
+        System.out.println("usage: java " + className + " MAP EDITS [SEED]\n"
+                           + "\n"
+                           + " MAP    filename with map file\n"
+                           + " EDITS  number of random toggles to apply\n"
+                           + " SEED   seed of the random generator");
+        System.exit(0);
+    }
+
+    // a path is compared against a search from scratch every CHECK_PERIOD edits
+    private static final int CHECK_PERIOD = 10;
+    // draws in a row without a toggle that keeps a goal reachable, after which the benchmark stops
+    private static final int MAX_DRAWS = 100_000;
+
+    public static void main(String[] args)
+    {
+        if (args.length < 2)
+            printUsageAndExit();
+        int edits = 0;
+        long seed = 0;
+        try {
+            edits = Integer.parseInt(args[1]);
+            if (args.length >= 3)
+                seed = Long.parseLong(args[2]);
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        Maze maze = new Maze(args[0]);
+        Random random = new Random(seed);
+
+        long begin = System.nanoTime();
+        IncrementalSolver solver = new IncrementalSolver(maze);
+        List<Integer> path = solver.solve();
+        long initial = System.nanoTime() - begin;
+        long initialExpansions = solver.expansions();
+        if (path == null) {
+            System.err.println("Error: no goal reachable from the start of " + args[0]);
+            System.exit(1);
+        }
+
+        long repairTime = 0, scratchTime = 0;
+        long rejectedExpansions = 0;
+        int applied = 0, rejected = 0, invalid = 0, checks = 0, draws = 0;
+        while (applied < edits) {
+            if (++draws > MAX_DRAWS) {
+                System.err.println("Error: no toggle keeps a goal reachable after " + MAX_DRAWS
+                                   + " draws; stopping after " + applied + " edits");
+                break;
+            }
+            int row = random.nextInt(maze.rows());
+            int col = random.nextInt(maze.cols());
+            int id = maze.id(row, col);
+            // alternately block an empty cell and open a wall, to keep the density of walls
+            boolean block = applied % 2 == 0;
+            if (id == maze.start() || maze.isAccessible(id) != block || !solver.toggle(id))
+                continue;
+            if (!maze.canReachGoal(maze.start())) {
+                // undo, and repair the path untimed, out of the expansions per repair
+                long before = solver.expansions();
+                solver.toggle(id);
+                path = solver.solve();
+                rejectedExpansions += solver.expansions() - before;
+                rejected += 1;
+                continue;
+            }
+            applied += 1;
+            draws = 0;
+            begin = System.nanoTime();
+            path = solver.solve();
+            repairTime += System.nanoTime() - begin;
+            if (path == null || !isValidPath(maze, path))
+                invalid += 1;
+            if (applied % CHECK_PERIOD == 0) {
+                checks += 1;
+                begin = System.nanoTime();
+                int shortest = shortestLength(maze);
+                scratchTime += System.nanoTime() - begin;
+                if (shortest != (path == null ? -1 : path.size() - 1))
+                    invalid += 1;
+            }
+        }
+        System.out.printf("initial search: %.3f ms, %d expansions%n",
+                          initial/1e6, initialExpansions);
+        System.out.printf("%d edits: %.1f us per repair, %.1f expansions per repair%n",
+                          applied, repairTime/1e3/applied,
+                          (solver.expansions() - initialExpansions - rejectedExpansions)
+                          /(double) applied);
+        if (checks > 0)
+            System.out.printf("search from scratch: %.1f us per search%n", scratchTime/1e3/checks);
+        System.out.println(rejected + " toggles undone for leaving no goal reachable, "
+                           + invalid + " paths invalid or not shortest");
+    }
+
+    // is path a connected path from the start node to a goal?
+    private static boolean isValidPath(Maze maze, List<Integer> path)
+    {
+        if (path.get(0) != maze.start())
+            return false;
+        for (int i = 1; i < path.size(); i++)
+            if (!maze.neighbors(path.get(i - 1)).contains(path.get(i)))
+                return false;
+        return maze.hasGoal(path.get(path.size() - 1));
+    }
+
+    // length of a shortest path from the start node to a goal by breadth-first search; -1 if none
+    private static int shortestLength(Maze maze)
+    {
+        Map<Integer, Integer> distance = new HashMap<>();
+        Queue<Integer> frontier = new ArrayDeque<>();
+        distance.put(maze.start(), 0);
+        frontier.add(maze.start());
+        while (!frontier.isEmpty()) {
+            int current = frontier.remove();
+            if (maze.hasGoal(current))
+                return distance.get(current);
+            for (int nb: maze.neighbors(current)) {
+                if (!distance.containsKey(nb)) {
+                    distance.put(nb, distance.get(current) + 1);
+                    frontier.add(nb);
+                }
+            }
+        }
+        return -1;
+    }
+}
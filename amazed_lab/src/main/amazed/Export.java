@@ -0,0 +1,42 @@
+package amazed;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+import amazed.maze.Amazed;
+import amazed.maze.Maze;
+import amazed.maze.PngExporter;
+
+
+// headless solve of a map, saved as a PNG image of the maze and solution
+class Export
+{
+    static final String USAGE =
+        "usage: java " + Main.class.getName() + " export MAP IMAGEFILE [SOLVER] [LAYER] [CELLSIZE]\n"
+        + "\n"
+        + " MAP       filename with map file\n"
+        + " IMAGEFILE PNG file where the maze and the solution are drawn\n"
+        + " SOLVER    solver, as in the first usage (default: sequential)\n"
+        + " LAYER     'maze', or a heatmap of the cells visited by the solver:\n"
+        + "           'order' (order of visit) or 'worker' (thread of visit) (default: maze)\n"
+        + " CELLSIZE  side of a cell in pixels (default: 1)";
+
+    static void run(String map, String image,
+                    Function<Maze, RecursiveTask<List<Integer>>> solver,
+                    PngExporter.Layer layer, int cellSize)
+    throws IOException
+    {
+        Amazed amazed = new Amazed(map, solver, -1);
+        if (layer != PngExporter.Layer.MAZE)
+            amazed.recordVisits();
+        long start = System.currentTimeMillis();
+        amazed.solve();
+        System.out.println("Solving time: " + (System.currentTimeMillis() - start) + " ms");
+        amazed.showSolution();
+        start = System.currentTimeMillis();
+        amazed.exportImage(image, layer, cellSize);
+        System.out.println("Image written in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
@@ -0,0 +1,47 @@
+package amazed;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import amazed.maze.LargeMaze;
+import amazed.maze.LongPath;
+import amazed.solver.LargeBreadthFirstSolver;
+
+
+// headless search of a map too large for Maze, through LargeMaze
+class LargeSearch
+{
+    static final String USAGE =
+        "usage: java " + Main.class.getName() + " large MAP [PATHFILE]\n"
+        + "\n"
+        + " MAP       filename with map file, of any size\n"
+        + " PATHFILE  file where the solution is written, one node per line\n"
+        + "           (default: don't write the solution)";
+
+    static void run(String map, String pathFile)
+    throws IOException
+    {
+        long start = System.currentTimeMillis();
+        try (LargeMaze maze = new LargeMaze(map)) {
+            System.out.println("Map of " + maze.rows() + " x " + maze.cols() + " cells loaded in "
+                               + (System.currentTimeMillis() - start) + " ms");
+            start = System.currentTimeMillis();
+            LongPath path = new LargeBreadthFirstSolver(maze).compute();
+            long elapsed = System.currentTimeMillis() - start;
+            if (path != null && maze.isValidPath(path))
+                System.out.println("Goal found :-D");
+            else
+                System.out.println("Search completed: no goal found :-(");
+            System.out.println("Solving time: " + elapsed + " ms");
+            if (path != null) {
+                System.out.println("Path length: " + path.length() + " nodes");
+                if (pathFile != null)
+                    try (Writer out = new BufferedWriter(new FileWriter(pathFile))) {
+                        path.write(out);
+                    }
+            }
+        }
+    }
+}
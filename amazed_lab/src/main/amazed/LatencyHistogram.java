@@ -0,0 +1,79 @@
+package amazed;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+// concurrent histogram of latencies in nanoseconds
+//
+// Buckets are logarithmic, with SUB_BUCKETS linear sub-buckets per
+// power of two, so that every percentile is reported within about
+// 1/SUB_BUCKETS relative error. Recording is lock-free.
+class LatencyHistogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(64*SUB_BUCKETS);
+
+    LatencyHistogram(String name)
+    {
+        this.name = name;
+    }
+
+    void record(long nanos)
+    {
+        counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+    }
+
+    private static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int mantissa = (int) (value >>> exponent) - SUB_BUCKETS;
+        return (exponent + 1)*SUB_BUCKETS + mantissa;
+    }
+
+    // largest value that falls in bucket
+    private static long upperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket/SUB_BUCKETS - 1;
+        long mantissa = bucket%SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+
+    long count()
+    {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++)
+            total += counts.get(i);
+        return total;
+    }
+
+    // value below which a fraction `quantile' of the recorded latencies falls
+    long percentile(double quantile)
+    {
+        long total = count();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(quantile*total);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1))
+                return upperBound(i);
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %d requests, p50 %.1f us, p99 %.1f us",
+                             name, count(),
+                             percentile(0.50)/1000.0, percentile(0.99)/1000.0);
+    }
+}
@@ -1,8 +1,17 @@
 package amazed;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
 
 import amazed.maze.Amazed;
+import amazed.maze.CellLayout;
+import amazed.maze.Maze;
+import amazed.maze.PngExporter;
+import amazed.maze.SolutionCache;
 
 
 public class Main
@@ -12,43 +21,174 @@ public class Main
         String className = MethodHandles.lookup().lookupClass().getName();
         System.out.println("A-mazed: finds and displays paths to goal in a maze.\n"
                            + "\n"
-                           + "usage: java " + className + " MAP [SOLVER] [PERIOD]\n"
+                           + "usage: java " + className + " MAP [SOLVER] [PERIOD] [PATHFILE] [PLAYERS]\n"
                            + "\n"
-                           + " MAP    filename with map file\n"
-                           + " SOLVER 'sequential' or 'parallel-N' solver, forking after N steps\n"
-                           + " PERIOD time in millisecond between steps (0: don't animate)");
+                           + " MAP      filename with map file\n"
+                           + " SOLVER   " + Solvers.USAGE.replace("\n", "\n          ") + ",\n"
+                           + "          or 'cached-SOLVER' to search with SOLVER only if the solution\n"
+                           + "          of the map by SOLVER is not in " + CACHE_DIRECTORY + "/, and cache it there,\n"
+                           + "          or 'deadline-MS-SOLVER' to stop SOLVER after MS milliseconds, with the\n"
+                           + "          path to a goal or else to the visited node closest to one,\n"
+                           + "          or 'query-N' to serve path requests from standard input\n"
+                           + "          with N threads (see below)\n"
+                           + " PERIOD   time in millisecond between steps (0: don't animate)\n"
+                           + " PATHFILE file where the solution is written, one node per line\n"
+                           + "          ('-': don't write the solution)\n"
+                           + " PLAYERS  maximum number of players displayed (default: all)\n"
+                           + "\n"
+                           + QueryServer.USAGE + "\n"
+                           + "\n"
+                           + Benchmark.USAGE + "\n"
+                           + "\n"
+                           + Calibration.USAGE + "\n"
+                           + "\n"
+                           + AllocationCheck.USAGE + "\n"
+                           + "\n"
+                           + Export.USAGE + "\n"
+                           + "\n"
+                           + LargeSearch.USAGE);
         System.exit(0);
     }
 
-    private final static String SEQUENTIAL = "sequential";
-    private final static String PARALLEL = "parallel";
+    private final static String QUERY = "query";
+    private final static String BENCH = "bench";
+    private final static String EXPORT = "export";
+    private final static String CALIBRATE = "calibrate";
+    private final static String ALLOC = "alloc";
+    private final static String LARGE = "large";
+    private final static String CACHED = "cached-";
+    private final static String DEADLINE = "deadline-";
+
+    // directory of the solution cache, and its size beyond which entries are evicted
+    private final static String CACHE_DIRECTORY = "solutions";
+    private final static long CACHE_BYTES = 64L << 20;
 
     private static String map;
-    private static boolean sequential = true;
-    private static int forkAfter = 0;
+    private static Function<Maze, RecursiveTask<List<Integer>>> solver = Solvers.byName("sequential");
     private static int period = 500;
+    private static int queryThreads = 0;
+    private static String cacheMode = null;
+    // time budget of the search in milliseconds; -1 for none
+    private static long budget = -1;
+    private static String pathFile = null;
+    private static int shownPlayers = Integer.MAX_VALUE;
+
+    // run a scaling sweep as described by Benchmark.USAGE
+    private static void bench(String[] args)
+    {
+        if (args.length < 2)
+            printUsageAndExit();
+        map = args[1];
+        String solverName = args.length >= 3 ? args[2] : "parallel-3";
+        if (Solvers.byName(solverName) == null)
+            printUsageAndExit();
+        int maxParallelism = Runtime.getRuntime().availableProcessors();
+        int runs = Benchmark.DEFAULT_RUNS;
+        CellLayout layout = CellLayout.ROW_MAJOR;
+        try {
+            if (args.length >= 4)
+                maxParallelism = Integer.parseInt(args[3]);
+            if (args.length >= 5)
+                runs = Integer.parseInt(args[4]);
+            if (args.length >= 6)
+                layout = CellLayout.valueOf(args[5].toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            printUsageAndExit();
+        }
+        if (maxParallelism <= 0 || runs <= 0)
+            printUsageAndExit();
+        new Benchmark(map, solverName, layout).run(maxParallelism, runs);
+    }
+
+    // fit the thresholds of the auto solver as described by Calibration.USAGE
+    private static void calibrate(String[] args)
+    throws IOException
+    {
+        if (args.length < 2)
+            printUsageAndExit();
+        Calibration.run(Arrays.asList(args).subList(1, args.length), Calibration.DEFAULT_RUNS);
+    }
+
+    // check the allocation budgets as described by AllocationCheck.USAGE
+    private static void alloc(String[] args)
+    throws IOException
+    {
+        if (args.length < 2)
+            printUsageAndExit();
+        String budgets = args.length >= 3 ? args[2] : AllocationCheck.DEFAULT_FILE;
+        String mode = args.length >= 4 ? args[3] : "check";
+        if (!mode.equals("check") && !mode.equals("record"))
+            printUsageAndExit();
+        new AllocationCheck(args[1]).run(budgets, mode.equals("record"));
+    }
+
+    // draw a solution as described by Export.USAGE
+    private static void export(String[] args)
+    throws IOException
+    {
+        if (args.length < 3)
+            printUsageAndExit();
+        map = args[1];
+        String image = args[2];
+        solver = Solvers.byName(args.length >= 4 ? args[3] : "sequential");
+        if (solver == null)
+            printUsageAndExit();
+        PngExporter.Layer layer = PngExporter.Layer.MAZE;
+        int cellSize = 1;
+        try {
+            if (args.length >= 5)
+                layer = PngExporter.Layer.valueOf(args[4].toUpperCase());
+            if (args.length >= 6)
+                cellSize = Integer.parseInt(args[5]);
+        } catch (IllegalArgumentException e) {
+            printUsageAndExit();
+        }
+        if (cellSize <= 0)
+            printUsageAndExit();
+        Export.run(map, image, solver, layer, cellSize);
+    }
+
+    // search a map of any size as described by LargeSearch.USAGE
+    private static void large(String[] args)
+    throws IOException
+    {
+        if (args.length < 2)
+            printUsageAndExit();
+        LargeSearch.run(args[1], args.length >= 3 ? args[2] : null);
+    }
 
     private static void parseArguments(String[] args)
     {
         if (args.length >= 1) {
             map = args[0];
             if (args.length >= 2) {
-                String solver = args[1];
-                if (solver.equals(SEQUENTIAL))
-                    sequential = true;
-                else {
-                    sequential = false;
-                    String[] splitSolver = solver.split("-");
-                    if (splitSolver.length == 2) {
-                        if (splitSolver[0].equals(PARALLEL)) {
-                            try {
-                                forkAfter = Integer.parseInt(splitSolver[1]);
-                            } catch (NumberFormatException e) {
-                                printUsageAndExit();
-                            }
-                        } else
-                            printUsageAndExit();
-                    } else
+                String solverName = args[1];
+                if (solverName.startsWith(CACHED)) {
+                    solverName = solverName.substring(CACHED.length());
+                    cacheMode = solverName;
+                } else if (solverName.startsWith(DEADLINE)) {
+                    String[] splitDeadline = solverName.substring(DEADLINE.length()).split("-", 2);
+                    try {
+                        budget = Long.parseLong(splitDeadline[0]);
+                    } catch (NumberFormatException e) {
+                        printUsageAndExit();
+                    }
+                    if (budget < 0 || splitDeadline.length < 2)
+                        printUsageAndExit();
+                    solverName = splitDeadline[1];
+                }
+                String[] splitSolver = solverName.split("-");
+                if (splitSolver.length == 2 && splitSolver[0].equals(QUERY) && cacheMode == null && budget < 0) {
+                    try {
+                        queryThreads = Integer.parseInt(splitSolver[1]);
+                    } catch (NumberFormatException e) {
+                        printUsageAndExit();
+                    }
+                    if (queryThreads <= 0)
+                        printUsageAndExit();
+                } else {
+                    solver = Solvers.byName(solverName);
+                    if (solver == null)
                         printUsageAndExit();
                 }
                 if (args.length >= 3) {
@@ -58,21 +198,62 @@ public class Main
                         printUsageAndExit();
                     }
                 }
+                if (args.length >= 4 && !args[3].equals("-"))
+                    pathFile = args[3];
+                if (args.length >= 5) {
+                    try {
+                        shownPlayers = Integer.parseInt(args[4]);
+                    } catch (NumberFormatException e) {
+                        printUsageAndExit();
+                    }
+                }
             }
         } else
             printUsageAndExit();
     }
 
     public static void main(String[] args)
-    throws InterruptedException
+    throws InterruptedException, IOException
     {
+        if (args.length >= 1 && args[0].equals(BENCH)) {
+            bench(args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals(EXPORT)) {
+            export(args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals(CALIBRATE)) {
+            calibrate(args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals(ALLOC)) {
+            alloc(args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals(LARGE)) {
+            large(args);
+            return;
+        }
         parseArguments(args);
-        Amazed amazed = new Amazed(map, sequential, forkAfter, period);
+        if (queryThreads > 0) {
+            new QueryServer(map, System.out).serve(queryThreads);
+            return;
+        }
+        Amazed amazed = new Amazed(map, solver, period);
+        amazed.setShownPlayers(shownPlayers);
+        if (cacheMode != null)
+            amazed.setSolutionCache(new SolutionCache(CACHE_DIRECTORY, CACHE_BYTES), cacheMode);
         long start = System.currentTimeMillis();
-        amazed.solve();
+        if (budget >= 0)
+            amazed.solve(budget);
+        else
+            amazed.solve();
         long stop = System.currentTimeMillis();
         long elapsed = stop - start;
         System.out.println("Solving time: " + elapsed + " ms");
+        if (pathFile != null)
+            amazed.savePath(pathFile);
         Thread.sleep(1000);
         amazed.showSolution();
     }
@@ -0,0 +1,227 @@
+package amazed;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Random;
+
+
+// writes randomly generated maps in the format read by Board
+public class MapGenerator
+{
+    private static void printUsageAndExit()
+    {
+        String className = MethodHandles.lookup().lookupClass().getName();
+        System.out.println("usage: java " + className + " KIND ROWS COLS SEED FILE\n"
+                           + "\n"
+                           + " KIND   'random' scattered bricks, with a staircase from start to heart,\n"
+                           + "        or 'rooms' large open rooms with scattered pillars, joined by doors,\n"
+                           + "        or 'terrain' scattered bricks with patches of mud and water, which cost\n"
+                           + "        " + MUD_COST + " and " + WATER_COST + " to cross\n"
+                           + " ROWS   number of rows of the map\n"
+                           + " COLS   number of columns of the map\n"
+                           + " SEED   seed of the random generator\n"
+                           + " FILE   name of the map file to be written");
+        System.exit(0);
+    }
+
+    // fraction of bricks in 'random' maps
+    private static final double BRICK_DENSITY = 0.3;
+
+    // smallest and largest side of 'rooms' rooms, walls excluded
+    private static final int MIN_ROOM = 16;
+    private static final int MAX_ROOM = 48;
+    // largest width of doors between 'rooms' rooms
+    private static final int MAX_DOOR = 3;
+    // fraction of pillars inside 'rooms' rooms
+    private static final double PILLAR_DENSITY = 0.02;
+
+    // fraction of bricks in 'terrain' maps
+    private static final double TERRAIN_BRICK_DENSITY = 0.15;
+    // cells per patch of 'terrain' maps, and largest radius of a patch
+    private static final int CELLS_PER_PATCH = 200;
+    private static final int MAX_PATCH_RADIUS = 8;
+    // costs of crossing mud and water, written in 'terrain' maps
+    private static final int MUD_COST = 3;
+    private static final int WATER_COST = 8;
+
+    private static final char EMPTY = '.';
+    private static final char BRICK = '*';
+    private static final char SOLID = '#';
+    private static final char HEART = 'v';
+    private static final char MUD = ',';
+    private static final char WATER = '~';
+
+    // map of `kind' with rows x cols cells; start at top-left and a heart at bottom-right
+    static char[][] generate(String kind, int rows, int cols, long seed)
+    {
+        Random random = new Random(seed);
+        char[][] map = new char[rows][cols];
+        switch (kind) {
+        case "random":
+            for (int row = 0; row < rows; row++)
+                for (int col = 0; col < cols; col++)
+                    map[row][col] = random.nextDouble() < BRICK_DENSITY ? BRICK : EMPTY;
+            carveStaircase(map, random);
+            break;
+        case "rooms":
+            carveRooms(map, random);
+            break;
+        case "terrain":
+            for (int row = 0; row < rows; row++)
+                for (int col = 0; col < cols; col++)
+                    map[row][col] = random.nextDouble() < TERRAIN_BRICK_DENSITY ? BRICK : EMPTY;
+            for (int patch = 0; patch < rows*cols/CELLS_PER_PATCH; patch++)
+                addPatch(map, random, random.nextInt(3) == 0 ? WATER : MUD);
+            carveStaircase(map, random);
+            break;
+        default:
+            return null;
+        }
+        map[0][0] = EMPTY;
+        map[rows - 1][cols - 1] = HEART;
+        return map;
+    }
+
+    // clear the bricks on a random monotone path from top-left to
+    // bottom-right, so that the heart is reachable
+    private static void carveStaircase(char[][] map, Random random)
+    {
+        int row = 0, col = 0;
+        int rows = map.length, cols = map[0].length;
+        while (row < rows - 1 || col < cols - 1) {
+            if (map[row][col] == BRICK)
+                map[row][col] = EMPTY;
+            if (col == cols - 1 || (row < rows - 1 && random.nextBoolean()))
+                row += 1;
+            else
+                col += 1;
+        }
+    }
+
+    // a disc of `terrain' at a random place, over whatever was there
+    private static void addPatch(char[][] map, Random random, char terrain)
+    {
+        int rows = map.length, cols = map[0].length;
+        int centerRow = random.nextInt(rows), centerCol = random.nextInt(cols);
+        int radius = 1 + random.nextInt(MAX_PATCH_RADIUS);
+        for (int row = Math.max(0, centerRow - radius); row <= Math.min(rows - 1, centerRow + radius); row++) {
+            for (int col = Math.max(0, centerCol - radius); col <= Math.min(cols - 1, centerCol + radius); col++) {
+                int dRow = row - centerRow, dCol = col - centerCol;
+                if (dRow*dRow + dCol*dCol <= radius*radius)
+                    map[row][col] = terrain;
+            }
+        }
+    }
+
+    // split the map in rooms by walls, with a door in every wall between two rooms
+    // and pillars inside the rooms, away from the walls so that doors stay connected
+    private static void carveRooms(char[][] map, Random random)
+    {
+        int rows = map.length, cols = map[0].length;
+        boolean[] wallRow = walls(rows, random), wallCol = walls(cols, random);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (wallRow[row] || wallCol[col])
+                    map[row][col] = SOLID;
+                else if (!nextToWall(wallRow, row) && !nextToWall(wallCol, col)
+                         && random.nextDouble() < PILLAR_DENSITY)
+                    map[row][col] = BRICK;
+                else
+                    map[row][col] = EMPTY;
+            }
+        }
+        // a door in every stretch of wall between two crossings
+        for (int row = 0; row < rows; row++)
+            if (wallRow[row])
+                carveDoors(map, random, row, wallCol, true);
+        for (int col = 0; col < cols; col++)
+            if (wallCol[col])
+                carveDoors(map, random, col, wallRow, false);
+    }
+
+    // lines of walls along a side of `length' cells, every MIN_ROOM to MAX_ROOM cells
+    private static boolean[] walls(int length, Random random)
+    {
+        boolean[] wall = new boolean[length];
+        int line = MIN_ROOM + random.nextInt(MAX_ROOM - MIN_ROOM + 1);
+        while (line < length - MIN_ROOM) {
+            wall[line] = true;
+            line += 1 + MIN_ROOM + random.nextInt(MAX_ROOM - MIN_ROOM + 1);
+        }
+        return wall;
+    }
+
+    private static boolean nextToWall(boolean[] wall, int i)
+    {
+        return (i > 0 && wall[i - 1]) || (i < wall.length - 1 && wall[i + 1]);
+    }
+
+    // carve a door in every stretch of wall line `line' between crossing walls
+    private static void carveDoors(char[][] map, Random random, int line,
+                                   boolean[] crossing, boolean horizontal)
+    {
+        int from = 0;
+        for (int i = 0; i <= crossing.length; i++) {
+            if (i < crossing.length && !crossing[i])
+                continue;
+            int length = i - from;
+            if (length > 0) {
+                int width = Math.min(length, 1 + random.nextInt(MAX_DOOR));
+                int door = from + random.nextInt(length - width + 1);
+                for (int j = door; j < door + width; j++) {
+                    if (horizontal)
+                        map[line][j] = EMPTY;
+                    else
+                        map[j][line] = EMPTY;
+                }
+            }
+            from = i + 1;
+        }
+    }
+
+    private static boolean contains(char[][] map, char tile)
+    {
+        for (char[] row: map)
+            for (char c: row)
+                if (c == tile)
+                    return true;
+        return false;
+    }
+
+    static void write(char[][] map, String filename)
+    throws IOException
+    {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(filename))) {
+            out.write("@ generated by " + MapGenerator.class.getName() + "\n");
+            out.write("$ " + map.length + " , " + map[0].length + "\n");
+            if (contains(map, MUD) || contains(map, WATER))
+                out.write("% mud , " + MUD_COST + "\n% water , " + WATER_COST + "\n");
+            for (char[] row: map) {
+                out.write(row);
+                out.write('\n');
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        if (args.length != 5)
+            printUsageAndExit();
+        char[][] map = null;
+        try {
+            int rows = Integer.parseInt(args[1]);
+            int cols = Integer.parseInt(args[2]);
+            long seed = Long.parseLong(args[3]);
+            if (rows > 0 && cols > 0)
+                map = generate(args[0], rows, cols, seed);
+        } catch (NumberFormatException e) {
+            printUsageAndExit();
+        }
+        if (map == null)
+            printUsageAndExit();
+        write(map, args[4]);
+    }
+}
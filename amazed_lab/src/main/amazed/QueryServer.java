@@ -0,0 +1,154 @@
+package amazed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import amazed.maze.Maze;
+import amazed.solver.GoalDistanceField;
+import amazed.solver.PathQueryEngine;
+
+
+// line protocol on standard input driving a PathQueryEngine, and a
+// GoalDistanceField for paths to the nearest goal
+//
+// The field is read from the file next to the map, or computed and
+// saved there when the server starts. Every input line is a request,
+// answered on standard output by a line prefixed with the request's
+// number (counting from 1); requests are served concurrently, and thus
+// answers may come in any order.
+class QueryServer
+{
+    static final String USAGE =
+        "requests, one per line:\n"
+        + " start            identifier of the start node\n"
+        + " id ROW COL       identifier of the node in cell ROW, COL\n"
+        + " path FROM TO     shortest path between two nodes\n"
+        + " nearest FROM     shortest path from a node to the nearest goal\n"
+        + " goal ID          make an empty node a goal\n"
+        + " ungoal ID        make a goal an empty node\n"
+        + " stats            latency percentiles and cache statistics\n"
+        + " quit             stop reading requests";
+
+    private static final int TREE_CACHE_SIZE = 64;
+    private static final int PATH_CACHE_SIZE = 4096;
+
+    private final Maze maze;
+    private final PathQueryEngine engine;
+    private final GoalDistanceField field;
+    private final PrintStream out;
+
+    private final LatencyHistogram pathLatency = new LatencyHistogram("path");
+    private final LatencyHistogram nearestLatency = new LatencyHistogram("nearest");
+
+    QueryServer(String map, PrintStream out)
+    {
+        this.maze = new Maze(map);
+        this.engine = new PathQueryEngine(maze, TREE_CACHE_SIZE, PATH_CACHE_SIZE);
+        this.field = GoalDistanceField.open(maze);
+        this.out = out;
+    }
+
+    // serve requests from standard input with nThreads workers, until end of input or quit
+    void serve(int nThreads)
+    throws IOException, InterruptedException
+    {
+        ExecutorService workers = Executors.newFixedThreadPool(nThreads);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        int requestId = 0;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            if (line.equals("quit"))
+                break;
+            final int id = ++requestId;
+            final String request = line;
+            workers.execute(() -> reply(id, handle(request)));
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        out.println(statistics());
+    }
+
+    private void reply(int requestId, String answer)
+    {
+        synchronized (out) {
+            out.println(requestId + " " + answer);
+        }
+    }
+
+    private String handle(String request)
+    {
+        String[] words = request.split("\\s+");
+        try {
+            switch (words[0]) {
+            case "start":
+                return Integer.toString(maze.start());
+            case "id": {
+                int row = Integer.parseInt(words[1]);
+                int col = Integer.parseInt(words[2]);
+                if (row < 0 || row >= maze.rows() || col < 0 || col >= maze.cols())
+                    return "error: no such cell in " + request;
+                return Integer.toString(maze.id(row, col));
+            }
+            case "path": {
+                int from = Integer.parseInt(words[1]);
+                int to = Integer.parseInt(words[2]);
+                long start = System.nanoTime();
+                List<Integer> path = engine.path(from, to);
+                pathLatency.record(System.nanoTime() - start);
+                return format(path);
+            }
+            case "nearest": {
+                int from = Integer.parseInt(words[1]);
+                long start = System.nanoTime();
+                List<Integer> path = field.pathToNearestGoal(from);
+                nearestLatency.record(System.nanoTime() - start);
+                return format(path);
+            }
+            case "goal":
+                return field.addGoal(Integer.parseInt(words[1])) ? "ok" : "error: not an empty node";
+            case "ungoal":
+                return field.removeGoal(Integer.parseInt(words[1])) ? "ok" : "error: not a goal";
+            case "stats":
+                return statistics().replace("\n", "; ");
+            default:
+                return "error: unknown request " + words[0];
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return "error: invalid request " + request;
+        } catch (IllegalArgumentException e) {
+            // thrown by the engine and the field for unknown node identifiers
+            return "error: no such node in " + request;
+        } catch (RuntimeException e) {
+            System.err.println("Error: internal error serving " + request + ": " + e);
+            e.printStackTrace();
+            return "error: internal error";
+        }
+    }
+
+    private static String format(List<Integer> path)
+    {
+        if (path == null)
+            return "none";
+        StringBuilder result = new StringBuilder();
+        for (int id: path) {
+            if (result.length() > 0)
+                result.append(' ');
+            result.append(id);
+        }
+        return result.toString();
+    }
+
+    private String statistics()
+    {
+        return pathLatency + "\n" + nearestLatency + "\n" + engine.cacheStatistics();
+    }
+}
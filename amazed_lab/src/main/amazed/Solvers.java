@@ -0,0 +1,154 @@
+package amazed;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import amazed.maze.Maze;
+import amazed.solver.BitboardSolver;
+import amazed.solver.BreadthFirstSolver;
+import amazed.solver.DeltaSteppingSolver;
+import amazed.solver.DijkstraSolver;
+import amazed.solver.ExternalBreadthFirstSolver;
+import amazed.solver.ForkJoinSolver;
+import amazed.solver.HierarchicalSolver;
+import amazed.solver.JumpPointSolver;
+import amazed.solver.PortfolioSolver;
+import amazed.solver.PrimitiveSequentialSolver;
+import amazed.solver.SequentialSolver;
+import amazed.solver.SolverSelector;
+import amazed.solver.WorkStealingSolver;
+
+
+// solvers selectable by name on the command line
+class Solvers
+{
+    // file where the portfolio solver logs the winners
+    private final static String PORTFOLIO_LOG = "portfolio.log";
+    // directory where resumable solvers save their state
+    private final static String CHECKPOINT_DIRECTORY = "checkpoints";
+
+    static final String USAGE =
+        "'sequential', 'primitive' (sequential on primitive arrays),\n"
+        + "'bfs' (breadth-first), 'bidirectional' (breadth-first from start and goals),\n"
+        + "'jps' (jump point search, for open rooms), 'bitboard' (breadth-first, 64 cells at a time),\n"
+        + "'hpa-N' (hierarchical, over clusters of N by N cells kept between searches; 'hpa': 32),\n"
+        + "'portfolio' (races several solvers, appending the winner to " + PORTFOLIO_LOG + "),\n"
+        + "'external' (breadth-first, with its levels in files in the temporary directory),\n"
+        + "'dijkstra' (cheapest path, where mud and water cost more),\n"
+        + "'delta-N' (cheapest path by parallel delta-stepping, buckets N wide; 'delta': 4 wide),\n"
+        + "'resumable-N' (primitive, saving its state to " + CHECKPOINT_DIRECTORY + "/ every N seconds,\n"
+        + "and resuming from there if interrupted),\n"
+        + "'parallel-N' (fork/join, forking after N steps),\n"
+        + "'steal-N' (depth-first on N threads stealing cells from each other; 'steal': as many\n"
+        + "threads as the parallelism of the pool),\n"
+        + "or 'auto' (picked from the shape of the maze, with the thresholds fitted by\n"
+        + "calibration in " + SolverSelector.DEFAULT_FILE + ")";
+
+    private final static String SEQUENTIAL = "sequential";
+    private final static String PRIMITIVE = "primitive";
+    private final static String PARALLEL = "parallel";
+    private final static String RESUMABLE = "resumable";
+    private final static String BFS = "bfs";
+    private final static String BIDIRECTIONAL = "bidirectional";
+    private final static String JPS = "jps";
+    private final static String BITBOARD = "bitboard";
+    private final static String EXTERNAL = "external";
+    private final static String DIJKSTRA = "dijkstra";
+    private final static String DELTA = "delta";
+    private final static String HPA = "hpa";
+    private final static String STEAL = "steal";
+    private final static String PORTFOLIO = "portfolio";
+    private final static String AUTO = "auto";
+
+    // factory of the solver called `name'; null if there is no such solver
+    static Function<Maze, RecursiveTask<List<Integer>>> byName(String name)
+    {
+        return byName(name, Thread::new);
+    }
+
+    // factory of the solver called `name', whose threads outside of
+    // the pool that runs it, if any, are made by `threads'; null if
+    // there is no such solver
+    static Function<Maze, RecursiveTask<List<Integer>>> byName(String name, ThreadFactory threads)
+    {
+        if (name.equals(SEQUENTIAL))
+            return SequentialSolver::new;
+        if (name.equals(PRIMITIVE))
+            return PrimitiveSequentialSolver::new;
+        if (name.equals(BFS))
+            return BreadthFirstSolver::new;
+        if (name.equals(BIDIRECTIONAL))
+            return maze -> new BreadthFirstSolver(maze, true, new AtomicBoolean());
+        if (name.equals(JPS))
+            return JumpPointSolver::new;
+        if (name.equals(BITBOARD))
+            return BitboardSolver::new;
+        if (name.equals(EXTERNAL))
+            return ExternalBreadthFirstSolver::new;
+        if (name.equals(DIJKSTRA))
+            return DijkstraSolver::new;
+        if (name.equals(DELTA))
+            return DeltaSteppingSolver::new;
+        if (name.equals(STEAL))
+            return maze -> new WorkStealingSolver(maze, 0, threads, new AtomicBoolean());
+        if (name.equals(HPA))
+            return HierarchicalSolver::new;
+        if (name.equals(AUTO))
+            return SolverSelector.load(SolverSelector.DEFAULT_FILE).factory();
+        if (name.equals(PORTFOLIO))
+            return maze -> new PortfolioSolver(maze, PortfolioSolver.defaultPortfolio(), PORTFOLIO_LOG);
+        String[] splitSolver = name.split("-");
+        if (splitSolver.length == 2 && splitSolver[0].equals(PARALLEL)) {
+            try {
+                int forkAfter = Integer.parseInt(splitSolver[1]);
+                return maze -> new ForkJoinSolver(maze, forkAfter);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (splitSolver.length == 2 && splitSolver[0].equals(DELTA)) {
+            try {
+                int delta = Integer.parseInt(splitSolver[1]);
+                if (delta <= 0)
+                    return null;
+                return maze -> new DeltaSteppingSolver(maze, delta);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (splitSolver.length == 2 && splitSolver[0].equals(STEAL)) {
+            try {
+                int workers = Integer.parseInt(splitSolver[1]);
+                if (workers <= 0)
+                    return null;
+                return maze -> new WorkStealingSolver(maze, workers, threads, new AtomicBoolean());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (splitSolver.length == 2 && splitSolver[0].equals(HPA)) {
+            try {
+                int clusterSize = Integer.parseInt(splitSolver[1]);
+                if (clusterSize < 2 || clusterSize > HierarchicalSolver.MAX_CLUSTER_SIZE)
+                    return null;
+                return maze -> new HierarchicalSolver(maze, clusterSize, new AtomicBoolean());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (splitSolver.length == 2 && splitSolver[0].equals(RESUMABLE)) {
+            try {
+                long seconds = Long.parseLong(splitSolver[1]);
+                if (seconds <= 0)
+                    return null;
+                return maze -> new PrimitiveSequentialSolver(maze, CHECKPOINT_DIRECTORY, 1000*seconds);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
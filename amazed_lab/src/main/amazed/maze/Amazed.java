@@ -1,11 +1,21 @@
 package amazed.maze;
 
 import java.awt.EventQueue;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import amazed.solver.SequentialSolver;
+import amazed.solver.SolverSelector;
 import amazed.solver.ForkJoinSolver;
 
 /**
@@ -29,8 +39,10 @@ import amazed.solver.ForkJoinSolver;
 public class Amazed
 {
     private Maze maze;
-    private RecursiveTask<List<Integer>> solver;
+    private Function<Maze, RecursiveTask<List<Integer>>> solverFactory;
     private List<Integer> path;
+    private SolutionCache cache;
+    private String cacheMode;
 
     /**
      * Creates a maze reading from map file <code>map</code>.
@@ -54,6 +66,44 @@ public class Amazed
      *                         there is no graphical display at all
      */
     public Amazed(String map, boolean sequentialSolver, int forkAfter, int animationDelay)
+    {
+        this(map,
+             sequentialSolver ? SequentialSolver::new : m -> new ForkJoinSolver(m, forkAfter),
+             animationDelay);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, searched
+     * by the solver that <code>SolverSelector</code> picks from the
+     * profile of the maze, with the thresholds saved by the last
+     * calibration in <code>SolverSelector.DEFAULT_FILE</code>, if any.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation of the
+     *                         solution search, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     */
+    public Amazed(String map, int animationDelay)
+    {
+        this(map, SolverSelector.load(SolverSelector.DEFAULT_FILE).factory(), animationDelay);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, searched
+     * by any solver.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solverFactory    creates the solver, a
+     *                         <code>RecursiveTask&lt;List&lt;Integer&gt;&gt;</code>,
+     *                         that searches a given maze
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation of the
+     *                         solution search, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     */
+    public Amazed(String map, Function<Maze, RecursiveTask<List<Integer>>> solverFactory,
+                  int animationDelay)
     {
         maze = new Maze(map);
         if (animationDelay >= 0) {
@@ -66,27 +116,194 @@ public class Amazed
             });
         }
         maze.setDelay(animationDelay);
-        if (sequentialSolver)
-            solver = new SequentialSolver(maze);
-        else
-            solver = new ForkJoinSolver(maze, forkAfter);
+        this.solverFactory = solverFactory;
+    }
+
+    /**
+     * Looks up the solution in a cache before searching the maze, and
+     * stores it there after searching, under a given mode. The solver
+     * is only created if the cache has no valid path for the maze.
+     * This method should be called before <code>solve</code>.
+     *
+     * @param cache   the cache of solutions
+     * @param mode    the mode of the search, such as the name of the
+     *                solver, which keys the entries with the map
+     */
+    public void setSolutionCache(SolutionCache cache, String mode)
+    {
+        this.cache = cache;
+        this.cacheMode = mode;
+    }
+
+    /**
+     * Limits the animation to the first <code>shown</code> players
+     * created by the solver; moving the other players only costs the
+     * animation delay. This method should be called before
+     * <code>solve</code>.
+     *
+     * @param shown   the maximum number of players displayed
+     */
+    public void setShownPlayers(int shown)
+    {
+        maze.setShownPlayers(shown);
     }
 
     /**
      * Runs the solver on the maze, waits for termination, and prints
-     * to screen the outcome of the search.
+     * to screen the outcome of the search. Whether a goal is reachable
+     * from the start node is left to the solver, which may skip its
+     * search if none is (see <code>Maze.canReachGoal</code>). With a
+     * solution cache, a valid cached path skips the search, and a path
+     * found by the search is cached.
      */
     public void solve()
     {
+        if (cache != null) {
+            path = cache.get(maze, cacheMode);
+            if (path != null) {
+                System.out.println("Goal found in solution cache :-D");
+                System.out.println(cache);
+                return;
+            }
+        }
+        RecursiveTask<List<Integer>> solver = solverFactory.apply(maze);
         ForkJoinPool pool = ForkJoinPool.commonPool();
         path = pool.invoke(solver);
-        if (path != null && maze.isValidPath(path))
+        if (path != null && maze.isValidPath(path)) {
             System.out.println("Goal found :-D");
-        else
+            if (cache != null)
+                cache.put(maze, cacheMode, path);
+        } else
             System.out.println("Search completed: no goal found :-(");
+        if (cache != null)
+            System.out.println(cache);
         pool.shutdown();
     }
 
+    /**
+     * Runs the solver on the maze until it ends or a time budget runs
+     * out, prints to screen the outcome of the search, and returns the
+     * best path available then: a path to a goal if the solver found
+     * one, or else a partial path to the visited node closest to a
+     * goal, as described by <code>AnytimeResult</code>.
+     * <p>
+     * When the budget runs out, the deadline of the maze passes (see
+     * <code>Maze.checkDeadline</code>): players can no longer be
+     * created or moved, and since every solver moves a player at every
+     * step, all its workers stop within one step, plus the animation
+     * delay. Work that moves no players, such as labeling the
+     * components of the maze or building the graph of
+     * <code>HierarchicalSolver</code>, checks the deadline too and
+     * stops within a band of rows or a cluster. This method then waits
+     * for all the workers to stop; the result tells how long after the
+     * deadline the last one stopped. The visits of the solver are
+     * recorded, to build the partial path; the solution cache is not
+     * checked first. The solution, which <code>savePath</code> writes
+     * and <code>showSolution</code> displays, is the path of the
+     * result, even if partial.
+     *
+     * @param budgetMillis   the milliseconds that the search may take
+     * @return               the best path found, and how much of the
+     *                       maze was explored
+     */
+    public AnytimeResult solve(long budgetMillis)
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        if (maze.getVisits() == null)
+            maze.recordVisits();
+        maze.setExpired(false);
+        RecursiveTask<List<Integer>> solver = solverFactory.apply(maze);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        pool.execute(solver);
+        List<Integer> found = null;
+        boolean expired = false;
+        try {
+            found = solver.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            expired = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            expired = true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        long overrunMillis = 0;
+        if (expired) {
+            maze.setExpired(true);
+            try {
+                found = solver.join();
+            } catch (CancellationException e) {
+                found = null;
+            }
+            // forked tasks of the solver still running stop at their next step
+            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            overrunMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deadline);
+            maze.setExpired(false);
+        }
+        AnytimeResult result = AnytimeResult.of(maze, found, expired, overrunMillis);
+        path = result.path();
+        if (result.isComplete())
+            System.out.println("Goal found :-D");
+        else if (expired)
+            System.out.println("Deadline passed: no goal found :-(");
+        else
+            System.out.println("Search completed: no goal found :-(");
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Writes the solution found by <code>solve</code>, if any, to a
+     * file as a list of node identifiers, one per line. The solvers'
+     * paths are views of a <code>CompactPath</code>, which are
+     * decoded while they are written; thus even paths with millions
+     * of nodes are never materialized as a list.
+     *
+     * @param filename   the name of the file to be written
+     * @throws IOException if the file cannot be written
+     */
+    public void savePath(String filename)
+    throws IOException
+    {
+        try (Writer out = new BufferedWriter(new FileWriter(filename))) {
+            if (path != null) {
+                for (int id: path) {
+                    out.write(Integer.toString(id));
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the order in which the solver first visits the nodes
+     * of the maze, and the worker threads visiting them, so that
+     * <code>exportImage</code> can draw them. This method should be
+     * called before <code>solve</code>.
+     */
+    public void recordVisits()
+    {
+        maze.recordVisits();
+    }
+
+    /**
+     * Draws the maze, with the solution if <code>showSolution</code>
+     * has been called, and saves the image to a PNG file.
+     *
+     * @param filename   the name of the file to be written
+     * @param layer      what the image shows; heatmaps of the visits
+     *                   require <code>recordVisits</code>
+     * @param cellSize   the side of a cell in pixels
+     * @throws IOException if the file cannot be written
+     */
+    public void exportImage(String filename, PngExporter.Layer layer, int cellSize)
+    throws IOException
+    {
+        new PngExporter(maze).write(filename, layer, cellSize);
+    }
+
     /**
      * Displays the solution by removing all players and marking a
      * path from the start node to a goal on the maze graphical
@@ -0,0 +1,231 @@
+package amazed.maze;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>AnytimeResult</code> is the outcome of a search with a
+ * deadline, as run by <code>Amazed.solve(long)</code>: the best path
+ * available when the search ended, and how much of the maze the
+ * search explored.
+ * <p>
+ * If the solver found a goal in time, the path is complete: it goes
+ * from the start node to a goal. Otherwise the path is partial: it
+ * goes from the start node, through nodes visited by the solver, to
+ * the visited node closest to a goal by Manhattan distance, which
+ * ignores walls. Since solvers report their visits by moving their
+ * players, partial paths only go through the nodes onto which
+ * players moved: solvers that jump over nodes, such as
+ * <code>JumpPointSolver</code>, get shorter partial paths. The nodes
+ * explored are those players visited, or as many as the solver
+ * reported through <code>Maze.reportExplored</code> if more; solvers
+ * that cannot count them report none.
+ */
+
+public class AnytimeResult
+{
+    // distance of the cells farther than any from a goal, or of all cells if there are no goals
+    private static final int FAR = Integer.MAX_VALUE;
+
+    private final List<Integer> path;
+    private final boolean complete;
+    private final int distance;
+    private final int explored;
+    private final int accessible;
+    private final boolean expired;
+    private final long overrunMillis;
+
+    private AnytimeResult(List<Integer> path, boolean complete, int distance, int explored,
+                          int accessible, boolean expired, long overrunMillis)
+    {
+        this.path = path;
+        this.complete = complete;
+        this.distance = distance;
+        this.explored = explored;
+        this.accessible = accessible;
+        this.expired = expired;
+        this.overrunMillis = overrunMillis;
+    }
+
+    // result of a search of `maze', whose visits were recorded, that
+    // returned `found'; null if it found no path or was stopped
+    static AnytimeResult of(Maze maze, List<Integer> found, boolean expired, long overrunMillis)
+    {
+        VisitLog visits = maze.getVisits();
+        int nCells = maze.cells();
+        int[] distance = new int[nCells];
+        int accessible = goalDistances(maze.getBoard(), distance);
+        int start = maze.cell(maze.start());
+        // the start node is visited when the first player is created, without a move
+        int visited = Math.max(1, visits.visited() + (visits.order(start) == 0 ? 1 : 0));
+        int reported = maze.reportedExplored();
+        int explored = reported == Maze.UNCOUNTED ? -1 : Math.max(visited, reported);
+        if (found != null && maze.isValidPath(found))
+            return new AnytimeResult(found, true, 0, explored, accessible, expired, overrunMillis);
+
+        // breadth-first through the visited cells, for the one closest to a goal
+        int[] predecessor = new int[nCells];
+        Arrays.fill(predecessor, -1);
+        int[] queue = new int[Math.min(nCells, visited)];
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        predecessor[start] = start;
+        int best = start;
+        int[] neighbors = new int[4];
+        while (head < tail) {
+            int cell = queue[head++];
+            if (distance[cell] < distance[best])
+                best = cell;
+            int count = maze.neighborCells(cell, neighbors);
+            for (int i = 0; i < count; i++) {
+                int next = neighbors[i];
+                if (predecessor[next] < 0 && visits.order(next) != 0 && tail < queue.length) {
+                    predecessor[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        predecessor[start] = -1;
+        List<Integer> partial = best == start ? Collections.singletonList(maze.start())
+            : CompactPath.fromCellPredecessors(maze, start, best, predecessor).asList();
+        return new AnytimeResult(partial, false, distance[best] == FAR ? -1 : distance[best],
+                                 explored, accessible, expired, overrunMillis);
+    }
+
+    // store in `distance' the Manhattan distance from every cell to the
+    // nearest goal, by two sweeps over the board, or FAR for all cells
+    // if there are no goals; return the number of accessible cells
+    private static int goalDistances(Board board, int[] distance)
+    {
+        int nRows = board.getRows(), nCols = board.getCols();
+        int accessible = 0;
+        for (int row = 0, cell = 0; row < nRows; row++)
+            for (int col = 0; col < nCols; col++, cell++) {
+                distance[cell] = board.isHeart(row, col) ? 0 : FAR;
+                if (board.isAccessible(row, col))
+                    accessible += 1;
+            }
+        for (int row = 0; row < nRows; row++)
+            for (int col = 0; col < nCols; col++) {
+                int cell = row*nCols + col;
+                if (row > 0)
+                    distance[cell] = Math.min(distance[cell], plusOne(distance[cell - nCols]));
+                if (col > 0)
+                    distance[cell] = Math.min(distance[cell], plusOne(distance[cell - 1]));
+            }
+        for (int row = nRows - 1; row >= 0; row--)
+            for (int col = nCols - 1; col >= 0; col--) {
+                int cell = row*nCols + col;
+                if (row < nRows - 1)
+                    distance[cell] = Math.min(distance[cell], plusOne(distance[cell + nCols]));
+                if (col < nCols - 1)
+                    distance[cell] = Math.min(distance[cell], plusOne(distance[cell + 1]));
+            }
+        return accessible;
+    }
+
+    private static int plusOne(int distance)
+    {
+        return distance == FAR ? FAR : distance + 1;
+    }
+
+    /**
+     * Returns the best path found: a path to a goal if the search
+     * found one, or else a path to the visited node closest to a goal.
+     *
+     * @return   a list of identifiers of adjacent nodes, from the start node
+     */
+    public List<Integer> path()
+    {
+        return path;
+    }
+
+    /**
+     * Tests whether the path reaches a goal.
+     *
+     * @return   <code>true</code> if the path ends with a goal node;
+     *           <code>false</code> if it is partial
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Returns the Manhattan distance from the last node of the path
+     * to the nearest goal.
+     *
+     * @return   the distance to the nearest goal; 0 if the path is
+     *           complete; -1 if the maze has no goals
+     */
+    public int distance()
+    {
+        return distance;
+    }
+
+    /**
+     * Returns the number of nodes the search explored.
+     *
+     * @return   the number of nodes explored, including the start node;
+     *           -1 if the solver does not count them
+     */
+    public int explored()
+    {
+        return explored;
+    }
+
+    /**
+     * Returns the fraction of the accessible nodes that the search
+     * explored.
+     *
+     * @return   the nodes explored over the accessible nodes of the maze;
+     *           -1 if the solver does not count them
+     */
+    public double exploredFraction()
+    {
+        if (explored < 0)
+            return -1;
+        return accessible == 0 ? 0 : Math.min(1.0, (double) explored/accessible);
+    }
+
+    /**
+     * Tests whether the search was stopped by its deadline.
+     *
+     * @return   <code>true</code> if the deadline passed before the
+     *           search ended; <code>false</code> otherwise
+     */
+    public boolean isExpired()
+    {
+        return expired;
+    }
+
+    /**
+     * Returns the time between the deadline and the moment all the
+     * workers of the search had stopped.
+     *
+     * @return   the milliseconds that the workers ran past the
+     *           deadline; 0 if the search ended in time
+     */
+    public long overrunMillis()
+    {
+        return overrunMillis;
+    }
+
+    /**
+     * Returns a summary of the result on one line.
+     *
+     * @return   a description of the result
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%s path of %d nodes%s; %s%s",
+                             complete ? "Complete" : "Partial", path.size(),
+                             complete || distance < 0 ? "" : ", " + distance + " from a goal",
+                             explored < 0 ? "explored nodes not counted by this solver"
+                             : String.format("explored %d nodes (%.1f%% of the maze)",
+                                             explored, 100*exploredFraction()),
+                             expired ? "; workers stopped " + overrunMillis + " ms after the deadline" : "");
+    }
+}
@@ -0,0 +1,369 @@
+package amazed.maze;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>Bitboard</code> computes breadth-first distance layers on a
+ * snapshot of the accessible cells of a <code>Maze</code>, 64 cells
+ * at a time.
+ * <p>
+ * Every row of the maze is stored as <code>long</code> words, one bit
+ * per cell. The frontier of the search grows by one layer with a few
+ * word operations per word: shifts by one bit to the east and west,
+ * with the carries across words, and an or with the words of the rows
+ * above and below, masked by the accessible cells not visited yet.
+ * Only the words near the frontier are updated: every row keeps the
+ * range of its words where the frontier is not empty, and a row is
+ * only grown from the ranges of its own and its adjacent rows. The
+ * rows of a layer are split in bands that are grown in parallel,
+ * since every word of a new layer is written by the task of its own
+ * row.
+ * <p>
+ * The search keeps the index of its layer modulo 3 for every visited
+ * cell, in two bits: adjacent cells lie in the same or in adjacent
+ * layers, so a cell of layer <i>d</i> has a neighbor in layer
+ * <i>d</i> - 1 that is recognized by its index modulo 3 alone. This
+ * lets method <code>path</code> rebuild a shortest path backwards from
+ * the goal that was reached.
+ * <p>
+ * Changes to the maze made after the bitboard has been created are
+ * not seen by the bitboard.
+ */
+
+public class Bitboard
+{
+    // rows per band below which a layer task does not split further
+    private static final int BAND_ROWS = 128;
+
+    private final Maze maze;
+    private final int nRows;
+    private final int nCols;
+    // words per row
+    private final int nWords;
+
+    // one bit per cell, nWords words per row
+    private final long[] open;
+    private final long[] hearts;
+    private final long[] visited;
+    // layer index modulo 3 of visited cells: low and high bit
+    private final long[] phaseLow;
+    private final long[] phaseHigh;
+    // the last layer, and the layer before it, to be overwritten by the next one
+    private long[] frontier;
+    private long[] next;
+
+    // range of words of every row where `frontier' is not empty; nWords, -1 if empty
+    private int[] frontierLo;
+    private int[] frontierHi;
+    // same for `next'
+    private int[] nextLo;
+    private int[] nextHi;
+
+    // rows where `frontier', and `next', may not be empty
+    private int frontierFromRow, frontierToRow;
+    private int nextFromRow, nextToRow;
+
+    private int goal = -1;
+    private int distance = -1;
+
+    /**
+     * Creates a bitboard of the cells of <code>maze</code>, as they
+     * are accessible now.
+     *
+     * @param maze   the maze whose cells are copied
+     */
+    public Bitboard(Maze maze)
+    {
+        this.maze = maze;
+        Board board = maze.getBoard();
+        nRows = board.getRows();
+        nCols = board.getCols();
+        nWords = (nCols + 63) >>> 6;
+        int size = nRows*nWords;
+        open = new long[size];
+        hearts = new long[size];
+        visited = new long[size];
+        phaseLow = new long[size];
+        phaseHigh = new long[size];
+        frontier = new long[size];
+        next = new long[size];
+        frontierLo = new int[nRows];
+        frontierHi = new int[nRows];
+        nextLo = new int[nRows];
+        nextHi = new int[nRows];
+        run(new Copy(board, 0, nRows));
+    }
+
+    /**
+     * Computes the distance layers from a cell, until one of them
+     * contains a goal.
+     *
+     * @param start   the index of the cell from which distances are
+     *                measured, as described in {@link Maze#cell(int)}
+     * @param stop    a flag that cancels the search when set
+     * @return        the distance from <code>start</code> to the nearest
+     *                goal; -1 if no goal can be reached, or the search
+     *                is stopped
+     * @throws java.util.concurrent.CancellationException if the search
+     *         has a deadline, which has passed
+     */
+    public int layers(int start, AtomicBoolean stop)
+    {
+        goal = -1;
+        distance = -1;
+        Arrays.fill(visited, 0);
+        Arrays.fill(phaseLow, 0);
+        Arrays.fill(phaseHigh, 0);
+        Arrays.fill(frontier, 0);
+        Arrays.fill(next, 0);
+        Arrays.fill(frontierLo, nWords);
+        Arrays.fill(frontierHi, -1);
+        Arrays.fill(nextLo, nWords);
+        Arrays.fill(nextHi, -1);
+        int row = start/nCols, word = row*nWords + ((start%nCols) >>> 6);
+        long bit = 1L << (start%nCols);
+        if ((open[word] & bit) == 0)
+            return -1;
+        if ((hearts[word] & bit) != 0) {
+            goal = start;
+            return distance = 0;
+        }
+        visited[word] = bit;
+        frontier[word] = bit;
+        frontierLo[row] = frontierHi[row] = word - row*nWords;
+        frontierFromRow = row;
+        frontierToRow = row + 1;
+        nextFromRow = nextToRow = row;
+
+        for (int layer = 1; frontierFromRow < frontierToRow; layer++) {
+            if (stop.get())
+                return -1;
+            // moves no players: stop here once past the deadline of the search
+            maze.checkDeadline();
+            // rows that can grow, and rows of `next' to be cleared
+            int fromRow = Math.min(Math.max(frontierFromRow - 1, 0), nextFromRow);
+            int toRow = Math.max(Math.min(frontierToRow + 1, nRows), nextToRow);
+            Grow grow = new Grow(fromRow, toRow, layer % 3);
+            run(grow);
+            if (grow.goal >= 0) {
+                goal = grow.goal;
+                return distance = layer;
+            }
+            long[] words = frontier;
+            frontier = next;
+            next = words;
+            int[] lo = frontierLo, hi = frontierHi;
+            frontierLo = nextLo;
+            frontierHi = nextHi;
+            nextLo = lo;
+            nextHi = hi;
+            nextFromRow = frontierFromRow;
+            nextToRow = frontierToRow;
+            frontierFromRow = grow.fromRow;
+            frontierToRow = grow.toRow;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of cells reached by the last call to
+     * <code>layers</code>, up to the layer where it ended.
+     *
+     * @return   the number of cells in the layers computed, including
+     *           the start cell
+     */
+    public int visitedCells()
+    {
+        int count = 0;
+        for (long word: visited)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Returns a shortest path from the start cell of the last call to
+     * <code>layers</code> to the goal it reached.
+     *
+     * @return   the path from the start cell to the nearest goal;
+     *           <code>null</code> if no goal was reached
+     */
+    public CompactPath path()
+    {
+        if (goal < 0)
+            return null;
+        int[] cells = new int[distance + 1];
+        int current = goal;
+        cells[distance] = current;
+        for (int d = distance - 1; d >= 0; d--) {
+            int row = current/nCols, col = current%nCols;
+            int phase = d % 3;
+            if (row > 0 && isInLayer(current - nCols, phase))
+                current -= nCols;
+            else if (row < nRows - 1 && isInLayer(current + nCols, phase))
+                current += nCols;
+            else if (col > 0 && isInLayer(current - 1, phase))
+                current -= 1;
+            else
+                current += 1;
+            cells[d] = current;
+        }
+        return CompactPath.fromCells(maze, cells);
+    }
+
+    // is cell visited in a layer whose index modulo 3 is `phase'?
+    private boolean isInLayer(int cell, int phase)
+    {
+        int word = (cell/nCols)*nWords + ((cell%nCols) >>> 6);
+        long bit = 1L << (cell%nCols);
+        if ((visited[word] & bit) == 0)
+            return false;
+        int low = (phaseLow[word] & bit) != 0 ? 1 : 0;
+        int high = (phaseHigh[word] & bit) != 0 ? 2 : 0;
+        return (low | high) == phase;
+    }
+
+    // run a task in the current pool, or in the common pool from outside any pool
+    private static void run(RecursiveAction task)
+    {
+        if (ForkJoinTask.inForkJoinPool())
+            task.invoke();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+    }
+
+    // copy of the tiles of rows [fromRow, toRow)
+    private class Copy extends RecursiveAction
+    {
+        private final Board board;
+        private final int fromRow;
+        private final int toRow;
+
+        Copy(Board board, int fromRow, int toRow)
+        {
+            this.board = board;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toRow - fromRow > BAND_ROWS) {
+                int mid = (fromRow + toRow) >>> 1;
+                invokeAll(new Copy(board, fromRow, mid), new Copy(board, mid, toRow));
+                return;
+            }
+            for (int row = fromRow; row < toRow; row++) {
+                for (int col = 0; col < nCols; col++) {
+                    int word = row*nWords + (col >>> 6);
+                    if (board.isAccessible(row, col))
+                        open[word] |= 1L << col;
+                    if (board.isHeart(row, col))
+                        hearts[word] |= 1L << col;
+                }
+            }
+        }
+    }
+
+    // growth of the frontier into `next' on rows [fromRow, toRow)
+    private class Grow extends RecursiveAction
+    {
+        private final int phase;
+        // rows where the new layer is not empty, and a goal in it
+        private int fromRow;
+        private int toRow;
+        private int goal = -1;
+
+        Grow(int fromRow, int toRow, int phase)
+        {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.phase = phase;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toRow - fromRow > BAND_ROWS) {
+                int mid = (fromRow + toRow) >>> 1;
+                Grow top = new Grow(fromRow, mid, phase), bottom = new Grow(mid, toRow, phase);
+                invokeAll(top, bottom);
+                fromRow = top.fromRow < top.toRow ? top.fromRow : bottom.fromRow;
+                toRow = bottom.fromRow < bottom.toRow ? bottom.toRow : top.toRow;
+                goal = top.goal >= 0 ? top.goal : bottom.goal;
+                return;
+            }
+            int first = Integer.MAX_VALUE, last = -1;
+            for (int row = fromRow; row < toRow; row++) {
+                if (growRow(row)) {
+                    first = Math.min(first, row);
+                    last = row;
+                }
+            }
+            if (last < 0)
+                toRow = fromRow;
+            else {
+                fromRow = first;
+                toRow = last + 1;
+            }
+        }
+
+        // layer `phase' of row into `next'; is it not empty?
+        private boolean growRow(int row)
+        {
+            int base = row*nWords;
+            // clear what is left of the layer before the frontier
+            for (int w = nextLo[row]; w <= nextHi[row]; w++)
+                next[base + w] = 0;
+            nextLo[row] = nWords;
+            nextHi[row] = -1;
+
+            int lo = frontierLo[row], hi = frontierHi[row];
+            if (row > 0) {
+                lo = Math.min(lo, frontierLo[row - 1]);
+                hi = Math.max(hi, frontierHi[row - 1]);
+            }
+            if (row < nRows - 1) {
+                lo = Math.min(lo, frontierLo[row + 1]);
+                hi = Math.max(hi, frontierHi[row + 1]);
+            }
+            if (hi < 0)
+                return false;
+            lo = Math.max(lo - 1, 0);
+            hi = Math.min(hi + 1, nWords - 1);
+
+            for (int w = lo; w <= hi; w++) {
+                int i = base + w;
+                long f = frontier[i];
+                long grown = f | (f << 1) | (f >>> 1);
+                if (w > 0)
+                    grown |= frontier[i - 1] >>> 63;
+                if (w < nWords - 1)
+                    grown |= frontier[i + 1] << 63;
+                if (row > 0)
+                    grown |= frontier[i - nWords];
+                if (row < nRows - 1)
+                    grown |= frontier[i + nWords];
+                long added = grown & open[i] & ~visited[i];
+                if (added == 0)
+                    continue;
+                next[i] = added;
+                visited[i] |= added;
+                if ((phase & 1) != 0)
+                    phaseLow[i] |= added;
+                if ((phase & 2) != 0)
+                    phaseHigh[i] |= added;
+                nextLo[row] = Math.min(nextLo[row], w);
+                nextHi[row] = w;
+                long found = added & hearts[i];
+                if (found != 0 && goal < 0)
+                    goal = row*nCols + (w << 6) + Long.numberOfTrailingZeros(found);
+            }
+            return nextHi[row] >= 0;
+        }
+    }
+}
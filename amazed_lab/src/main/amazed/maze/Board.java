@@ -2,85 +2,171 @@ package amazed.maze;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.Collections;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.function.IntConsumer;
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 
 public class Board
 {
 
-    // after creation, read-only access (except for operation markPath)
-    private Cell[][] board;
+    // tile codes (Tile ordinals), one byte per cell in the order of
+    // `layout' (see slot); after creation, written only by toggle,
+    // setHeart and markPath, and read and written through TILE
+    private byte[] tiles;
     private int nRows;
     private int nCols;
 
-    // players currently on the board
-    // player identifier --> player object
-    private final Map<Integer, Player> players;
-    // count of number of registered players, to ensure unique player ids
-    private final AtomicInteger nPlayers = new AtomicInteger();
+    private final CellLayout layout;
+    // CellLayout.blockOrder of the layout, and number of blocks per row of the board
+    private final short[] blockOrder;
+    private int blocksPerRow;
 
-    // unique node id --> coordinate position of node on board
-    // after creation, read-only access
-    private Map<Integer, Position> idToCell;
+    // positions of players currently on the board
+    private PlayerRegistry players;
 
-    // empty board
-    Board(int nRows, int nCols)
-    {
-        board = new Cell[nRows][nCols];
-        this.nRows = nRows;
-        this.nCols = nCols;
-        players = new ConcurrentHashMap<>();
-        idToCell = new HashMap<>();
-    }
+    // slot --> tile before markPath, for the cells it marked
+    private final Map<Integer, Tile> unmarked = new HashMap<>();
+
+    // number of changes to the tiles, to let views cache what they draw
+    private volatile int version;
+
+    // cell index <--> unique node id
+    private IdPermutation ids;
+
+    private static final Tile[] TILES = Tile.values();
+
+    // opaque access to the elements of `tiles': a tile changed while
+    // solvers run is never torn, and is eventually seen by all threads
+    // even if they do not synchronize, since reads in a loop are not
+    // hoisted out of it
+    private static final VarHandle TILE = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    // most cells of a board, so that cell indexes and node ids fit in
+    // an int and tiles in an array; larger maps are read by LargeMaze
+    static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+    // largest cost of a tile, so that path costs fit in an int on any board
+    static final int MAX_COST = 15;
 
-    // board from map `filename'
-    Board(String filename)
+    // cost of entering a cell, by tile ordinal; 0 for tiles that are not accessible
+    private final int[] costs = new int[TILES.length];
+
+    // board from map `filename', with its tiles stored in `layout'
+    Board(String filename, CellLayout layout)
     {
+        this.layout = layout;
+        this.blockOrder = layout.blockOrder();
+        for (Tile tile: TILES)
+            costs[tile.ordinal()] = tile.getDefaultCost();
         try {
             readMap(filename);
         } catch (IOException e) {
             System.err.println("Error: cannot open map file " + filename);
             System.exit(1);
         }
-        players = new ConcurrentHashMap<>();
+        players = new PlayerRegistry(nRows, nCols);
+    }
+
+    // position in `tiles' of the tile of the cell at row, col
+    private int slot(int row, int col)
+    {
+        if (blockOrder == null)
+            return row*nCols + col;
+        int block = (row >>> CellLayout.BLOCK_BITS)*blocksPerRow + (col >>> CellLayout.BLOCK_BITS);
+        int mask = CellLayout.BLOCK_SIZE - 1;
+        return (block << 2*CellLayout.BLOCK_BITS)
+            | blockOrder[(row & mask) << CellLayout.BLOCK_BITS | (col & mask)];
+    }
+
+    private byte tile(int slot)
+    {
+        return (byte) TILE.getOpaque(tiles, slot);
+    }
+
+    private void setTile(int slot, Tile tile)
+    {
+        TILE.setOpaque(tiles, slot, (byte) tile.ordinal());
     }
 
+    CellLayout getLayout()
+    {
+        return layout;
+    }
+
+    // view of the cell at row, col, with the players on it, for rendering
     Cell getCell(int row, int col)
     {
-        return board[row][col];
+        int cell = row*nCols + col;
+        int occupants = players.occupancy(cell);
+        int player = occupants > 0 ? players.lastEntered(cell) : PlayerRegistry.NOWHERE;
+        return new Cell(getTile(row, col), ids.id(cell), occupants, player);
+    }
+
+    Tile getTile(int row, int col)
+    {
+        return TILES[tile(slot(row, col))];
     }
 
-    Cell getCell(Position position)
+    int getId(int row, int col)
     {
-        return board[position.getRow()][position.getCol()];
+        return ids.id(row*nCols + col);
     }
 
-    Cell getCell(int id)
+    // cell index (row*nCols + col) of node `id'; -1 if there is no such node
+    int getCellIndex(int id)
     {
-        return getCell(idToCell.get(id));
+        return (int) ids.cell(id);
     }
 
+    // null if there is no node `id'
     Position getPosition(int id)
     {
-        return idToCell.get(id);
+        int cell = getCellIndex(id);
+        if (cell < 0)
+            return null;
+        return new Position(cell/nCols, cell%nCols);
+    }
+
+    // cost of entering the cell at row, col; 0 if it is not accessible
+    int getCost(int row, int col)
+    {
+        return costs[tile(slot(row, col))];
+    }
+
+    boolean isHeart(int row, int col)
+    {
+        return tile(slot(row, col)) == Tile.HEART.ordinal();
+    }
+
+    // number of players on the cell at row, col
+    int occupancy(int row, int col)
+    {
+        return players.occupancy(row*nCols + col);
+    }
+
+    // apply `action' to the index of every cell with players on it
+    void forEachOccupied(IntConsumer action)
+    {
+        players.forEachOccupied(action);
     }
 
     int getWidth()
     {
-        return nCols * board[0][0].getWidth();
+        return nCols * Tile.EMPTY.getImage().getWidth(null);
     }
 
     int getHeight()
     {
-        return nRows * board[0][0].getHeight();
+        return nRows * Tile.EMPTY.getImage().getHeight(null);
     }
 
     int getRows()
@@ -101,29 +187,99 @@ public class Board
         return positionPath;
     }
 
+    // digest of the size of the board, of the cost of every cell, and of
+    // which cells are hearts: the same for the same map, whatever is
+    // marked, since marked cells count as the tiles they were before
+    long checksum()
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(ByteBuffer.allocate(8).putInt(nRows).putInt(nCols).array());
+        ByteBuffer codes = ByteBuffer.allocate(4*nCols);
+        for (int row = 0; row < nRows; row++) {
+            codes.clear();
+            for (int col = 0; col < nCols; col++) {
+                int slot = slot(row, col);
+                Tile tile = unmarked.isEmpty() ? TILES[tile(slot)]
+                    : unmarked.getOrDefault(slot, TILES[tile(slot)]);
+                codes.putInt(tile == Tile.HEART ? -1 : costs[tile.ordinal()]);
+            }
+            digest.update(codes.array());
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    // toggle cell at row, col between empty and brick, keeping its id;
+    // solid blocks become empty, other tiles are not changed
+    // Readers running concurrently see either the old or the new tile,
+    // and eventually the new one (see TILE); players on a cell that
+    // becomes inaccessible are not moved.
+    synchronized boolean toggle(int row, int col)
+    {
+        int slot = slot(row, col);
+        Tile tile = TILES[tile(slot)];
+        if (tile == Tile.EMPTY)
+            setTile(slot, Tile.BRICK);
+        else if (tile == Tile.BRICK || tile == Tile.SOLID)
+            setTile(slot, Tile.EMPTY);
+        else
+            return false;
+        version += 1;
+        return true;
+    }
+
+    // make the cell at row, col a heart if `heart', or an empty cell if
+    // not; only empty cells and hearts change
+    synchronized boolean setHeart(int row, int col, boolean heart)
+    {
+        int slot = slot(row, col);
+        Tile from = heart ? Tile.EMPTY : Tile.HEART;
+        if (tile(slot) != from.ordinal())
+            return false;
+        setTile(slot, heart ? Tile.HEART : Tile.EMPTY);
+        version += 1;
+        return true;
+    }
+
     // thread unsafe
     void markPath(List<Integer> path)
     {
-        List<Position> positionPath = pathToPositions(path);
-        for (Position position: positionPath) {
-            int row = position.getRow(), col = position.getCol();
-            board[row][col] = getCell(position).marked();
+        for (int id: path) {
+            int cell = getCellIndex(id);
+            int slot = slot(cell/nCols, cell%nCols);
+            Tile tile = TILES[tile(slot)];
+            if (tile == Tile.HEART || tile.isAccessible())
+                unmarked.putIfAbsent(slot, tile);
+            if (tile == Tile.HEART)
+                setTile(slot, Tile.FOUND);
+            else if (tile.isAccessible())
+                setTile(slot, Tile.MARKED);
         }
+        version += 1;
+    }
+
+    // changes whenever some tile changes
+    int getVersion()
+    {
+        return version;
     }
 
     private void readMap(String mapFile)
     throws FileNotFoundException, IOException
     {
-        Cell cell;
-        int row = 0, col = 0, nId = 0;
-        List<Integer> ids = null;
+        Tile tile = Tile.EMPTY;
+        int row = 0, col = 0;
         try (BufferedReader br = new BufferedReader(new FileReader(mapFile))) {
             String line;
             while ((line = br.readLine()) != null) {
                 // remove whitespaces
                 line = line.replaceAll("\\s", "");
                 StringReader lineReader = new StringReader(line);
-                int ch, id = 0;
+                int ch;
                 line_loop:
                 while ((ch = lineReader.read()) != -1) {
                     switch (ch) {
@@ -135,38 +291,58 @@ public class Board
                         if (m.find()) {
                             nRows = Integer.parseInt(m.group(1));
                             nCols = Integer.parseInt(m.group(2));
-                            board = new Cell[nRows][nCols];
-                            int numCells = nRows*nCols;
-                            ids = new ArrayList<>(2*numCells);
-                            for (int i = -numCells; i < numCells; i++)
-                                ids.add(i);
-                            Collections.shuffle(ids);
-                            idToCell = new HashMap<>(numCells);
+                            // all cells are empty until read; blocks are padded to whole blocks
+                            int blockRows = (nRows + CellLayout.BLOCK_SIZE - 1) >>> CellLayout.BLOCK_BITS;
+                            blocksPerRow = (nCols + CellLayout.BLOCK_SIZE - 1) >>> CellLayout.BLOCK_BITS;
+                            long slots = blockOrder == null ? (long) nRows*nCols
+                                : (long) blockRows*blocksPerRow*CellLayout.BLOCK_SIZE*CellLayout.BLOCK_SIZE;
+                            if (slots > MAX_CELLS) {
+                                System.err.println("Error: map " + mapFile + " has too many cells ("
+                                                   + nRows + " x " + nCols + "); use LargeMaze");
+                                System.exit(1);
+                            }
+                            tiles = new byte[(int) slots];
+                            ids = new IdPermutation((long) nRows*nCols);
                         }
                         break line_loop;
+                    case '%':
+                        // cost of an accessible tile, such as "% mud , 3"
+                        Matcher cm = Pattern.compile("^%(\\w+),(\\d+)$").matcher(line);
+                        Tile costly = null;
+                        if (cm.find())
+                            for (Tile t: TILES)
+                                if (t.getName().equals(cm.group(1)) && t.isAccessible())
+                                    costly = t;
+                        int cost = costly == null || cm.group(2).length() > 2 ? 0 : Integer.parseInt(cm.group(2));
+                        if (1 <= cost && cost <= MAX_COST)
+                            costs[costly.ordinal()] = cost;
+                        else
+                            System.out.println("Unrecognized tile cost " + line + "\n... ignored.");
+                        break line_loop;
                     default:
-                        if (row < nRows && col < nCols)
-                            id = ids.get(nId++);
                         if (ch == Tile.EMPTY.getChar())
-                            cell = new Cell(Tile.EMPTY, id);
+                            tile = Tile.EMPTY;
                         else if (ch == Tile.SOLID.getChar())
-                            cell = new Cell(Tile.SOLID, id);
+                            tile = Tile.SOLID;
                         else if (ch == Tile.BRICK.getChar())
-                            cell = new Cell(Tile.BRICK, id);
+                            tile = Tile.BRICK;
                         else if (ch == Tile.HEART.getChar())
-                            cell = new Cell(Tile.HEART, id);
+                            tile = Tile.HEART;
+                        else if (ch == Tile.MUD.getChar())
+                            tile = Tile.MUD;
+                        else if (ch == Tile.WATER.getChar())
+                            tile = Tile.WATER;
                         else {
                             System.out.println("Unrecognized symbol " +
                                                Character.toString((char) ch) + " on " +
                                                "row " + row + " column " + col);
                             System.out.println("... using empty cell instead.");
-                            cell = new Cell(Tile.EMPTY, id);
+                            tile = Tile.EMPTY;
                         }
                     }
                     // Ignore rows and columns beyond the declared ones
                     if (row < nRows && col < nCols) {
-                        board[row][col] = cell;
-                        idToCell.put(id, new Position(row, col));
+                        tiles[slot(row, col)] = (byte) tile.ordinal();
                         col += 1;
                     }
                 }
@@ -184,31 +360,13 @@ public class Board
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nCols; col++) {
                 result.append(' ');
-                result.append(board[row][col].getText());
+                result.append(getCell(row, col).getText());
             }
             result.append('\n');
         }
         return result.toString();
     }
 
-    // printable deep copy of the board with all players in consistent positions
-    Board consistentBoard()
-    {
-        Board result = new Board(nRows, nCols);
-        for (int row = 0; row < nRows; row++) {
-            for (int col = 0; col < nCols; col++) {
-                Cell cell = board[row][col];
-                result.board[row][col] = new Cell(cell.getTile(), cell.getId());
-            }
-        }
-        for (Player player: players.values()) {
-            Position pos = player.getPosition();
-            Player newPlayer = new Player(player.getId(), player.getName());
-            newPlayer.onBoard(result, pos.getRow(), pos.getCol());
-        }
-        return result;
-    }
-
     // is the position row, col a valid position on the board?
     boolean isOnBoard(int row, int col)
     {
@@ -217,7 +375,7 @@ public class Board
 
     boolean isAccessible(int row, int col)
     {
-        return isOnBoard(row, col) && board[row][col].isAccessible();
+        return isOnBoard(row, col) && getTile(row, col).isAccessible();
     }
 
     Position move(Position position, Direction direction)
@@ -242,54 +400,28 @@ public class Board
         return null;
     }
 
-    void register(Player player, int row, int col)
-    {
-        if (isOnBoard(row, col)) {
-            board[row][col].add(player);
-            players.put(player.getId(), player);
-        }
-    }
-
+    // create a player on node with given id, and return its player id
     int newPlayer(int id)
     {
-        int playerId = nPlayers.getAndIncrement();
-        Player player = new Player(playerId, "thread_" + playerId);
-        player.onBoard(this, id);
-        return playerId;
+        Position position = getPosition(id);
+        return players.newPlayer(position.getRow(), position.getCol());
     }
 
-    void deregister(Player player, int row, int col)
+    // show only the first `shown' players created
+    void setShownPlayers(int shown)
     {
-        if (isOnBoard(row, col)) {
-            board[row][col].remove(player);
-            players.remove(player.getId());
-        }
+        players.setShown(shown);
     }
 
     void deregisterAll()
     {
-        for (Map.Entry<Integer, Player> entry: players.entrySet()) {
-            Player player = entry.getValue();
-            Position position = player.getPosition();
-            deregister(player, position.getRow(), position.getCol());
-        }
-    }
-
-    Player getPlayer(int playerId)
-    {
-        return players.get(playerId);
+        players.removeAll();
     }
 
     // move registered player from its current position to newRow, newCol
-    void move(Player player, int newRow, int newCol)
-    {
-        int row = player.getRow();
-        int col = player.getCol();
-        if (isOnBoard(newRow, newCol) && players.containsKey(player.getId())) {
-            board[row][col].remove(player);
-            board[newRow][newCol].add(player);
-            player.setRow(newRow);
-            player.setCol(newCol);
-        }
+    void move(int playerId, int newRow, int newCol)
+    {
+        if (isAccessible(newRow, newCol))
+            players.move(playerId, newRow, newCol);
     }
 }
@@ -1,29 +1,37 @@
 package amazed.maze;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.awt.Image;
 import java.awt.Graphics;
 import java.awt.Toolkit;
 
 
+// view of a cell of a board, created for rendering
 class Cell
 {
     private final Tile tile;
-    private final Queue<Player> players;
 
     private final Image image;
     private final Character text;
     private final int id;
 
+    // players on the cell, only in snapshots for display
+    private final int occupants;
+    // id of the player shown on the cell if occupants > 0
+    private final int player;
+
     Cell(Tile tile, int id)
+    {
+        this(tile, id, 0, PlayerRegistry.NOWHERE);
+    }
+
+    Cell(Tile tile, int id, int occupants, int player)
     {
         this.tile = tile;
         this.image = tile.getImage();
         this.text = tile.getText();
         this.id = id;
-
-        this.players = new ConcurrentLinkedQueue<>();
+        this.occupants = occupants;
+        this.player = player;
     }
 
     Tile getTile()
@@ -38,18 +46,18 @@ class Cell
 
     Image getImage()
     {
-        if (players.isEmpty())
+        if (occupants == 0)
             return image;
         else
-            return players.element().getImage();
+            return Player.imageOf(player);
     }
 
     Character getText()
     {
-        if (players.isEmpty())
+        if (occupants == 0)
             return text;
         else
-            return players.element().getText();
+            return Player.TEXT;
     }
 
     int getWidth()
@@ -64,22 +72,7 @@ class Cell
 
     boolean isAccessible()
     {
-        return tile == Tile.EMPTY || tile == Tile.HEART;
-    }
-
-    boolean isMarkable()
-    {
-        return tile == Tile.EMPTY || tile == Tile.HEART;
-    }
-
-    Cell marked()
-    {
-        if (!isMarkable())
-            return this;
-        if (isHeart())
-            return new Cell(Tile.FOUND, id);
-        else
-            return new Cell(Tile.MARKED, id);
+        return tile.isAccessible();
     }
 
     public boolean isHeart()
@@ -87,21 +80,14 @@ class Cell
         return tile == Tile.HEART;
     }
 
-    void add(Player player)
-    {
-        if (isAccessible())
-            players.add(player);
-    }
-
-    void remove(Player player)
+    int getOccupants()
     {
-        if (isAccessible())
-            players.remove(player);
+        return occupants;
     }
 
-    // return a copy of the players list
-    Player[] getPlayers()
+    // id of the player shown on the cell; PlayerRegistry.NOWHERE if there are no occupants
+    int getPlayer()
     {
-        return players.toArray(new Player[0]);
+        return occupants == 0 ? PlayerRegistry.NOWHERE : player;
     }
 }
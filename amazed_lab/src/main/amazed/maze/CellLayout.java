@@ -0,0 +1,100 @@
+package amazed.maze;
+
+
+/**
+ * <code>CellLayout</code> is the order in which a maze stores the
+ * tiles of its cells in memory, which decides how many cache lines a
+ * search touches as it moves through the maze.
+ * <p>
+ * In row-major order, the cells above and below a cell are a whole
+ * row away, so on a wide maze almost every vertical step reads a new
+ * cache line. The other layouts split the board into square blocks
+ * of <code>BLOCK_SIZE</code> by <code>BLOCK_SIZE</code> cells, stored
+ * one after the other in row-major order, and order the cells of a
+ * block along a space-filling curve, so that a cache line holds a
+ * small square of cells instead of a strip of a row. Blocks keep the
+ * padding to less than a block per row and column, where a curve over
+ * the whole board would pad it to a square power of two.
+ * <p>
+ * The layout is internal to the maze: cell indexes, as returned by
+ * <code>Maze.cell</code>, are row-major whatever the layout.
+ */
+
+public enum CellLayout
+{
+    /**
+     * Row after row, as in the map file.
+     */
+    ROW_MAJOR,
+    /**
+     * Z-order (Morton order) within blocks: the position of a cell is
+     * the interleaving of the bits of its row and column.
+     */
+    MORTON,
+    /**
+     * Hilbert-curve order within blocks: consecutive cells are always
+     * neighbors, at the price of a less regular curve than Z-order.
+     */
+    HILBERT;
+
+    /**
+     * Number of rows and columns of cells in a block of the curve
+     * layouts.
+     */
+    public static final int BLOCK_SIZE = 64;
+
+    static final int BLOCK_BITS = 6;
+
+    // position, in its block, of the cell at (row, col) in the block,
+    // indexed by row*BLOCK_SIZE + col; null in row-major order
+    private short[] order;
+
+    static {
+        MORTON.order = new short[BLOCK_SIZE*BLOCK_SIZE];
+        HILBERT.order = new short[BLOCK_SIZE*BLOCK_SIZE];
+        for (int row = 0; row < BLOCK_SIZE; row++) {
+            for (int col = 0; col < BLOCK_SIZE; col++) {
+                MORTON.order[row*BLOCK_SIZE + col] = (short) (spread(row) << 1 | spread(col));
+                HILBERT.order[row*BLOCK_SIZE + col] = (short) hilbert(row, col);
+            }
+        }
+    }
+
+    // bits of `value' moved to the even positions
+    private static int spread(int value)
+    {
+        int result = 0;
+        for (int bit = 0; bit < BLOCK_BITS; bit++)
+            result |= ((value >>> bit) & 1) << (2*bit);
+        return result;
+    }
+
+    // distance along the Hilbert curve of a block to (row, col)
+    private static int hilbert(int row, int col)
+    {
+        int distance = 0;
+        for (int half = BLOCK_SIZE/2; half > 0; half /= 2) {
+            int rowBit = (row & half) > 0 ? 1 : 0;
+            int colBit = (col & half) > 0 ? 1 : 0;
+            distance += half*half*((3*colBit) ^ rowBit);
+            // rotate the quadrant so that the curve enters it at its origin
+            if (rowBit == 0) {
+                if (colBit == 1) {
+                    row = BLOCK_SIZE - 1 - row;
+                    col = BLOCK_SIZE - 1 - col;
+                }
+                int swap = row;
+                row = col;
+                col = swap;
+            }
+        }
+        return distance;
+    }
+
+    // position of every cell in its block, indexed by row*BLOCK_SIZE + col
+    // within the block; null in row-major order
+    short[] blockOrder()
+    {
+        return order;
+    }
+}
@@ -0,0 +1,650 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>CompactPath</code> is an immutable path in a <code>Maze</code>
+ * stored as its initial node followed by the sequence of moves
+ * between adjacent nodes.
+ * <p>
+ * Every move is encoded in two bits, as one of the four directions
+ * north, south, west, and east. Straight corridors are run-length
+ * encoded: since a path hardly ever turns back on its last move, the
+ * code of the direction opposite to the previous move is free and is
+ * used as an escape, followed by the direction of a run and by its
+ * length. A path thus takes a few bits per move, instead of a boxed
+ * <code>Integer</code> and a list node per step.
+ * <p>
+ * Method <code>asList</code> returns a read-only view of the path as
+ * a list of node identifiers, which decodes the moves lazily while it
+ * is iterated; method <code>write</code> streams the node identifiers
+ * to a character stream without building the list.
+ */
+
+public class CompactPath
+{
+    // runs of at least this length are run-length encoded
+    private static final int MIN_RUN = 5;
+    // moves between two checkpoints used for random access
+    private static final int CHECKPOINT_PERIOD = 1024;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // symbols of two bits each, 32 per word
+    private final long[] symbols;
+    private final long nSymbols;
+    private final long nMoves;
+
+    private final Board board;
+    private final int startRow;
+    private final int startCol;
+
+    // decoder state every CHECKPOINT_PERIOD moves, built on first random access
+    private volatile Cursor[] checkpoints;
+
+    private CompactPath(Board board, int startRow, int startCol, Encoder encoder)
+    {
+        this.board = board;
+        this.startRow = startRow;
+        this.startCol = startCol;
+        encoder.flush();
+        this.symbols = Arrays.copyOf(encoder.symbols, (int) ((encoder.nSymbols + 31) >>> 5));
+        this.nSymbols = encoder.nSymbols;
+        this.nMoves = encoder.nMoves;
+    }
+
+    private CompactPath(Board board, int startRow, int startCol,
+                        long[] symbols, long nSymbols, long nMoves)
+    {
+        this.board = board;
+        this.startRow = startRow;
+        this.startCol = startCol;
+        this.symbols = symbols;
+        this.nSymbols = nSymbols;
+        this.nMoves = nMoves;
+    }
+
+    // bytes of the binary form of this path, as written by `encode'
+    int encodedSize()
+    {
+        return 4 + 4 + 8 + 8 + 8*symbols.length;
+    }
+
+    // write the binary form of this path to `buffer': the row and column
+    // of the initial node, the number of moves and of symbols, and the
+    // symbols; unlike node identifiers, which are drawn anew whenever a
+    // map is read, it holds for any maze read from the same map
+    void encode(ByteBuffer buffer)
+    {
+        buffer.putInt(startRow).putInt(startCol).putLong(nMoves).putLong(nSymbols);
+        buffer.asLongBuffer().put(symbols);
+        buffer.position(buffer.position() + 8*symbols.length);
+    }
+
+    // path in `maze' read from its binary form in `buffer'; moves past
+    // the edges of the board only fail when they are decoded
+    static CompactPath decode(Maze maze, ByteBuffer buffer)
+    {
+        Board board = maze.getBoard();
+        int startRow = buffer.getInt(), startCol = buffer.getInt();
+        long nMoves = buffer.getLong(), nSymbols = buffer.getLong();
+        if (startRow < 0 || startRow >= board.getRows() || startCol < 0 || startCol >= board.getCols()
+            || nMoves < 0 || nSymbols < 0 || nSymbols > 32L*(buffer.remaining()/8))
+            throw new IllegalArgumentException("malformed path");
+        long[] symbols = new long[(int) ((nSymbols + 31) >>> 5)];
+        buffer.asLongBuffer().get(symbols);
+        buffer.position(buffer.position() + 8*symbols.length);
+        return new CompactPath(board, startRow, startCol, symbols, nSymbols, nMoves);
+    }
+
+    /**
+     * Encodes a sequence of node identifiers as a compact path.
+     *
+     * @param maze   the maze of the path
+     * @param ids    a non-empty list of identifiers of nodes in
+     *               <code>maze</code>, each adjacent to the next one
+     * @return       the compact path through the nodes <code>ids</code>
+     * @throws IllegalArgumentException if <code>ids</code> is empty or
+     *               two consecutive nodes are not adjacent
+     */
+    public static CompactPath fromIds(Maze maze, List<Integer> ids)
+    {
+        if (ids.isEmpty())
+            throw new IllegalArgumentException("empty path");
+        Board board = maze.getBoard();
+        Iterator<Integer> iter = ids.iterator();
+        Position previous = board.getPosition(iter.next());
+        Encoder encoder = new Encoder();
+        while (iter.hasNext()) {
+            Position current = board.getPosition(iter.next());
+            int direction = direction(previous, current);
+            if (direction < 0)
+                throw new IllegalArgumentException("not adjacent: " + previous + ", " + current);
+            encoder.add(direction);
+            previous = current;
+        }
+        Position start = board.getPosition(ids.get(0));
+        return new CompactPath(board, start.getRow(), start.getCol(), encoder);
+    }
+
+    /**
+     * Encodes the path that goes from node <code>from</code> to node
+     * <code>to</code> following the inverse of a predecessor relation,
+     * as recorded by a search.
+     *
+     * @param maze         the maze of the path
+     * @param from         the identifier of the initial node on the path
+     * @param to           the identifier of the final node on the path
+     * @param predecessor  if <code>(m -&gt; n)</code> is in
+     *                     <code>predecessor</code>, node <code>n</code>
+     *                     has been reached from its neighbor
+     *                     <code>m</code>
+     * @return             the compact path from <code>from</code> to
+     *                     <code>to</code>; <code>null</code> if it cannot
+     *                     be reconstructed from <code>predecessor</code>
+     */
+    public static CompactPath fromPredecessors(Maze maze, int from, int to,
+                                               Map<Integer, Integer> predecessor)
+    {
+        Board board = maze.getBoard();
+        ReversedMoves moves = new ReversedMoves();
+        Integer current = to;
+        Position position = board.getPosition(current);
+        while (current != from) {
+            current = predecessor.get(current);
+            if (current == null)
+                return null;
+            Position previous = board.getPosition(current);
+            moves.add(direction(previous, position));
+            position = previous;
+        }
+        return new CompactPath(board, position.getRow(), position.getCol(), moves.encoder());
+    }
+
+    /**
+     * Encodes the path that goes from cell <code>from</code> to cell
+     * <code>to</code> following the inverse of a predecessor relation
+     * on cell indexes, as described in {@link Maze#cell(int)}.
+     *
+     * @param maze         the maze of the path
+     * @param from         the index of the initial cell on the path
+     * @param to           the index of the final cell on the path
+     * @param predecessor  if <code>predecessor[n] == m</code>, cell
+     *                     <code>n</code> has been reached from its
+     *                     neighbor <code>m</code>; negative for cells
+     *                     that have not been reached
+     * @return             the compact path from <code>from</code> to
+     *                     <code>to</code>; <code>null</code> if it cannot
+     *                     be reconstructed from <code>predecessor</code>
+     */
+    public static CompactPath fromCellPredecessors(Maze maze, int from, int to, int[] predecessor)
+    {
+        Board board = maze.getBoard();
+        int nCols = board.getCols();
+        ReversedMoves moves = new ReversedMoves();
+        int current = to;
+        while (current != from) {
+            int previous = predecessor[current];
+            if (previous < 0)
+                return null;
+            moves.add(direction(new Position(previous/nCols, previous%nCols),
+                                new Position(current/nCols, current%nCols)));
+            current = previous;
+        }
+        return new CompactPath(board, from/nCols, from%nCols, moves.encoder());
+    }
+
+    /**
+     * Encodes the path that goes from cell <code>from</code> to cell
+     * <code>to</code> following a successor relation on cell indexes,
+     * such as the one built by a search that starts from
+     * <code>to</code>.
+     *
+     * @param maze        the maze of the path
+     * @param from        the index of the initial cell on the path
+     * @param to          the index of the final cell on the path
+     * @param successor   if <code>successor[m] == n</code>, cell
+     *                    <code>m</code> has been reached from its
+     *                    neighbor <code>n</code>; negative for cells
+     *                    that have not been reached
+     * @return            the compact path from <code>from</code> to
+     *                    <code>to</code>; <code>null</code> if it cannot
+     *                    be reconstructed from <code>successor</code>
+     */
+    public static CompactPath fromCellSuccessors(Maze maze, int from, int to, int[] successor)
+    {
+        Board board = maze.getBoard();
+        int nCols = board.getCols();
+        Encoder moves = new Encoder();
+        int current = from;
+        while (current != to) {
+            int next = successor[current];
+            if (next < 0)
+                return null;
+            moves.add(direction(new Position(current/nCols, current%nCols),
+                                new Position(next/nCols, next%nCols)));
+            current = next;
+        }
+        return new CompactPath(board, from/nCols, from%nCols, moves);
+    }
+
+    /**
+     * Encodes the path through a sequence of cell indexes, as
+     * described in {@link Maze#cell(int)}.
+     *
+     * @param maze    the maze of the path
+     * @param cells   a non-empty array of indexes of cells in
+     *                <code>maze</code>, each adjacent to the next one
+     * @return        the compact path through the cells <code>cells</code>
+     * @throws IllegalArgumentException if <code>cells</code> is empty or
+     *               two consecutive cells are not adjacent
+     */
+    public static CompactPath fromCells(Maze maze, int[] cells)
+    {
+        if (cells.length == 0)
+            throw new IllegalArgumentException("empty path");
+        Board board = maze.getBoard();
+        int nCols = board.getCols();
+        Encoder encoder = new Encoder();
+        for (int i = 1; i < cells.length; i++) {
+            Position previous = new Position(cells[i - 1]/nCols, cells[i - 1]%nCols);
+            Position current = new Position(cells[i]/nCols, cells[i]%nCols);
+            int direction = direction(previous, current);
+            if (direction < 0)
+                throw new IllegalArgumentException("not adjacent: " + previous + ", " + current);
+            encoder.add(direction);
+        }
+        return new CompactPath(board, cells[0]/nCols, cells[0]%nCols, encoder);
+    }
+
+    /**
+     * Returns the path that follows this path and then path
+     * <code>next</code>, whose initial node must be adjacent to the
+     * final node of this path.
+     *
+     * @param next   the path to be appended
+     * @return       the concatenation of the two paths
+     * @throws IllegalArgumentException if <code>next</code> does not
+     *               begin next to the end of this path
+     */
+    public CompactPath append(CompactPath next)
+    {
+        Cursor end = seek(nMoves);
+        int direction = direction(new Position(end.row, end.col),
+                                  new Position(next.startRow, next.startCol));
+        if (direction < 0)
+            throw new IllegalArgumentException("paths are not adjacent");
+        Encoder encoder = new Encoder();
+        for (Cursor cursor = new Cursor(); cursor.hasNext(); )
+            encoder.add(cursor.advance());
+        encoder.add(direction);
+        for (Cursor cursor = next.new Cursor(); cursor.hasNext(); )
+            encoder.add(cursor.advance());
+        return new CompactPath(board, startRow, startCol, encoder);
+    }
+
+    /**
+     * Returns the number of nodes on the path.
+     *
+     * @return   the number of nodes, one more than the number of moves
+     */
+    public long length()
+    {
+        return nMoves + 1;
+    }
+
+    /**
+     * Returns the number of bytes used to encode the moves of the path.
+     *
+     * @return   the size of the encoded moves in bytes
+     */
+    public long encodedBytes()
+    {
+        return (nSymbols + 3) >>> 2;
+    }
+
+    /**
+     * Returns a read-only list view of the node identifiers on the
+     * path. Iterating the list decodes the path one move at a time;
+     * random access decodes from the closest of the checkpoints taken
+     * every 1024 moves.
+     *
+     * @return   the list of node identifiers on the path
+     */
+    public List<Integer> asList()
+    {
+        return new IdList();
+    }
+
+    /**
+     * Writes the node identifiers on the path to <code>out</code>,
+     * one per line, decoding one move at a time.
+     *
+     * @param out   the stream to which the path is written
+     * @throws IOException if writing to <code>out</code> fails
+     */
+    public void write(Writer out)
+    throws IOException
+    {
+        Cursor cursor = new Cursor();
+        out.write(Integer.toString(cursor.id()));
+        out.write('\n');
+        while (cursor.hasNext()) {
+            cursor.advance();
+            out.write(Integer.toString(cursor.id()));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    // index of Direction of the move from `from' to adjacent `to'; -1 if not adjacent
+    private static int direction(Position from, Position to)
+    {
+        int dRow = to.getRow() - from.getRow(), dCol = to.getCol() - from.getCol();
+        if (dCol == 0 && dRow == -1)
+            return Direction.NORTH.ordinal();
+        if (dCol == 0 && dRow == 1)
+            return Direction.SOUTH.ordinal();
+        if (dRow == 0 && dCol == -1)
+            return Direction.WEST.ordinal();
+        if (dRow == 0 && dCol == 1)
+            return Direction.EAST.ordinal();
+        return -1;
+    }
+
+    // index of the Direction opposite to direction: NORTH <-> SOUTH, WEST <-> EAST
+    private static int opposite(int direction)
+    {
+        return direction ^ 1;
+    }
+
+    private int symbol(long index)
+    {
+        return (int) (symbols[(int) (index >>> 5)] >>> ((index & 31) << 1)) & 3;
+    }
+
+    // decoder state after `moves' moves from the start
+    private Cursor seek(long moves)
+    {
+        if (checkpoints == null) {
+            Cursor[] result = new Cursor[(int) (nMoves/CHECKPOINT_PERIOD) + 1];
+            Cursor cursor = new Cursor();
+            for (int i = 0; i < result.length; i++) {
+                result[i] = cursor.copy();
+                for (int j = 0; j < CHECKPOINT_PERIOD && cursor.hasNext(); j++)
+                    cursor.advance();
+            }
+            checkpoints = result;
+        }
+        Cursor cursor = checkpoints[(int) (moves/CHECKPOINT_PERIOD)].copy();
+        while (cursor.moves < moves)
+            cursor.advance();
+        return cursor;
+    }
+
+    // moves found last to first, two bits each, as when following predecessors
+    private static class ReversedMoves
+    {
+        private long[] moves = new long[4];
+        private long nMoves = 0;
+
+        void add(int direction)
+        {
+            if ((nMoves >>> 5) == moves.length)
+                moves = Arrays.copyOf(moves, 2*moves.length);
+            moves[(int) (nMoves >>> 5)] |= (long) direction << ((nMoves & 31) << 1);
+            nMoves += 1;
+        }
+
+        // encoder of the moves in first to last order
+        Encoder encoder()
+        {
+            Encoder encoder = new Encoder();
+            for (long i = nMoves - 1; i >= 0; i--)
+                encoder.add((int) (moves[(int) (i >>> 5)] >>> ((i & 31) << 1)) & 3);
+            return encoder;
+        }
+    }
+
+    // appends moves, as two-bit symbols, merging straight runs
+    private static class Encoder
+    {
+        long[] symbols = new long[4];
+        long nSymbols = 0;
+        long nMoves = 0;
+
+        // direction of the last symbol written; -1 before the first
+        private int previous = -1;
+        // pending run, not yet written
+        private int runDirection = -1;
+        private long runLength = 0;
+
+        void add(int direction)
+        {
+            nMoves += 1;
+            if (direction == runDirection) {
+                runLength += 1;
+                return;
+            }
+            flush();
+            runDirection = direction;
+            runLength = 1;
+        }
+
+        void flush()
+        {
+            if (runLength == 0)
+                return;
+            long length = runLength;
+            runLength = 0;
+            if (previous < 0) {
+                // the first move is always literal
+                put(runDirection);
+                previous = runDirection;
+                length -= 1;
+            }
+            if (length >= MIN_RUN || (length > 0 && runDirection == opposite(previous))) {
+                // escape, direction, then length in groups of three bits,
+                // each with a continuation bit
+                put(opposite(previous));
+                put(runDirection);
+                do {
+                    int group = (int) (length & 7);
+                    length >>>= 3;
+                    int nibble = group | (length > 0 ? 8 : 0);
+                    put(nibble >>> 2);
+                    put(nibble & 3);
+                } while (length > 0);
+            } else {
+                for (long i = 0; i < length; i++)
+                    put(runDirection);
+            }
+            previous = runDirection;
+        }
+
+        private void put(int symbol)
+        {
+            if ((nSymbols >>> 5) == symbols.length)
+                symbols = Arrays.copyOf(symbols, 2*symbols.length);
+            symbols[(int) (nSymbols >>> 5)] |= (long) symbol << ((nSymbols & 31) << 1);
+            nSymbols += 1;
+        }
+    }
+
+    // decoder of the moves, tracking the current cell
+    private class Cursor
+    {
+        long symbol = 0;
+        long moves = 0;
+        int previous = -1;
+        int runDirection = -1;
+        long runLeft = 0;
+        int row = startRow;
+        int col = startCol;
+
+        Cursor copy()
+        {
+            Cursor result = new Cursor();
+            result.symbol = symbol;
+            result.moves = moves;
+            result.previous = previous;
+            result.runDirection = runDirection;
+            result.runLeft = runLeft;
+            result.row = row;
+            result.col = col;
+            return result;
+        }
+
+        boolean hasNext()
+        {
+            return moves < nMoves;
+        }
+
+        // decode the next move, update the current cell, and return the move's direction
+        int advance()
+        {
+            if (runLeft == 0) {
+                int s = symbol(symbol++);
+                if (previous >= 0 && s == opposite(previous)) {
+                    runDirection = symbol(symbol++);
+                    runLeft = 0;
+                    int shift = 0, nibble;
+                    do {
+                        nibble = (symbol(symbol) << 2) | symbol(symbol + 1);
+                        symbol += 2;
+                        runLeft |= (long) (nibble & 7) << shift;
+                        shift += 3;
+                    } while ((nibble & 8) != 0);
+                } else {
+                    runDirection = s;
+                    runLeft = 1;
+                }
+                previous = runDirection;
+            }
+            runLeft -= 1;
+            moves += 1;
+            switch (DIRECTIONS[runDirection]) {
+            case NORTH:
+                row -= 1;
+                break;
+            case SOUTH:
+                row += 1;
+                break;
+            case WEST:
+                col -= 1;
+                break;
+            case EAST:
+                col += 1;
+                break;
+            }
+            return runDirection;
+        }
+
+        int id()
+        {
+            return board.getId(row, col);
+        }
+    }
+
+    // list of node identifiers, decoded on access
+    private class IdList extends AbstractList<Integer>
+    {
+        @Override
+        public int size()
+        {
+            return (int) Math.min(length(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Integer get(int index)
+        {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("index " + index);
+            return seek(index).id();
+        }
+
+        @Override
+        public Iterator<Integer> iterator()
+        {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<Integer> listIterator(final int index)
+        {
+            if (index < 0 || index > size())
+                throw new IndexOutOfBoundsException("index " + index);
+            return new ListIterator<Integer>() {
+                // cursor at node nextIndex - 1, or null before the first node
+                private Cursor cursor = index == 0 ? null : seek(index - 1);
+                private int nextIndex = index;
+
+                public boolean hasNext()
+                {
+                    return nextIndex < size();
+                }
+
+                public Integer next()
+                {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    if (cursor == null)
+                        cursor = new Cursor();
+                    else
+                        cursor.advance();
+                    nextIndex += 1;
+                    return cursor.id();
+                }
+
+                public boolean hasPrevious()
+                {
+                    return nextIndex > 0;
+                }
+
+                public Integer previous()
+                {
+                    if (!hasPrevious())
+                        throw new NoSuchElementException();
+                    nextIndex -= 1;
+                    Integer result = cursor.id();
+                    cursor = nextIndex == 0 ? null : seek(nextIndex - 1);
+                    return result;
+                }
+
+                public int nextIndex()
+                {
+                    return nextIndex;
+                }
+
+                public int previousIndex()
+                {
+                    return nextIndex - 1;
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                public void set(Integer id)
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                public void add(Integer id)
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
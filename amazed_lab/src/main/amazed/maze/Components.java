@@ -0,0 +1,170 @@
+package amazed.maze;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+
+
+// connected components of the accessible cells of a board
+//
+// Cells are labeled by a parallel union-find over the grid: the rows
+// of the board are split in bands that are processed by a fork/join
+// task each; every accessible cell is united with its accessible east
+// and south neighbors, once a first pass has made every cell its own
+// root. Union is lock-free (compare-and-set on the parent of a root,
+// always linking the larger root index under the smaller one) and
+// find uses path halving. A last parallel pass flattens every cell to
+// its root and flags the roots of components that contain a heart.
+// Every band checks first whether the labeling was cancelled, as when
+// the search that needs it has a deadline which has passed.
+class Components
+{
+    // rows per band below which a labeling task does not split further
+    private static final int BAND_ROWS = 64;
+
+    // passes of the labeling, in order
+    private static final int INIT = 0;
+    private static final int UNITE = 1;
+    private static final int FLATTEN = 2;
+
+    private final int nRows;
+    private final int nCols;
+
+    // cell index (row*nCols + col) --> parent cell index, during labeling
+    private final AtomicIntegerArray parent;
+    // cell index --> component label (index of its root), or -1 if not accessible
+    private final int[] label;
+    // component label --> whether the component includes a heart
+    private final boolean[] hasGoal;
+    // set when the labeling is no longer needed
+    private final BooleanSupplier cancelled;
+
+    Components(Board board, BooleanSupplier cancelled)
+    {
+        this.cancelled = cancelled;
+        this.nRows = board.getRows();
+        this.nCols = board.getCols();
+        int nCells = nRows*nCols;
+        parent = new AtomicIntegerArray(nCells);
+        label = new int[nCells];
+        hasGoal = new boolean[nCells];
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (int pass = INIT; pass <= FLATTEN; pass++)
+            pool.invoke(new Band(board, 0, nRows, pass));
+    }
+
+    // component label of cell at row, col; -1 if the cell is not accessible
+    int label(int row, int col)
+    {
+        return label[row*nCols + col];
+    }
+
+    // does the component of the cell at row, col include a heart?
+    boolean hasGoal(int row, int col)
+    {
+        int component = label(row, col);
+        return component >= 0 && hasGoal[component];
+    }
+
+    private int find(int x)
+    {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x)
+                return x;
+            int gp = parent.get(p);
+            if (p != gp)
+                // path halving: skip over the parent; losing the race is harmless
+                parent.compareAndSet(x, p, gp);
+            x = gp;
+        }
+    }
+
+    private void union(int a, int b)
+    {
+        while (true) {
+            a = find(a);
+            b = find(b);
+            if (a == b)
+                return;
+            if (a < b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            // link larger root under smaller one, unless a is no longer a root
+            if (parent.compareAndSet(a, a, b))
+                return;
+        }
+    }
+
+    // labeling of the rows in [fromRow, toRow)
+    private class Band extends RecursiveAction
+    {
+        private final Board board;
+        private final int fromRow;
+        private final int toRow;
+        // one of INIT, UNITE, FLATTEN
+        private final int pass;
+
+        Band(Board board, int fromRow, int toRow, int pass)
+        {
+            this.board = board;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.pass = pass;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (cancelled.getAsBoolean())
+                throw new CancellationException("labeling cancelled");
+            if (toRow - fromRow > BAND_ROWS) {
+                int mid = (fromRow + toRow) >>> 1;
+                invokeAll(new Band(board, fromRow, mid, pass),
+                          new Band(board, mid, toRow, pass));
+            } else if (pass == INIT) {
+                for (int i = fromRow*nCols; i < toRow*nCols; i++)
+                    parent.set(i, i);
+            } else if (pass == UNITE)
+                unite();
+            else
+                flatten();
+        }
+
+        private void unite()
+        {
+            for (int row = fromRow; row < toRow; row++) {
+                for (int col = 0; col < nCols; col++) {
+                    if (!board.isAccessible(row, col))
+                        continue;
+                    int i = row*nCols + col;
+                    if (board.isAccessible(row, col + 1))
+                        union(i, i + 1);
+                    if (board.isAccessible(row + 1, col))
+                        union(i, i + nCols);
+                }
+            }
+        }
+
+        private void flatten()
+        {
+            for (int row = fromRow; row < toRow; row++) {
+                for (int col = 0; col < nCols; col++) {
+                    int i = row*nCols + col;
+                    if (!board.isAccessible(row, col)) {
+                        label[i] = -1;
+                        continue;
+                    }
+                    int root = find(i);
+                    label[i] = root;
+                    if (board.isHeart(row, col))
+                        hasGoal[root] = true;
+                }
+            }
+        }
+    }
+}
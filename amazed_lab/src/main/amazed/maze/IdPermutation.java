@@ -0,0 +1,98 @@
+package amazed.maze;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+
+// random node ids of the cells of a board, computed instead of stored
+//
+// Node ids are drawn, as they always were, from [-nCells, nCells),
+// but instead of shuffling a list of all of them and keeping a map
+// from id to position, the id of a cell is a keyed pseudo-random
+// permutation of the domain [0, 2*nCells) applied to the cell index,
+// shifted down by nCells. The permutation is a balanced Feistel
+// network on the smallest even number of bits covering the domain,
+// restricted to the domain by cycle walking: values that fall outside
+// are encrypted again until they fall inside, which takes fewer than
+// four rounds on average. Both directions take constant time and no
+// memory besides the round keys.
+class IdPermutation
+{
+    private static final int ROUNDS = 4;
+
+    private final long nCells;
+    // size of the domain, 2*nCells
+    private final long domain;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] keys = new long[ROUNDS];
+
+    IdPermutation(long nCells)
+    {
+        this.nCells = nCells;
+        this.domain = 2*nCells;
+        int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(domain - 1));
+        halfBits = (bits + 1)/2;
+        halfMask = (1L << halfBits) - 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < ROUNDS; i++)
+            keys[i] = random.nextLong();
+    }
+
+    // node id of cell index `cell'
+    int id(long cell)
+    {
+        return (int) longId(cell);
+    }
+
+    // node id of cell index `cell', on boards with more cells than ints can number
+    long longId(long cell)
+    {
+        long value = encrypt(cell);
+        while (value >= domain)
+            value = encrypt(value);
+        return value - nCells;
+    }
+
+    // cell index of node `id'; -1 if no cell has that id
+    long cell(long id)
+    {
+        if (id < -nCells || id >= nCells)
+            return -1;
+        long value = id + nCells;
+        value = decrypt(value);
+        while (value >= domain)
+            value = decrypt(value);
+        return value < nCells ? value : -1;
+    }
+
+    private long encrypt(long value)
+    {
+        long left = value >>> halfBits, right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(right, keys[i]);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long decrypt(long value)
+    {
+        long left = value >>> halfBits, right = value & halfMask;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long previous = right ^ round(left, keys[i]);
+            right = left;
+            left = previous;
+        }
+        return (left << halfBits) | right;
+    }
+
+    // round function: a 64-bit mix of half and key, truncated to halfBits
+    private long round(long half, long key)
+    {
+        long x = half ^ key;
+        x = (x ^ (x >>> 33))*0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33))*0xc4ceb9fe1a85ec53L;
+        return (x ^ (x >>> 33)) & halfMask;
+    }
+}
@@ -73,6 +73,12 @@ class ImageFactory
             case "heart":
                 ch = 'v';
                 break;
+            case "mud":
+                ch = ',';
+                break;
+            case "water":
+                ch = '~';
+                break;
             default:
                 ch = '?';
             }
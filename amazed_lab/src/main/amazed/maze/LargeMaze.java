@@ -0,0 +1,388 @@
+package amazed.maze;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <code>LargeMaze</code> is a maze whose nodes are identified by
+ * <code>long</code>s, for maps with more cells than
+ * <code>Maze</code> can number with <code>int</code>s.
+ * <p>
+ * It offers the same exploration as <code>Maze</code>: method
+ * <code>start</code> returns the identifier of the start node in the
+ * top-left cell, method <code>neighbors</code> the identifiers of the
+ * nodes adjacent to a node, and method <code>hasGoal</code>
+ * determines if a node contains a goal. Node identifiers are drawn
+ * at random from <code>[-cells(), cells())</code>, as in
+ * <code>Maze</code>. The methods taking cell indexes, from
+ * <code>0</code> to <code>cells()</code> (excluded) in row-major
+ * order, never allocate objects.
+ * <p>
+ * The maze is read from the same maps as <code>Maze</code>. Its tiles
+ * are stored four bits per cell in <code>MappedBytes</code>, off the
+ * Java heap, so that neither the size of arrays nor that of the heap
+ * limits the number of cells. A large maze
+ * is not displayed, its map cannot be changed, and the costs of
+ * terrain are ignored: every move costs the same. Method
+ * <code>close</code> deletes the temporary file.
+ */
+
+public class LargeMaze
+    implements Closeable
+{
+    private static final Tile[] TILES = Tile.values();
+    // tile of every map symbol below 128; null if none
+    private static final Tile[] SYMBOLS = new Tile[128];
+
+    static {
+        for (Tile tile: new Tile[] { Tile.EMPTY, Tile.SOLID, Tile.BRICK, Tile.HEART, Tile.MUD, Tile.WATER })
+            SYMBOLS[tile.getChar()] = tile;
+    }
+
+    private final String filename;
+    private int nRows;
+    private int nCols;
+    private long nCells;
+
+    // tile ordinal of every cell, in row-major order, two cells per byte
+    private MappedBytes tiles;
+    private IdPermutation ids;
+
+    /**
+     * Creates a maze by reading a map from file.
+     *
+     * @param filename   the name of the text file containing the map
+     * @throws IOException if the map cannot be read, or the tiles
+     *         cannot be stored
+     */
+    public LargeMaze(String filename)
+    throws IOException
+    {
+        this.filename = filename;
+        try {
+            readMap(filename);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        if (tiles == null) {
+            close();
+            throw new IOException("no size line in map file " + filename);
+        }
+    }
+
+    // read the map like Board.readMap, but without whitespace-stripped
+    // copies of the rows of tiles, which may be long
+    private void readMap(String mapFile)
+    throws IOException
+    {
+        int row = 0, col = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(mapFile))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line_loop:
+                for (int i = 0; i < line.length(); i++) {
+                    char ch = line.charAt(i);
+                    if (Character.isWhitespace(ch))
+                        continue;
+                    switch (ch) {
+                    case '@':
+                        break line_loop;
+                    case '$':
+                        Matcher m = Pattern.compile("^\\$(\\d+),(\\d+)$").matcher(line.replaceAll("\\s", ""));
+                        if (m.find()) {
+                            nRows = Integer.parseInt(m.group(1));
+                            nCols = Integer.parseInt(m.group(2));
+                            nCells = (long) nRows*nCols;
+                            // all cells are empty until read
+                            close();
+                            tiles = new MappedBytes((nCells + 1)/2);
+                            ids = new IdPermutation(nCells);
+                        }
+                        break line_loop;
+                    case '%':
+                        // the terrain of a large maze has no cost
+                        break line_loop;
+                    default:
+                        Tile tile = ch < SYMBOLS.length ? SYMBOLS[ch] : null;
+                        if (tile == null) {
+                            System.out.println("Unrecognized symbol " + ch + " on "
+                                               + "row " + row + " column " + col);
+                            System.out.println("... using empty cell instead.");
+                            tile = Tile.EMPTY;
+                        }
+                        // Ignore rows and columns beyond the declared ones
+                        if (row < nRows && col < nCols) {
+                            setTile((long) row*nCols + col, tile);
+                            col += 1;
+                        }
+                    }
+                    if (nCols > 0 && col == nCols) {
+                        row += 1;
+                        col = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    private Tile tileAt(long cell)
+    {
+        return TILES[(tiles.get(cell >>> 1) >>> (4*(cell & 1))) & 0xf];
+    }
+
+    private void setTile(long cell, Tile tile)
+    {
+        long index = cell >>> 1;
+        int shift = (int) (4*(cell & 1));
+        tiles.put(index, (byte) (tiles.get(index) & ~(0xf << shift) | tile.ordinal() << shift));
+    }
+
+    /**
+     * Deletes the temporary file of the tiles. The maze must not be
+     * used afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close()
+    throws IOException
+    {
+        if (tiles != null)
+            tiles.close();
+    }
+
+    /**
+     * Returns the name of the file the map of the maze was read from.
+     *
+     * @return   the name of the map file
+     */
+    public String filename()
+    {
+        return filename;
+    }
+
+    /**
+     * Returns the number of rows of cells in the maze.
+     *
+     * @return   the number of rows
+     */
+    public int rows()
+    {
+        return nRows;
+    }
+
+    /**
+     * Returns the number of columns of cells in the maze.
+     *
+     * @return   the number of columns
+     */
+    public int cols()
+    {
+        return nCols;
+    }
+
+    /**
+     * Returns the number of cells in the maze.
+     *
+     * @return   the number of cells, <code>rows()*cols()</code>
+     */
+    public long cells()
+    {
+        return nCells;
+    }
+
+    /**
+     * Returns the unique identifier of the start node, corresponding
+     * to the top-left cell in the maze.
+     *
+     * @return   the identifier of the unique start node
+     */
+    public long start()
+    {
+        return ids.longId(0);
+    }
+
+    /**
+     * Returns the unique identifier of the node in a given cell of
+     * the maze. Row <code>0</code>, column <code>0</code> is the
+     * top-left cell.
+     *
+     * @param row   the row of the cell, between <code>0</code> and the
+     *              number of rows of the maze (excluded)
+     * @param col   the column of the cell, between <code>0</code> and
+     *              the number of columns of the maze (excluded)
+     * @return      the identifier of the node in cell <code>row</code>,
+     *              <code>col</code>
+     */
+    public long id(int row, int col)
+    {
+        return ids.longId((long) row*nCols + col);
+    }
+
+    /**
+     * Returns the row of the cell of a given node.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the row of the cell of the node with identifier <code>id</code>
+     */
+    public int row(long id)
+    {
+        return (int) (cell(id)/nCols);
+    }
+
+    /**
+     * Returns the column of the cell of a given node.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the column of the cell of the node with identifier <code>id</code>
+     */
+    public int col(long id)
+    {
+        return (int) (cell(id)%nCols);
+    }
+
+    /**
+     * Returns the index of the cell of a given node, in row-major
+     * order: the cell in row <code>r</code> and column <code>c</code>
+     * has index <code>r*cols() + c</code>.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the index of the cell of the node with identifier <code>id</code>
+     */
+    public long cell(long id)
+    {
+        long cell = ids.cell(id);
+        if (cell < 0)
+            throw new IllegalArgumentException("no node with identifier " + id);
+        return cell;
+    }
+
+    /**
+     * Returns the identifier of the node in a given cell.
+     *
+     * @param cell   the index of a cell in the maze
+     * @return       the identifier of the node in cell <code>cell</code>
+     */
+    public long cellId(long cell)
+    {
+        return ids.longId(cell);
+    }
+
+    /**
+     * Tests whether a given node can be entered, that is whether its
+     * cell is not a wall.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier
+     *             <code>id</code> is accessible; <code>false</code> otherwise
+     */
+    public boolean isAccessible(long id)
+    {
+        return tileAt(cell(id)).isAccessible();
+    }
+
+    /**
+     * Returns the identifiers of the accessible nodes adjacent to a
+     * given node: the nodes in the cells directly north, south, west
+     * and east of it, which are not walls.
+     *
+     * @param id  the identifier of a node in the maze
+     * @return    the set of identifier of all nodes that are in
+     *            <code>id</code>'s neighborhood
+     */
+    public Set<Long> neighbors(long id)
+    {
+        long[] cells = new long[4];
+        int count = neighborCells(cell(id), cells);
+        Set<Long> neighbors = new HashSet<>(4);
+        for (int i = 0; i < count; i++)
+            neighbors.add(cellId(cells[i]));
+        return neighbors;
+    }
+
+    /**
+     * Stores in an array the indexes of all cells directly adjacent
+     * to a given cell, and accessible from it; this is the same
+     * neighborhood as that of method <code>neighbors</code>, without
+     * allocating a set.
+     *
+     * @param cell        the index of a cell in the maze
+     * @param neighbors   an array of at least four elements, whose first
+     *                    elements are overwritten with the indexes of
+     *                    the neighbor cells
+     * @return            the number of neighbor cells, from zero to four
+     */
+    public int neighborCells(long cell, long[] neighbors)
+    {
+        long col = cell%nCols;
+        int count = 0;
+        if (cell >= nCols && tileAt(cell - nCols).isAccessible())
+            neighbors[count++] = cell - nCols;
+        if (cell + nCols < nCells && tileAt(cell + nCols).isAccessible())
+            neighbors[count++] = cell + nCols;
+        if (col > 0 && tileAt(cell - 1).isAccessible())
+            neighbors[count++] = cell - 1;
+        if (col < nCols - 1 && tileAt(cell + 1).isAccessible())
+            neighbors[count++] = cell + 1;
+        return count;
+    }
+
+    /**
+     * Tests whether a given node contains a goal.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier <code>id</code> is a goal;
+     *             <code>false</code> otherwise
+     */
+    public boolean hasGoal(long id)
+    {
+        return isGoalCell(cell(id));
+    }
+
+    /**
+     * Tests whether a given cell contains a goal.
+     *
+     * @param cell   the index of a cell in the maze
+     * @return       <code>true</code> if cell <code>cell</code> is a goal;
+     *               <code>false</code> otherwise
+     */
+    public boolean isGoalCell(long cell)
+    {
+        return tileAt(cell) == Tile.HEART;
+    }
+
+    /**
+     * Tests whether a path goes from the start node to a goal through
+     * adjacent accessible nodes of this maze.
+     *
+     * @param path   a path in the maze
+     * @return       <code>true</code> if <code>path</code> begins with the
+     *               start node, follows a connected chain of adjacent
+     *               accessible nodes, and ends with a goal node;
+     *               <code>false</code> otherwise
+     */
+    public boolean isValidPath(LongPath path)
+    {
+        if (path.maze() != this)
+            return false;
+        PrimitiveIterator.OfLong cells = path.cells();
+        long cell = cells.nextLong();
+        if (cell != 0)
+            return false;
+        while (cells.hasNext()) {
+            // moves from a cell to the next are adjacent by construction
+            cell = cells.nextLong();
+            if (cell < 0 || cell >= nCells || !tileAt(cell).isAccessible())
+                return false;
+        }
+        return isGoalCell(cell);
+    }
+}
@@ -0,0 +1,228 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * <code>LongPath</code> is an immutable path in a
+ * <code>LargeMaze</code>, stored as the cell of its initial node
+ * followed by the sequence of moves between adjacent nodes, two bits
+ * per move, as in <code>CompactPath</code> but without run-length
+ * encoding.
+ * <p>
+ * Paths are built by a <code>LongPath.Builder</code>, one cell at a
+ * time; method <code>ids</code> iterates over the node identifiers of
+ * the path without boxing them, and method <code>write</code> streams
+ * them to a character stream.
+ */
+
+public class LongPath
+{
+    // moves per word of two bits each, and words per chunk of moves
+    private static final int MOVES_PER_WORD = 32;
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_WORDS = 1 << CHUNK_BITS;
+
+    // move codes, as the four values of Direction
+    private static final int NORTH = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int EAST = 3;
+
+    private final LargeMaze maze;
+    private final long startCell;
+    // moves, in chunks of CHUNK_WORDS words, so that a path is not limited by array size
+    private final long[][] moves;
+    private final long nMoves;
+
+    private LongPath(LargeMaze maze, long startCell, long[][] moves, long nMoves)
+    {
+        this.maze = maze;
+        this.startCell = startCell;
+        this.moves = moves;
+        this.nMoves = nMoves;
+    }
+
+    /**
+     * Returns the number of nodes on the path, including the initial node.
+     *
+     * @return   the number of nodes on the path
+     */
+    public long length()
+    {
+        return nMoves + 1;
+    }
+
+    /**
+     * Returns the maze of the path.
+     *
+     * @return   the maze whose nodes the path goes through
+     */
+    public LargeMaze maze()
+    {
+        return maze;
+    }
+
+    private int move(long i)
+    {
+        long word = moves[(int) (i >>> (CHUNK_BITS + 5))][(int) (i >>> 5) & (CHUNK_WORDS - 1)];
+        return (int) (word >>> (2*(i & (MOVES_PER_WORD - 1)))) & 3;
+    }
+
+    /**
+     * Returns an iterator over the indexes of the cells of the path,
+     * from the initial one.
+     *
+     * @return   the cell indexes of the path, in order
+     */
+    public PrimitiveIterator.OfLong cells()
+    {
+        return new PrimitiveIterator.OfLong()
+        {
+            private long next = 0;
+            private long cell = startCell;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next <= nMoves;
+            }
+
+            @Override
+            public long nextLong()
+            {
+                if (next > nMoves)
+                    throw new NoSuchElementException();
+                if (next > 0) {
+                    switch (move(next - 1)) {
+                    case NORTH: cell -= maze.cols(); break;
+                    case SOUTH: cell += maze.cols(); break;
+                    case WEST: cell -= 1; break;
+                    default: cell += 1; break;
+                    }
+                }
+                next += 1;
+                return cell;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the identifiers of the nodes of the
+     * path, from the initial one.
+     *
+     * @return   the node identifiers of the path, in order
+     */
+    public PrimitiveIterator.OfLong ids()
+    {
+        PrimitiveIterator.OfLong cells = cells();
+        return new PrimitiveIterator.OfLong()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return cells.hasNext();
+            }
+
+            @Override
+            public long nextLong()
+            {
+                return maze.cellId(cells.nextLong());
+            }
+        };
+    }
+
+    /**
+     * Writes the node identifiers of the path to a character stream,
+     * one per line, without building a list of them.
+     *
+     * @param out   the stream where the identifiers are written
+     * @throws IOException if writing to <code>out</code> fails
+     */
+    public void write(Writer out)
+    throws IOException
+    {
+        for (PrimitiveIterator.OfLong ids = ids(); ids.hasNext(); ) {
+            out.write(Long.toString(ids.nextLong()));
+            out.write('\n');
+        }
+    }
+
+    /**
+     * <code>LongPath.Builder</code> builds a path from its cells, in
+     * order.
+     */
+    public static class Builder
+    {
+        private final LargeMaze maze;
+        private final long startCell;
+        private long[][] moves = new long[1][16];
+        private long nMoves = 0;
+        private long last;
+
+        /**
+         * Creates a builder of a path that begins in a given cell.
+         *
+         * @param maze        the maze of the path
+         * @param startCell   the index of the initial cell of the path
+         */
+        public Builder(LargeMaze maze, long startCell)
+        {
+            this.maze = maze;
+            this.startCell = startCell;
+            this.last = startCell;
+        }
+
+        /**
+         * Extends the path to a cell adjacent to its last one.
+         *
+         * @param cell   the index of a cell next to the last cell added
+         * @return       this builder
+         * @throws IllegalArgumentException if <code>cell</code> is
+         *         not adjacent to the last cell added
+         */
+        public Builder add(long cell)
+        {
+            long cols = maze.cols();
+            int code;
+            if (cell == last - cols)
+                code = NORTH;
+            else if (cell == last + cols)
+                code = SOUTH;
+            else if (cell == last - 1 && last%cols != 0)
+                code = WEST;
+            else if (cell == last + 1 && cell%cols != 0)
+                code = EAST;
+            else
+                throw new IllegalArgumentException("cell " + cell + " not next to cell " + last);
+            int chunk = (int) (nMoves >>> (CHUNK_BITS + 5));
+            int word = (int) (nMoves >>> 5) & (CHUNK_WORDS - 1);
+            if (chunk == moves.length)
+                moves = Arrays.copyOf(moves, 2*chunk);
+            if (moves[chunk] == null)
+                moves[chunk] = new long[CHUNK_WORDS];
+            else if (word == moves[chunk].length)
+                moves[chunk] = Arrays.copyOf(moves[chunk], Math.min(2*word, CHUNK_WORDS));
+            moves[chunk][word] |= (long) code << (2*(nMoves & (MOVES_PER_WORD - 1)));
+            nMoves += 1;
+            last = cell;
+            return this;
+        }
+
+        /**
+         * Returns the path of the cells added so far.
+         *
+         * @return   a path from the initial cell to the last cell added
+         */
+        public LongPath build()
+        {
+            long[][] copy = new long[moves.length][];
+            for (int i = 0; i < moves.length && moves[i] != null; i++)
+                copy[i] = moves[i].clone();
+            return new LongPath(maze, startCell, copy, nMoves);
+        }
+    }
+}
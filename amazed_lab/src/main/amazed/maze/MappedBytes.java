@@ -0,0 +1,119 @@
+package amazed.maze;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <code>MappedBytes</code> is an array of bytes indexed by
+ * <code>long</code>s, stored off the Java heap in a temporary file
+ * mapped to memory in chunks, so that neither the size of arrays nor
+ * that of the heap limits its length; the operating system pages the
+ * bytes in and out as needed.
+ * <p>
+ * All bytes are zero when the array is created. Bytes written by a
+ * thread are seen by the threads that start after the writes, or
+ * that synchronize with the writing thread. Method <code>close</code>
+ * deletes the temporary file.
+ */
+
+public class MappedBytes
+    implements Closeable
+{
+    // bytes per chunk, by default: 2^30, the most one mapping takes comfortably
+    private static final int CHUNK_BITS = 30;
+
+    private final long length;
+    private final int chunkBits;
+    private final long chunkMask;
+    private final MappedByteBuffer[] chunks;
+    private FileChannel channel;
+
+    /**
+     * Creates an array of zero bytes.
+     *
+     * @param length   the number of bytes of the array
+     * @throws IOException if the temporary file cannot be created
+     */
+    public MappedBytes(long length)
+    throws IOException
+    {
+        this(length, CHUNK_BITS);
+    }
+
+    // array of `length' zero bytes, in chunks of 2^chunkBits bytes
+    MappedBytes(long length, int chunkBits)
+    throws IOException
+    {
+        this.length = length;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        Path file = Files.createTempFile("amazed-", ".bytes");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                   StandardOpenOption.DELETE_ON_CLOSE);
+        long chunkSize = 1L << chunkBits;
+        chunks = new MappedByteBuffer[(int) ((length + chunkSize - 1) >>> chunkBits)];
+        try {
+            for (int i = 0; i < chunks.length; i++)
+                // a file grows, with zeros, to cover what is mapped
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, i*chunkSize,
+                                        Math.min(chunkSize, length - i*chunkSize));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the array.
+     *
+     * @return   the length of the array
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    /**
+     * Returns a byte of the array.
+     *
+     * @param index   the index of a byte, from <code>0</code> to
+     *                <code>length()</code> (excluded)
+     * @return        the byte at <code>index</code>
+     */
+    public byte get(long index)
+    {
+        return chunks[(int) (index >>> chunkBits)].get((int) (index & chunkMask));
+    }
+
+    /**
+     * Sets a byte of the array.
+     *
+     * @param index   the index of a byte, from <code>0</code> to
+     *                <code>length()</code> (excluded)
+     * @param value   the new value of the byte at <code>index</code>
+     */
+    public void put(long index, byte value)
+    {
+        chunks[(int) (index >>> chunkBits)].put((int) (index & chunkMask), value);
+    }
+
+    /**
+     * Deletes the temporary file of the array. The array must not be
+     * used afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close()
+    throws IOException
+    {
+        if (channel != null)
+            channel.close();
+        channel = null;
+    }
+}
@@ -1,7 +1,9 @@
 package amazed.maze;
 
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.HashSet;
 import java.util.ListIterator;
 import java.util.List;
@@ -34,7 +36,15 @@ import java.util.Set;
 
 public class Maze
 {
+    /**
+     * Number of nodes explored reported by solvers that cannot count
+     * them (see <code>reportExplored</code>).
+     */
+    public static final int UNCOUNTED = -1;
+
     private Board board;
+    // file the map was read from; null if not read from a file
+    private String filename;
 
     Board getBoard()
     {
@@ -44,15 +54,43 @@ public class Maze
     private int delay = 500;
     private boolean animate = true;
 
+    // connected components of the board, labeled on first use
+    private volatile Components components;
+    // changes of the map by toggle and setGoal
+    private volatile long modifications;
+
+    // first visits of the cells, if recorded
+    private VisitLog visits;
+    // nodes explored by the current search, as reported by its solvers
+    // since recordVisits: 0 if none reported, or UNCOUNTED
+    private final AtomicInteger explored = new AtomicInteger();
+
+    // set when the deadline of the current search has passed
+    private volatile boolean expired;
+
 
     /**
      * Creates a maze by reading a map from file.
      *
      * @param filename   the name of the text file containing the map
      */
-    Maze(String filename)
+    public Maze(String filename)
+    {
+        this(filename, CellLayout.ROW_MAJOR);
+    }
+
+    /**
+     * Creates a maze by reading a map from file, and storing its cells
+     * in memory in a given order. The layout changes how fast the
+     * maze is searched, not what the search finds.
+     *
+     * @param filename   the name of the text file containing the map
+     * @param layout     the order of the cells in memory
+     */
+    public Maze(String filename, CellLayout layout)
     {
-        board = new Board(filename);
+        board = new Board(filename, layout);
+        this.filename = filename;
     }
 
     // initialize Maze wrapping given board
@@ -61,7 +99,73 @@ public class Maze
         this.board = board;
     }
 
-    void setDelay(int delay)
+    /**
+     * Returns the name of the map file this maze was read from.
+     *
+     * @return   the name of the map file; <code>null</code> if the maze
+     *           was not read from a file
+     */
+    public String filename()
+    {
+        return filename;
+    }
+
+    /**
+     * Returns the order in which this maze stores its cells in memory.
+     *
+     * @return   the layout of the cells
+     */
+    public CellLayout layout()
+    {
+        return board.getLayout();
+    }
+
+    /**
+     * Returns statistics of the shape of this maze, computed in
+     * parallel over the whole maze at every call.
+     *
+     * @return   the profile of this maze
+     */
+    public MazeProfile profile()
+    {
+        return new MazeProfile(board);
+    }
+
+    /**
+     * Returns a checksum of the map of this maze: its size, and which
+     * cells are accessible and which are goals. Mazes read from the
+     * same map have the same checksum, and mazes with different maps
+     * almost certainly have different ones. The checksum is computed
+     * at every call, and changes if cells are toggled, but not when
+     * the solution is shown.
+     *
+     * @return   a 64-bit digest of the map
+     */
+    public long checksum()
+    {
+        return board.checksum();
+    }
+
+    /**
+     * Returns the number of times that the map of this maze has been
+     * changed by <code>toggle</code> or <code>setGoal</code>, so that
+     * what is computed from the map can tell when it is out of date.
+     *
+     * @return   the number of changes of the map since it was read
+     */
+    public long modifications()
+    {
+        return modifications;
+    }
+
+    /**
+     * Sets the pause between a step and the next one in the
+     * animation of the players; if <code>delay &lt;= 0</code> there is
+     * no animation, and moving players does nothing.
+     *
+     * @param delay   milliseconds of pause between steps
+     */
+    public void setDelay(int delay)
     {
         this.delay = delay;
         if (delay <= 0)
@@ -81,7 +185,150 @@ public class Maze
      */
     public int start()
     {
-        return board.getCell(0, 0).getId();
+        return board.getId(0, 0);
+    }
+
+    /**
+     * Returns the number of rows of cells in the maze.
+     *
+     * @return   the number of rows
+     */
+    public int rows()
+    {
+        return board.getRows();
+    }
+
+    /**
+     * Returns the number of columns of cells in the maze.
+     *
+     * @return   the number of columns
+     */
+    public int cols()
+    {
+        return board.getCols();
+    }
+
+    /**
+     * Returns the unique identifier of the node in a given cell of
+     * the maze. Row <code>0</code>, column <code>0</code> is the
+     * top-left cell.
+     *
+     * @param row   the row of the cell, between <code>0</code> and the
+     *              number of rows of the maze (excluded)
+     * @param col   the column of the cell, between <code>0</code> and
+     *              the number of columns of the maze (excluded)
+     * @return      the identifier of the node in cell <code>row</code>,
+     *              <code>col</code>
+     */
+    public int id(int row, int col)
+    {
+        return board.getId(row, col);
+    }
+
+    /**
+     * Returns the row of the cell of a given node.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the row of the cell of the node with identifier <code>id</code>
+     */
+    public int row(int id)
+    {
+        return board.getPosition(id).getRow();
+    }
+
+    /**
+     * Returns the column of the cell of a given node.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the column of the cell of the node with identifier <code>id</code>
+     */
+    public int col(int id)
+    {
+        return board.getPosition(id).getCol();
+    }
+
+    /**
+     * Tests whether a given node can be entered, that is whether its
+     * cell is not a wall.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node with identifier
+     *             <code>id</code> is accessible;
+     *             <code>false</code> otherwise
+     */
+    public boolean isAccessible(int id)
+    {
+        Position position = board.getPosition(id);
+        return board.isAccessible(position.getRow(), position.getCol());
+    }
+
+    /**
+     * Tests whether the cell in a given row and column is in the
+     * maze and can be entered. Unlike the other methods taking rows
+     * and columns, any row and column can be tested.
+     *
+     * @param row   a row, possibly outside the maze
+     * @param col   a column, possibly outside the maze
+     * @return      <code>true</code> if cell <code>row</code>,
+     *              <code>col</code> is in the maze and accessible;
+     *              <code>false</code> otherwise
+     */
+    public boolean isAccessible(int row, int col)
+    {
+        return board.isAccessible(row, col);
+    }
+
+    /**
+     * Toggles a node between empty and wall: an empty cell becomes a
+     * brick, and a brick or solid block becomes empty. Other cells
+     * (goals and marked cells) are not changed. The method can be
+     * called while other threads explore the maze: they read either
+     * the old or the new tile of the node, never a torn one, and
+     * eventually read the new tile, without synchronizing. A thread
+     * that must see the change at its very next access synchronizes
+     * with the caller, for instance by joining it.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node has been toggled;
+     *             <code>false</code> if it cannot be toggled
+     */
+    public boolean toggle(int id)
+    {
+        Position position = board.getPosition(id);
+        if (!board.toggle(position.getRow(), position.getCol()))
+            return false;
+        // connectivity changed: label components again on next use,
+        // after any labeling that may have seen the old tile
+        synchronized (this) {
+            components = null;
+            modifications += 1;
+        }
+        return true;
+    }
+
+    /**
+     * Adds or removes a goal: an empty cell becomes a goal, or a goal
+     * becomes an empty cell. Other cells are not changed. Like
+     * <code>toggle</code>, the method can be called while other
+     * threads explore the maze.
+     *
+     * @param id     the identifier of a node in the maze
+     * @param goal   <code>true</code> to make the node a goal,
+     *               <code>false</code> to make it an empty cell
+     * @return       <code>true</code> if the node has been changed;
+     *               <code>false</code> if it cannot be changed
+     */
+    public boolean setGoal(int id, boolean goal)
+    {
+        Position position = board.getPosition(id);
+        if (!board.setHeart(position.getRow(), position.getCol(), goal))
+            return false;
+        // the components that include a goal changed
+        synchronized (this) {
+            components = null;
+            modifications += 1;
+        }
+        return true;
     }
 
     /**
@@ -101,11 +348,128 @@ public class Maze
         for (Direction direction: Direction.values()) {
             Position newPosition = board.move(position, direction);
             if (newPosition != null)
-                neighbors.add(board.getCell(newPosition).getId());
+                neighbors.add(board.getId(newPosition.getRow(), newPosition.getCol()));
         }
         return neighbors;
     }
 
+    /**
+     * Returns the index of the cell of a given node. Cell indexes are
+     * dense, from <code>0</code> to <code>cells()</code> (excluded), in
+     * row-major order: the cell in row <code>r</code> and column
+     * <code>c</code> has index <code>r*cols() + c</code>. Unlike node
+     * identifiers, they can index arrays; the methods taking cell
+     * indexes never allocate objects.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the index of the cell of the node with identifier <code>id</code>
+     */
+    public int cell(int id)
+    {
+        int cell = board.getCellIndex(id);
+        if (cell < 0)
+            throw new IllegalArgumentException("no node with identifier " + id);
+        return cell;
+    }
+
+    /**
+     * Returns the number of cells in the maze.
+     *
+     * @return   the number of cells, <code>rows()*cols()</code>
+     */
+    public int cells()
+    {
+        return board.getRows()*board.getCols();
+    }
+
+    /**
+     * Returns the identifier of the node in a given cell.
+     *
+     * @param cell   the index of a cell in the maze
+     * @return       the identifier of the node in cell <code>cell</code>
+     */
+    public int cellId(int cell)
+    {
+        return board.getId(cell/board.getCols(), cell%board.getCols());
+    }
+
+    /**
+     * Stores in an array the indexes of all cells directly adjacent
+     * to a given cell, and accessible from it; this is the same
+     * neighborhood as that of method <code>neighbors</code>, without
+     * allocating a set.
+     *
+     * @param cell        the index of a cell in the maze
+     * @param neighbors   an array of at least four elements, whose first
+     *                    elements are overwritten with the indexes of
+     *                    the neighbor cells
+     * @return            the number of neighbor cells, from zero to four
+     */
+    public int neighborCells(int cell, int[] neighbors)
+    {
+        int nCols = board.getCols();
+        int row = cell/nCols, col = cell%nCols;
+        int count = 0;
+        if (board.isAccessible(row - 1, col))
+            neighbors[count++] = cell - nCols;
+        if (board.isAccessible(row + 1, col))
+            neighbors[count++] = cell + nCols;
+        if (board.isAccessible(row, col - 1))
+            neighbors[count++] = cell - 1;
+        if (board.isAccessible(row, col + 1))
+            neighbors[count++] = cell + 1;
+        return count;
+    }
+
+    /**
+     * Tests whether a given cell contains a goal.
+     *
+     * @param cell   the index of a cell in the maze
+     * @return       <code>true</code> if cell <code>cell</code> is a goal;
+     *               <code>false</code> otherwise
+     */
+    public boolean isGoalCell(int cell)
+    {
+        int nCols = board.getCols();
+        return board.isHeart(cell/nCols, cell%nCols);
+    }
+
+    /**
+     * Returns the cost of entering a given cell: 1 for empty cells
+     * and goals, more for terrain such as mud and water (the costs are
+     * set by the map, up to 15), and 0 for cells that are not
+     * accessible.
+     *
+     * @param cell   the index of a cell in the maze
+     * @return       the cost of moving into cell <code>cell</code> from
+     *               a neighbor
+     */
+    public int cellCost(int cell)
+    {
+        int nCols = board.getCols();
+        return board.getCost(cell/nCols, cell%nCols);
+    }
+
+    /**
+     * Returns the cost of a path: the sum of the costs of entering
+     * every node on it after the first one.
+     *
+     * @param path   a list of identifiers of nodes in the maze
+     * @return       the cost of moving along <code>path</code>
+     * @see #cellCost(int)
+     */
+    public long pathCost(List<Integer> path)
+    {
+        long cost = 0;
+        boolean first = true;
+        for (int id: path) {
+            if (!first)
+                cost += cellCost(cell(id));
+            first = false;
+        }
+        return cost;
+    }
+
     /**
      * Tests whether a given node contains a goal.
      *
@@ -115,7 +479,41 @@ public class Maze
      */
     public boolean hasGoal(int id)
     {
-        return board.getCell(id).isHeart();
+        Position position = board.getPosition(id);
+        return board.isHeart(position.getRow(), position.getCol());
+    }
+
+    /**
+     * Tests whether some goal can be reached from a given node,
+     * that is whether the connected component of the node includes
+     * a goal. The components of the whole maze are labeled in
+     * parallel the first time this method is called; after that,
+     * every call takes constant time.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if a path exists from the node with
+     *             identifier <code>id</code> to a goal;
+     *             <code>false</code> otherwise
+     * @throws CancellationException if the search has a deadline,
+     *         which passed while the components were labeled
+     */
+    public boolean canReachGoal(int id)
+    {
+        Position position = board.getPosition(id);
+        return getComponents().hasGoal(position.getRow(), position.getCol());
+    }
+
+    private Components getComponents()
+    {
+        Components result = components;
+        if (result == null) {
+            synchronized (this) {
+                result = components;
+                if (result == null)
+                    components = result = new Components(board, () -> expired);
+            }
+        }
+        return result;
     }
 
     /**
@@ -150,14 +548,29 @@ public class Maze
      *
      * @param id   the identifier of a node in the maze where the new player is placed
      * @return     a unique identifier of the newly created player
+     * @throws CancellationException if the search has a deadline,
+     *         which has passed
      */
     public int newPlayer(int id)
     {
+        checkDeadline();
         if (!animate)
             return 0;
         return board.newPlayer(id);
     }
 
+    /**
+     * Limits the animation to the first <code>shown</code> players
+     * created; the others can be moved but are not displayed, and
+     * moving them costs nothing but the animation delay.
+     *
+     * @param shown   the maximum number of players displayed
+     */
+    void setShownPlayers(int shown)
+    {
+        board.setShownPlayers(shown);
+    }
+
     /**
      * Removes all players from the maze. If multiple threads are
      * active on the maze, it is advisable to stop all threads before
@@ -179,19 +592,107 @@ public class Maze
      *
      * @param playerId   the identifier of an existing player
      * @param id         a node in the maze where the player is moved
+     * @throws CancellationException if the search has a deadline,
+     *         which has passed
      */
     public void move(int playerId, int id)
     {
+        checkDeadline();
+        VisitLog log = visits;
+        if (log != null)
+            log.record(board.getCellIndex(id));
         if (!animate)
             return;
-        Player player = board.getPlayer(playerId);
         try {
             Thread.sleep(delay);
         } catch (InterruptedException e) {
             System.out.println("Interrupted!");
         }
-        if (player != null)
-            player.move(id);
+        Position position = board.getPosition(id);
+        if (position != null)
+            board.move(playerId, position.getRow(), position.getCol());
+    }
+
+    /**
+     * Throws a <code>CancellationException</code> if the search of
+     * this maze has a deadline, which has passed. Players cannot be
+     * created or moved after the deadline: the solvers, which move a
+     * player at every step, thus stop at their next step, whatever
+     * else they check. Work that moves no players checks the deadline
+     * often, to stop as well: labeling the components, filling the
+     * layers of a <code>Bitboard</code>, and building the abstract
+     * graph of a <code>HierarchicalSolver</code>.
+     *
+     * @throws CancellationException if the deadline of the search
+     *         has passed
+     */
+    public void checkDeadline()
+    {
+        if (expired)
+            throw new CancellationException("deadline passed");
+    }
+
+    // set or clear the deadline of the current search as passed
+    void setExpired(boolean expired)
+    {
+        this.expired = expired;
+    }
+
+    /**
+     * Starts recording, for every node, when and by which worker
+     * thread a player first moved to it, even if the players are not
+     * animated. Recording takes five bytes per cell, and should be
+     * started before the search.
+     */
+    public void recordVisits()
+    {
+        visits = new VisitLog(cells());
+        explored.set(0);
+    }
+
+    // first visits recorded since recordVisits; null if not recording
+    VisitLog getVisits()
+    {
+        return visits;
+    }
+
+    /**
+     * Returns the number of nodes that players first moved to since
+     * <code>recordVisits</code> was last called.
+     *
+     * @return   the number of nodes visited; 0 if visits are not recorded
+     */
+    public int visitedNodes()
+    {
+        VisitLog log = visits;
+        return log == null ? 0 : log.visited();
+    }
+
+    /**
+     * Reports the number of nodes that the current search explored,
+     * for solvers that do not move a player onto every node they
+     * explore, whose visits thus undercount them. The search explored
+     * as many nodes as the largest number reported since
+     * <code>recordVisits</code> was last called, or as players visited
+     * if more. A solver that cannot count the nodes it explores
+     * reports <code>UNCOUNTED</code>, which stands until the next
+     * <code>recordVisits</code>.
+     *
+     * @param nodes   the number of distinct nodes explored, including
+     *                the start node; or <code>UNCOUNTED</code>
+     */
+    public void reportExplored(int nodes)
+    {
+        explored.accumulateAndGet(nodes, (reported, next) ->
+                                  reported == UNCOUNTED || next == UNCOUNTED
+                                  ? UNCOUNTED : Math.max(reported, next));
+    }
+
+    // largest number of nodes explored reported since recordVisits: 0
+    // if none, or UNCOUNTED
+    int reportedExplored()
+    {
+        return explored.get();
     }
 
     /**
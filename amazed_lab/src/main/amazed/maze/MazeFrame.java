@@ -1,30 +1,67 @@
 package amazed.maze;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.GridLayout;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import javax.swing.ImageIcon;
-import javax.swing.OverlayLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
-import javax.swing.JButton;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 
-class CellButton extends JPanel {
+// the maze drawn at a zoom level, painting only the cells in view
+//
+// At the largest zoom level every cell is drawn with the image of its
+// tile or player, as large as the image. At smaller levels every cell
+// is a square of a few pixels, down to one pixel per cell, and then a
+// pixel per block of cells (see TileRenderer). These levels draw the
+// tiles in view to an image, which is kept as long as the view and
+// the tiles do not change, and draw the players on top of it at every
+// refresh.
+class MazeView extends JComponent {
+
+    // largest size of the maze drawn at the initial zoom level, in pixels
+    private static final int MAX_INITIAL_SIZE = 20000;
+    // zoom levels below the tile images: pixels per cell if positive,
+    // cells per pixel if negative
+    private static final int[] LEVELS = {25, 12, 6, 3, 2, 1, -2, -4, -8, -16, -32, -64, -128};
+
+    private final Board board;
+    private final TileRenderer renderer;
+    private final int[] zooms;
+    private int zoom;
+    // pixels per cell, and cells per pixel, at the current zoom level; one of them is 1
+    private int cellSize;
+    private int block;
+
+    private final Font countFont = new Font(null, Font.BOLD, 16);
 
-    private Cell cell;
+    // image of the tiles in view, and which tiles it shows
+    private BufferedImage tiles;
+    private Rectangle tilesArea = new Rectangle();
+    private int tilesZoom = -1;
+    private int tilesVersion;
 
-    private Color visibleTextColor(Player player)
+    private Color visibleTextColor(int playerId)
     {
-        switch (player.getId()) {
+        switch (playerId) {
         case 1:
             return Color.WHITE;
         case 2:
@@ -37,48 +74,251 @@ class CellButton extends JPanel {
         }
     }
 
-    CellButton(Cell cell)
-    {
-        // super(new ImageIcon(cell.getImage()));
-        this.cell = cell;
-        setLayout(new OverlayLayout(this));
-        setOpaque(false);
-
-        JButton image = new JButton(new ImageIcon(cell.getImage()));
-        image.setAlignmentX(JButton.CENTER_ALIGNMENT);
-        image.setAlignmentY(JButton.CENTER_ALIGNMENT);
-
-        Player[] players = cell.getPlayers();
-        if (players.length > 1) {
-            JButton text = new JButton();
-            text.setText(Integer.toString(players.length));
-            text.setMaximumSize(new Dimension(50,50));
-            text.setAlignmentX(JButton.RIGHT_ALIGNMENT);
-            text.setAlignmentY(JButton.BOTTOM_ALIGNMENT);
-            text.setFont(new Font(null, Font.BOLD, 16));
-            text.setForeground(visibleTextColor(players[0]));
-            text.setBorder(null);
-            text.setOpaque(false);
-            text.setContentAreaFilled(false);
-            text.setBorderPainted(false);
-            add(text);
-        }
-        add(image);
+    MazeView(Board board)
+    {
+        this.board = board;
+        this.renderer = new TileRenderer(board);
+        int tileSize = board.getWidth()/board.getCols();
+        int levels = 1;
+        int[] candidates = new int[1 + LEVELS.length];
+        candidates[0] = tileSize;
+        for (int level: LEVELS)
+            if (level < tileSize)
+                candidates[levels++] = level;
+        zooms = Arrays.copyOf(candidates, levels);
+        setZoom(0);
+        while (zoom + 1 < zooms.length
+               && Math.max(getPreferredSize().width, getPreferredSize().height) > MAX_INITIAL_SIZE)
+            setZoom(zoom + 1);
+        setOpaque(true);
+        setDoubleBuffered(true);
+    }
+
+    private void setZoom(int zoom)
+    {
+        this.zoom = zoom;
+        cellSize = Math.max(zooms[zoom], 1);
+        block = Math.max(-zooms[zoom], 1);
+    }
+
+    // zoom in (steps < 0) or out (steps > 0), keeping the cell at `anchor' in place
+    void zoom(int steps, Point anchor)
+    {
+        int newZoom = Math.max(0, Math.min(zoom + steps, zooms.length - 1));
+        if (newZoom == zoom)
+            return;
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        Point position = viewport.getViewPosition();
+        double cellX = anchor.x*block/(double) cellSize, cellY = anchor.y*block/(double) cellSize;
+        setZoom(newZoom);
+        viewport.setViewSize(getPreferredSize());
+        int x = (int) (cellX*cellSize/block) - (anchor.x - position.x);
+        int y = (int) (cellY*cellSize/block) - (anchor.y - position.y);
+        setViewPosition(viewport, x, y);
+        revalidate();
+        repaint();
+    }
+
+    // scroll the view so that cell row, col is in the middle
+    void centerOn(int row, int col)
+    {
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        Dimension extent = viewport.getExtentSize();
+        setViewPosition(viewport,
+                        col*cellSize/block - extent.width/2,
+                        row*cellSize/block - extent.height/2);
+    }
+
+    private void setViewPosition(JViewport viewport, int x, int y)
+    {
+        Dimension size = getPreferredSize();
+        Dimension extent = viewport.getExtentSize();
+        x = Math.max(0, Math.min(x, size.width - extent.width));
+        y = Math.max(0, Math.min(y, size.height - extent.height));
+        viewport.setViewPosition(new Point(x, y));
+    }
+
+    // first row, first column, and number of rows and columns of cells in view
+    Rectangle cellsInView()
+    {
+        Rectangle visible = getVisibleRect();
+        int col = visible.x/cellSize*block, row = visible.y/cellSize*block;
+        int cols = ceilDiv(visible.width, cellSize)*block, rows = ceilDiv(visible.height, cellSize)*block;
+        return new Rectangle(col, row,
+                             Math.max(0, Math.min(cols, board.getCols() - col)),
+                             Math.max(0, Math.min(rows, board.getRows() - row)));
+    }
+
+    String describeZoom()
+    {
+        if (zoom == 0)
+            return "tiles";
+        if (block > 1)
+            return block + "x" + block + " cells per pixel";
+        return cellSize + (cellSize == 1 ? " pixel" : " pixels") + " per cell";
+    }
+
+    @Override
+    public Dimension getPreferredSize()
+    {
+        return new Dimension(ceilDiv(board.getCols(), block)*cellSize,
+                             ceilDiv(board.getRows(), block)*cellSize);
     }
 
     @Override
-    public boolean isOptimizedDrawingEnabled()
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(getSize());
+        g.setColor(Color.BLACK);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (zoom == 0)
+            paintTiles(g, clip);
+        else
+            paintPixels(g);
+    }
+
+    private void paintTiles(Graphics g, Rectangle clip)
+    {
+        int fromRow = clip.y/cellSize, toRow = Math.min(board.getRows(), ceilDiv(clip.y + clip.height, cellSize));
+        int fromCol = clip.x/cellSize, toCol = Math.min(board.getCols(), ceilDiv(clip.x + clip.width, cellSize));
+        g.setFont(countFont);
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = fromCol; col < toCol; col++) {
+                Cell cell = board.getCell(row, col);
+                int x = col*cellSize, y = row*cellSize;
+                g.drawImage(cell.getImage(), x, y, cellSize, cellSize, null);
+                int occupants = cell.getOccupants();
+                if (occupants > 1) {
+                    String count = Integer.toString(occupants);
+                    g.setColor(visibleTextColor(cell.getPlayer()));
+                    g.drawString(count, x + cellSize - g.getFontMetrics().stringWidth(count) - 2,
+                                 y + cellSize - 4);
+                }
+            }
+        }
+    }
+
+    private void paintPixels(Graphics g)
+    {
+        Rectangle visible = getVisibleRect();
+        int fromX = visible.x/cellSize, toX = Math.min(ceilDiv(board.getCols(), block),
+                                                      ceilDiv(visible.x + visible.width, cellSize));
+        int fromY = visible.y/cellSize, toY = Math.min(ceilDiv(board.getRows(), block),
+                                                      ceilDiv(visible.y + visible.height, cellSize));
+        if (toX <= fromX || toY <= fromY)
+            return;
+        Rectangle area = new Rectangle(fromX, fromY, toX - fromX, toY - fromY);
+        int version = board.getVersion();
+        if (!area.equals(tilesArea) || zoom != tilesZoom || version != tilesVersion) {
+            if (tiles == null || tiles.getWidth() != area.width || tiles.getHeight() != area.height)
+                tiles = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) tiles.getRaster().getDataBuffer()).getData();
+            renderer.fill(pixels, 0, area.width, fromY*block, fromX*block,
+                          area.width, area.height, block);
+            tilesArea = area;
+            tilesZoom = zoom;
+            tilesVersion = version;
+        }
+        g.drawImage(tiles, fromX*cellSize, fromY*cellSize,
+                    area.width*cellSize, area.height*cellSize, null);
+
+        // players, at least a few pixels large so that they stand out
+        int size = Math.max(cellSize, 3), inset = (size - cellSize)/2;
+        int nCols = board.getCols();
+        g.setColor(new Color(Tile.PLAYER_RGB));
+        board.forEachOccupied(cell -> {
+                int x = cell%nCols/block, y = cell/nCols/block;
+                if (area.contains(x, y))
+                    g.fillRect(x*cellSize - inset, y*cellSize - inset, size, size);
+            });
+    }
+
+    static int ceilDiv(int a, int b)
+    {
+        return (a + b - 1)/b;
+    }
+}
+
+
+// the whole maze scaled down, with the players and the part in view
+//
+// Clicking or dragging on the minimap brings the corresponding part of
+// the maze in view.
+class Minimap extends JComponent {
+
+    // largest side of the minimap, in pixels
+    private static final int SIZE = 200;
+
+    private final Board board;
+    private final MazeView view;
+    private final TileRenderer renderer;
+    // cells per sample of the maze, and pixels per sample on screen
+    private final int block;
+    private final int scale;
+
+    private final BufferedImage tiles;
+    private int tilesVersion = -1;
+
+    Minimap(Board board, MazeView view)
     {
-        return false;
+        this.board = board;
+        this.view = view;
+        this.renderer = new TileRenderer(board);
+        int side = Math.max(board.getRows(), board.getCols());
+        block = MazeView.ceilDiv(side, SIZE);
+        scale = Math.max(1, SIZE/MazeView.ceilDiv(side, block));
+        tiles = new BufferedImage(MazeView.ceilDiv(board.getCols(), block),
+                                  MazeView.ceilDiv(board.getRows(), block),
+                                  BufferedImage.TYPE_INT_RGB);
+        MouseAdapter navigate = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e)
+                {
+                    view.centerOn(e.getY()/scale*block, e.getX()/scale*block);
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e)
+                {
+                    mousePressed(e);
+                }
+            };
+        addMouseListener(navigate);
+        addMouseMotionListener(navigate);
     }
 
-    // preferred size of button, equal to image size
     @Override
     public Dimension getPreferredSize()
     {
-        return new Dimension(cell.getWidth(), cell.getHeight());
+        return new Dimension(tiles.getWidth()*scale, tiles.getHeight()*scale);
     }
 
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        int version = board.getVersion();
+        if (version != tilesVersion) {
+            int[] pixels = ((DataBufferInt) tiles.getRaster().getDataBuffer()).getData();
+            renderer.fill(pixels, 0, tiles.getWidth(), 0, 0,
+                          tiles.getWidth(), tiles.getHeight(), block);
+            tilesVersion = version;
+        }
+        g.drawImage(tiles, 0, 0, tiles.getWidth()*scale, tiles.getHeight()*scale, null);
+
+        int nCols = board.getCols();
+        g.setColor(new Color(Tile.PLAYER_RGB));
+        board.forEachOccupied(cell -> g.fillRect(cell%nCols/block*scale - 1,
+                                                 cell/nCols/block*scale - 1,
+                                                 scale + 2, scale + 2));
+
+        Rectangle inView = view.cellsInView();
+        g.setColor(Color.YELLOW);
+        g.drawRect(inView.x/block*scale, inView.y/block*scale,
+                   Math.max(1, inView.width/block*scale) - 1,
+                   Math.max(1, inView.height/block*scale) - 1);
+    }
 }
 
 
@@ -87,7 +327,8 @@ class MazeFrame
     implements ActionListener
 {
 
-    private JPanel panel;
+    private MazeView view;
+    private Minimap minimap;
     private Board board;
 
     private Timer timer;
@@ -101,22 +342,39 @@ class MazeFrame
 
     private void initBoard()
     {
-        panel = new JPanel();
-        panel.setLayout(new GridLayout(board.getRows(), board.getCols(), 0, 0));
-        panel.setDoubleBuffered(true);
+        view = new MazeView(board);
 
         // the following statements set up a <em>scollable</em> frame
         // to use a non-scrollable, replace all the following statements with:
-        // add(panel, BorderLayout.CENTER);
-        JScrollPane scrollFrame = new JScrollPane(panel);
+        // add(view, BorderLayout.CENTER);
+        JScrollPane scrollFrame = new JScrollPane(view);
+        scrollFrame.getVerticalScrollBar().setUnitIncrement(16);
+        scrollFrame.getHorizontalScrollBar().setUnitIncrement(16);
         Dimension screen = java.awt.Toolkit.getDefaultToolkit().getScreenSize();
-        int scrWidth = Math.min(board.getWidth(), (int) screen.getWidth()) + 30;
-        int scrHeight = Math.min(board.getHeight(), (int) screen.getHeight()) + 50;
+        Dimension size = view.getPreferredSize();
+        int scrWidth = Math.min(size.width, (int) screen.getWidth() - 300) + 30;
+        int scrHeight = Math.min(size.height, (int) screen.getHeight()) + 50;
         scrollFrame.setPreferredSize(new Dimension(scrWidth, scrHeight));
-        add(scrollFrame);
+        add(scrollFrame, BorderLayout.CENTER);
+
+        minimap = new Minimap(board, view);
+        JPanel side = new JPanel(new BorderLayout());
+        side.add(minimap, BorderLayout.NORTH);
+        add(side, BorderLayout.EAST);
+
+        // zoom with '+' and '-', or with the mouse wheel while holding Ctrl
+        bindZoom("zoomIn", -1, "PLUS", "EQUALS", "ADD");
+        bindZoom("zoomOut", 1, "MINUS", "SUBTRACT");
+        view.addMouseWheelListener(e -> {
+                if (e.isControlDown())
+                    zoom(e.getWheelRotation(), e.getPoint());
+                else
+                    view.getParent().dispatchEvent(SwingUtilities.convertMouseEvent(view, e,
+                                                                                    view.getParent()));
+            });
 
         pack();
-        setTitle("A-mazed");
+        updateTitle();
         setResizable(true);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -125,18 +383,38 @@ class MazeFrame
         timer.start();
     }
 
+    private void bindZoom(String name, int steps, String... keys)
+    {
+        for (String key: keys)
+            getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(key), name);
+        getRootPane().getActionMap().put(name, new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e)
+                {
+                    Rectangle visible = view.getVisibleRect();
+                    zoom(steps, new Point(visible.x + visible.width/2,
+                                          visible.y + visible.height/2));
+                }
+            });
+    }
+
+    private void zoom(int steps, Point anchor)
+    {
+        view.zoom(steps, anchor);
+        updateTitle();
+    }
+
+    private void updateTitle()
+    {
+        setTitle("A-mazed (" + view.describeZoom() + ")");
+    }
+
     private void displayBoard()
     {
-        panel.removeAll();
-        Board b = board.consistentBoard();
-        for (int row = 0; row < b.getRows(); row++) {
-            for (int col = 0; col < b.getCols(); col++) {
-                panel.add(new CellButton(b.getCell(row, col)));
-            }
-        }
         Toolkit.getDefaultToolkit().sync();
-        panel.revalidate();
-        panel.repaint();
+        view.repaint();
+        minimap.repaint();
     }
 
     @Override
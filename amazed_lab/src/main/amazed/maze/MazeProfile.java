@@ -0,0 +1,235 @@
+package amazed.maze;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * <code>MazeProfile</code> summarizes the shape of a maze with a few
+ * statistics of its cells, from which to guess which solver fits it.
+ * <p>
+ * Every accessible cell is classified by its number of accessible
+ * neighbors: a dead end has one, a corridor cell two, a junction three
+ * or four. A cell is open if its four neighbors are all accessible, as
+ * inside rooms. Corridors are the chains of corridor cells between
+ * junctions and dead ends: since a corridor has two ends, and every
+ * junction or dead end is the end of as many corridors as it has
+ * neighbors, the mean length of corridors is the number of corridor
+ * cells over half the sum of the neighbors of junctions and dead ends.
+ * <p>
+ * The cells are counted in parallel, by fork/join tasks over bands of
+ * rows, in a single pass over the board.
+ */
+
+public class MazeProfile
+{
+    // rows per band below which a counting task does not split further
+    private static final int BAND_ROWS = 64;
+
+    private final int rows;
+    private final int cols;
+    private long accessible;
+    private long deadEnds;
+    private long corridorCells;
+    private long junctions;
+    private long openCells;
+    private long goals;
+    // accessible neighbors of junctions and dead ends: twice the number of corridors
+    private long corridorEnds;
+
+    MazeProfile(Board board)
+    {
+        this.rows = board.getRows();
+        this.cols = board.getCols();
+        Band all = new Band(board, 0, rows);
+        ForkJoinPool.commonPool().invoke(all);
+        add(all.counts);
+    }
+
+    private MazeProfile(int rows, int cols)
+    {
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    private void add(MazeProfile other)
+    {
+        accessible += other.accessible;
+        deadEnds += other.deadEnds;
+        corridorCells += other.corridorCells;
+        junctions += other.junctions;
+        openCells += other.openCells;
+        goals += other.goals;
+        corridorEnds += other.corridorEnds;
+    }
+
+    /**
+     * Returns the number of cells of the maze.
+     *
+     * @return   the number of rows times the number of columns
+     */
+    public long cells()
+    {
+        return (long) rows*cols;
+    }
+
+    /**
+     * Returns the fraction of the cells of the maze that are accessible.
+     *
+     * @return   the number of accessible cells over the number of cells
+     */
+    public double accessibleFraction()
+    {
+        return cells() == 0 ? 0 : (double) accessible/cells();
+    }
+
+    /**
+     * Returns the fraction of the accessible cells that are junctions,
+     * with three or four accessible neighbors.
+     *
+     * @return   the number of junctions over the number of accessible cells
+     */
+    public double junctionDensity()
+    {
+        return accessible == 0 ? 0 : (double) junctions/accessible;
+    }
+
+    /**
+     * Returns the fraction of the accessible cells that are dead ends,
+     * with a single accessible neighbor.
+     *
+     * @return   the number of dead ends over the number of accessible cells
+     */
+    public double deadEndDensity()
+    {
+        return accessible == 0 ? 0 : (double) deadEnds/accessible;
+    }
+
+    /**
+     * Returns the mean number of cells of the corridors between
+     * junctions and dead ends.
+     *
+     * @return   the number of corridor cells over the number of corridors;
+     *           the number of corridor cells if there are no junctions
+     *           nor dead ends
+     */
+    public double meanCorridorLength()
+    {
+        return corridorEnds == 0 ? corridorCells : 2.0*corridorCells/corridorEnds;
+    }
+
+    /**
+     * Returns the fraction of the accessible cells that are open,
+     * with all four neighbors accessible.
+     *
+     * @return   the number of open cells over the number of accessible cells
+     */
+    public double openFraction()
+    {
+        return accessible == 0 ? 0 : (double) openCells/accessible;
+    }
+
+    /**
+     * Returns the number of goals of the maze.
+     *
+     * @return   the number of goal cells
+     */
+    public long goals()
+    {
+        return goals;
+    }
+
+    /**
+     * Returns the number of cells of the maze per goal, which grows
+     * with the length of a typical search.
+     *
+     * @return   the number of cells over the number of goals; the
+     *           number of cells if there are no goals
+     */
+    public double cellsPerGoal()
+    {
+        return (double) cells()/Math.max(1, goals);
+    }
+
+    /**
+     * Returns the statistics of the profile, on one line.
+     *
+     * @return   a description of the profile
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%dx%d, accessible %.3f, junctions %.4f, dead ends %.4f, "
+                             + "corridors %.2f cells, open %.3f, goals %d",
+                             rows, cols, accessibleFraction(), junctionDensity(), deadEndDensity(),
+                             meanCorridorLength(), openFraction(), goals);
+    }
+
+    // counts of the rows in [fromRow, toRow)
+    private class Band extends RecursiveAction
+    {
+        private final Board board;
+        private final int fromRow;
+        private final int toRow;
+        private final MazeProfile counts = new MazeProfile(rows, cols);
+
+        Band(Board board, int fromRow, int toRow)
+        {
+            this.board = board;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toRow - fromRow > BAND_ROWS) {
+                int mid = (fromRow + toRow) >>> 1;
+                Band first = new Band(board, fromRow, mid);
+                Band second = new Band(board, mid, toRow);
+                invokeAll(first, second);
+                counts.add(first.counts);
+                counts.add(second.counts);
+                return;
+            }
+            // accessible cells of the rows above, at and below the current one,
+            // padded with an inaccessible column on each side
+            boolean[] above = new boolean[cols + 2];
+            boolean[] here = accessible(fromRow);
+            boolean[] below;
+            if (fromRow > 0)
+                above = accessible(fromRow - 1);
+            for (int row = fromRow; row < toRow; row++, above = here, here = below) {
+                below = accessible(row + 1);
+                for (int col = 1; col <= cols; col++) {
+                    if (!here[col])
+                        continue;
+                    counts.accessible += 1;
+                    if (board.isHeart(row, col - 1))
+                        counts.goals += 1;
+                    int degree = (above[col] ? 1 : 0) + (below[col] ? 1 : 0)
+                        + (here[col - 1] ? 1 : 0) + (here[col + 1] ? 1 : 0);
+                    if (degree == 2)
+                        counts.corridorCells += 1;
+                    else if (degree == 1)
+                        counts.deadEnds += 1;
+                    else if (degree >= 3)
+                        counts.junctions += 1;
+                    if (degree == 4)
+                        counts.openCells += 1;
+                    if (degree != 2)
+                        counts.corridorEnds += degree;
+                }
+            }
+        }
+
+        private boolean[] accessible(int row)
+        {
+            boolean[] result = new boolean[cols + 2];
+            if (row < rows)
+                for (int col = 0; col < cols; col++)
+                    result[col + 1] = board.isAccessible(row, col);
+            return result;
+        }
+    }
+}
@@ -3,118 +3,30 @@ package amazed.maze;
 import java.awt.Image;
 
 
-public class Player
-    implements Comparable<Player>
+// how players are displayed; positions of players are kept by PlayerRegistry
+class Player
 {
-    private final int id;
-    private final String name;
-    private final Image image;
+    // text shown for a player where images are not
+    static final Character TEXT = 'P';
 
-    private Board board = null;
-    private int row, col;
+    private static final String PLAYER_FILE_NAME = "player";
+    // images of players, by image id from 1; entry 0 is unused
+    private static final Image[] IMAGES = new Image[5];
 
-    private final String playerFileName = "player";
-
-    Player(int id, String name, int imageId)
-    {
-        this.id = id;
-        this.name = name;
-        Image image = ImageFactory.getImage(playerFileName + Integer.toString(imageId));
-        if (image == null)
-            image = ImageFactory.getImage(playerFileName);
-        this.image = image;
-        this.row = -1;
-        this.col = -1;
-    }
-
-    Player(int id, String name)
+    // image of the player with id `id'
+    static Image imageOf(int id)
     {
-        this(id, name, 1 + (id % 4));
+        return image(1 + (id % 4));
     }
 
-    // add player to board at initial position row, col
-    void onBoard(Board board, int row, int col)
+    private static synchronized Image image(int imageId)
     {
-        if (this.board == null && board.isOnBoard(row, col)) {
-            this.board = board;
-            this.row = row;
-            this.col = col;
-            board.register(this, row, col);
+        if (IMAGES[imageId] == null) {
+            Image image = ImageFactory.getImage(PLAYER_FILE_NAME + Integer.toString(imageId));
+            if (image == null)
+                image = ImageFactory.getImage(PLAYER_FILE_NAME);
+            IMAGES[imageId] = image;
         }
-    }
-
-    // add player to board in node with given id
-    void onBoard(Board board, int id)
-    {
-        Position position = board.getPosition(id);
-        onBoard(board, position.getRow(), position.getCol());
-    }
-
-    int getId()
-    {
-        return id;
-    }
-
-    String getName()
-    {
-        return name;
-    }
-
-    Position getPosition()
-    {
-        return new Position(this.getRow(), this.getCol());
-    }
-
-    int getRow()
-    {
-        return row;
-    }
-
-    int getCol()
-    {
-        return col;
-    }
-
-    void setRow(int row)
-    {
-        this.row = row;
-    }
-
-    void setCol(int col)
-    {
-        this.col = col;
-    }
-
-    Character getText()
-    {
-        return 'P';
-    }
-
-    Image getImage()
-    {
-        return image;
-    }
-
-    // move player by one node in given direction
-    void move(Direction direction)
-    {
-        Position newPosition = board.move(new Position(row, col), direction);
-        if (board != null && newPosition != null)
-            board.move(this, newPosition.getRow(), newPosition.getCol());
-    }
-
-    // move player to cell with given id newCellId
-    void move(int newCellId)
-    {
-        Position newPosition = board.getPosition(newCellId);
-        if (board != null
-                && newPosition != null
-                && board.isAccessible(newPosition.getRow(), newPosition.getCol()))
-            board.move(this, newPosition.getRow(), newPosition.getCol());
-    }
-
-    public int compareTo(Player other)
-    {
-        return getId() - other.getId();
+        return IMAGES[imageId];
     }
 }
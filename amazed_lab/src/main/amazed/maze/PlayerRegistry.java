@@ -0,0 +1,194 @@
+package amazed.maze;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+
+// positions of the players on a board, without a Player object per player
+//
+// The position of every player is a cell index (row*nCols + col) in a
+// primitive array, allocated in chunks as players are created, and
+// written with release and read with acquire semantics. The cells
+// have, in primitive arrays allocated in chunks the first time a
+// player enters one of their cells, a counter of the players on them
+// and the id of the player that entered them last, which is what the
+// graphical representation shows. Every chunk also counts its
+// occupied cells, so that a walk over the occupied cells skips the
+// chunks no player is on. Moves thus update counters in place, and
+// allocate nothing once the chunks of the cells exist.
+// Only the first `shown' players are tracked at all; later players
+// get an id but their moves are ignored, so that thousands of solver
+// tasks do not pay for an animation that would show them all on top
+// of each other.
+class PlayerRegistry
+{
+    // position of players that are not on the board
+    static final int NOWHERE = -1;
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+    // cells per chunk of the occupancy arrays
+    private static final int CELL_CHUNK_BITS = 12;
+    private static final int CELL_CHUNK_SIZE = 1 << CELL_CHUNK_BITS;
+
+    private final int nCols;
+    // count of number of registered players, to ensure unique player ids
+    private final AtomicInteger nPlayers = new AtomicInteger();
+    // maximum number of tracked players
+    private volatile int shown = Integer.MAX_VALUE;
+
+    // player id --> cell index, in chunks of CHUNK_SIZE players
+    private final AtomicReferenceArray<AtomicIntegerArray> positions =
+        new AtomicReferenceArray<>(MAX_CHUNKS);
+    // cell index --> number of players on the cell, in chunks of CELL_CHUNK_SIZE cells
+    private final AtomicReferenceArray<AtomicIntegerArray> counts;
+    // cell index --> player that entered the cell last, in chunks as counts
+    private final AtomicReferenceArray<AtomicIntegerArray> lastEntered;
+    // chunk of cells --> number of occupied cells in the chunk
+    private final AtomicIntegerArray occupiedInChunk;
+
+    PlayerRegistry(int nRows, int nCols)
+    {
+        this.nCols = nCols;
+        int nChunks = (int) (((long) nRows*nCols + CELL_CHUNK_SIZE - 1) >>> CELL_CHUNK_BITS);
+        counts = new AtomicReferenceArray<>(nChunks);
+        lastEntered = new AtomicReferenceArray<>(nChunks);
+        occupiedInChunk = new AtomicIntegerArray(nChunks);
+    }
+
+    void setShown(int shown)
+    {
+        this.shown = shown;
+    }
+
+    // create a player on cell at row, col, and return its id
+    int newPlayer(int row, int col)
+    {
+        int playerId = nPlayers.getAndIncrement();
+        if (isTracked(playerId)) {
+            int cell = row*nCols + col;
+            chunk(playerId).setRelease(playerId & (CHUNK_SIZE - 1), cell);
+            enter(playerId, cell);
+        }
+        return playerId;
+    }
+
+    // move player to cell at row, col; each player must be moved by one thread at a time
+    void move(int playerId, int row, int col)
+    {
+        if (!isTracked(playerId))
+            return;
+        AtomicIntegerArray chunk = chunk(playerId);
+        int index = playerId & (CHUNK_SIZE - 1);
+        int oldCell = chunk.getAcquire(index);
+        if (oldCell == NOWHERE)
+            return;
+        int newCell = row*nCols + col;
+        chunk.setRelease(index, newCell);
+        // enter before leaving, so that an occupied cell never looks empty
+        enter(playerId, newCell);
+        leave(oldCell);
+    }
+
+    // cell index of player, or NOWHERE
+    int position(int playerId)
+    {
+        if (!isTracked(playerId))
+            return NOWHERE;
+        return chunk(playerId).getAcquire(playerId & (CHUNK_SIZE - 1));
+    }
+
+    // number of tracked players on cell index `cell'
+    int occupancy(int cell)
+    {
+        AtomicIntegerArray chunk = counts.getAcquire(cell >>> CELL_CHUNK_BITS);
+        return chunk == null ? 0 : chunk.getAcquire(cell & (CELL_CHUNK_SIZE - 1));
+    }
+
+    // id of the player that entered cell index `cell' last, if occupied
+    int lastEntered(int cell)
+    {
+        if (occupancy(cell) == 0)
+            return NOWHERE;
+        return lastEntered.getAcquire(cell >>> CELL_CHUNK_BITS)
+            .getAcquire(cell & (CELL_CHUNK_SIZE - 1));
+    }
+
+    // apply `action' to the index of every cell with players on it
+    void forEachOccupied(IntConsumer action)
+    {
+        for (int c = 0; c < counts.length(); c++) {
+            AtomicIntegerArray chunk = counts.getAcquire(c);
+            if (chunk == null || occupiedInChunk.get(c) == 0)
+                continue;
+            for (int i = 0; i < CELL_CHUNK_SIZE; i++)
+                if (chunk.getAcquire(i) > 0)
+                    action.accept(c << CELL_CHUNK_BITS | i);
+        }
+    }
+
+    // remove all players from the board; other threads should not be moving players
+    void removeAll()
+    {
+        int created = Math.min(nPlayers.get(), shown);
+        for (int playerId = 0; playerId < created; playerId++) {
+            int cell = position(playerId);
+            if (cell != NOWHERE) {
+                chunk(playerId).setRelease(playerId & (CHUNK_SIZE - 1), NOWHERE);
+                leave(cell);
+            }
+        }
+    }
+
+    private boolean isTracked(int playerId)
+    {
+        return playerId < shown && (playerId >>> CHUNK_BITS) < MAX_CHUNKS;
+    }
+
+    private void enter(int playerId, int cell)
+    {
+        int c = cell >>> CELL_CHUNK_BITS, index = cell & (CELL_CHUNK_SIZE - 1);
+        // the player is recorded before it is counted, so that an occupied cell has a player
+        cellChunk(lastEntered, c).setRelease(index, playerId);
+        if (cellChunk(counts, c).getAndIncrement(index) == 0)
+            occupiedInChunk.getAndIncrement(c);
+    }
+
+    private void leave(int cell)
+    {
+        int c = cell >>> CELL_CHUNK_BITS;
+        if (counts.getAcquire(c).decrementAndGet(cell & (CELL_CHUNK_SIZE - 1)) == 0)
+            occupiedInChunk.getAndDecrement(c);
+    }
+
+    // chunk `c' of the cell arrays `chunks', created with zeros if needed
+    private static AtomicIntegerArray cellChunk(AtomicReferenceArray<AtomicIntegerArray> chunks, int c)
+    {
+        AtomicIntegerArray chunk = chunks.getAcquire(c);
+        if (chunk == null) {
+            AtomicIntegerArray fresh = new AtomicIntegerArray(CELL_CHUNK_SIZE);
+            chunk = chunks.compareAndExchangeRelease(c, null, fresh);
+            if (chunk == null)
+                chunk = fresh;
+        }
+        return chunk;
+    }
+
+    private AtomicIntegerArray chunk(int playerId)
+    {
+        int c = playerId >>> CHUNK_BITS;
+        AtomicIntegerArray chunk = positions.getAcquire(c);
+        if (chunk == null) {
+            AtomicIntegerArray fresh = new AtomicIntegerArray(CHUNK_SIZE);
+            for (int i = 0; i < CHUNK_SIZE; i++)
+                fresh.setPlain(i, NOWHERE);
+            chunk = positions.compareAndExchangeRelease(c, null, fresh);
+            if (chunk == null)
+                chunk = fresh;
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,378 @@
+package amazed.maze;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <code>PngExporter</code> draws a maze to an image, without any
+ * graphical display, and saves it in PNG format.
+ * <p>
+ * Every cell is drawn as a square of pixels of the color of its tile;
+ * the nodes of a path highlighted with <code>markPath</code> are drawn
+ * in the colors of the path. Besides the maze itself, the image can
+ * show a heatmap of the order in which a solver first visited the
+ * nodes, or of the worker thread that visited them, if the
+ * visits have been recorded (see {@link Maze#recordVisits()}).
+ * <p>
+ * The image is an 8-bit indexed-color <code>BufferedImage</code>, one
+ * byte per pixel, whose rows are filled by parallel fork/join tasks.
+ * It is saved by an encoder that compresses bands of rows in
+ * parallel, each as a separate segment of the compressed stream.
+ */
+
+public class PngExporter
+{
+    /**
+     * What the cells that are not walls, goals or path show.
+     */
+    public enum Layer
+    {
+        /** the tiles of the maze */
+        MAZE,
+        /** the order of first visit, from dark (early) to light (late) */
+        ORDER,
+        /** the worker thread of first visit, a color per worker */
+        WORKER
+    }
+
+    // rows of cells per band below which a filling task does not split further
+    private static final int BAND_ROWS = 64;
+    // uncompressed bytes per band compressed by one task
+    private static final int BAND_BYTES = 1 << 21;
+
+    // palette: tiles at their ordinals, then HEAT_LEVELS colors from HEAT_BASE
+    private static final int HEAT_BASE = Tile.values().length;
+    private static final int HEAT_LEVELS = 256 - HEAT_BASE;
+    // stops of the gradient of the order heatmap
+    private static final int[] HEAT_STOPS = {0x440154, 0x3b528b, 0x21918c, 0x5ec962, 0xfde725};
+
+    private static final Tile[] TILES = Tile.values();
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private final Maze maze;
+    private final Board board;
+
+    /**
+     * Creates an exporter that draws <code>maze</code>.
+     *
+     * @param maze   the maze to be drawn
+     */
+    public PngExporter(Maze maze)
+    {
+        this.maze = maze;
+        this.board = maze.getBoard();
+    }
+
+    /**
+     * Draws the maze to a new image with <code>cellSize</code> by
+     * <code>cellSize</code> pixels per cell.
+     *
+     * @param layer      what the image shows
+     * @param cellSize   the side of a cell in pixels, at least 1
+     * @return           an image of the maze
+     * @throws IllegalArgumentException if the image would have more
+     *         than <code>Integer.MAX_VALUE</code> pixels
+     * @throws IllegalStateException if <code>layer</code> is a
+     *         heatmap and the visits have not been recorded
+     */
+    public BufferedImage render(Layer layer, int cellSize)
+    {
+        long width = (long) board.getCols()*cellSize, height = (long) board.getRows()*cellSize;
+        if (cellSize < 1 || width*height > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("cannot draw " + board.getRows() + "x"
+                                               + board.getCols() + " cells with "
+                                               + cellSize + " pixels per cell");
+        VisitLog visits = maze.getVisits();
+        if (layer != Layer.MAZE && visits == null)
+            throw new IllegalStateException("visits have not been recorded");
+        BufferedImage image = new BufferedImage((int) width, (int) height,
+                                                BufferedImage.TYPE_BYTE_INDEXED, palette(layer));
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        ForkJoinPool.commonPool().invoke(new Fill(pixels, layer, visits, cellSize,
+                                                  0, board.getRows()));
+        return image;
+    }
+
+    /**
+     * Draws the maze and saves the image to a PNG file.
+     *
+     * @param filename   the name of the file to be written
+     * @param layer      what the image shows
+     * @param cellSize   the side of a cell in pixels, at least 1
+     * @throws IOException if the file cannot be written
+     * @see #render(Layer, int)
+     */
+    public void write(String filename, Layer layer, int cellSize)
+    throws IOException
+    {
+        BufferedImage image = render(layer, cellSize);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16)) {
+            write(image, out);
+        }
+    }
+
+    /**
+     * Encodes an image drawn by this class in PNG format.
+     *
+     * @param image   an image returned by <code>render</code>
+     * @param out     the stream where the image is written
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(BufferedImage image, OutputStream out)
+    throws IOException
+    {
+        int width = image.getWidth(), height = image.getHeight();
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        // bit depth 8, indexed color, deflate, no filter method, no interlace
+        headerData.write(new byte[] {8, 3, 0, 0, 0});
+        writeChunk(data, "IHDR", header.toByteArray());
+
+        IndexColorModel colors = (IndexColorModel) image.getColorModel();
+        byte[] palette = new byte[3*colors.getMapSize()];
+        for (int i = 0; i < colors.getMapSize(); i++) {
+            palette[3*i] = (byte) colors.getRed(i);
+            palette[3*i + 1] = (byte) colors.getGreen(i);
+            palette[3*i + 2] = (byte) colors.getBlue(i);
+        }
+        writeChunk(data, "PLTE", palette);
+
+        // zlib header: deflate, 32K window, fastest compression
+        writeChunk(data, "IDAT", new byte[] {0x78, 0x01});
+        int bandRows = Math.max(1, BAND_BYTES/(width + 1));
+        List<Compress> bands = new ArrayList<>();
+        for (int row = 0; row < height; row += bandRows) {
+            Compress band = new Compress(pixels, width, row, Math.min(row + bandRows, height),
+                                         row + bandRows >= height);
+            bands.add(band);
+            ForkJoinPool.commonPool().execute(band);
+        }
+        // write the segments in order, as they are ready
+        long adler = 1;
+        for (Compress band: bands) {
+            data.write(band.join());
+            adler = combineAdler(adler, band.adler, band.length);
+        }
+        writeChunk(data, "IDAT", new byte[] {(byte) (adler >>> 24), (byte) (adler >>> 16),
+                                             (byte) (adler >>> 8), (byte) adler});
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    private static IndexColorModel palette(Layer layer)
+    {
+        int[] rgb = new int[256];
+        for (Tile tile: TILES)
+            rgb[tile.ordinal()] = tile.getRgb();
+        for (int level = 0; level < HEAT_LEVELS; level++) {
+            if (layer == Layer.WORKER)
+                // golden-angle hues, so that neighboring workers differ
+                rgb[HEAT_BASE + level] = Color.HSBtoRGB((level*0.618034f) % 1, 0.7f, 0.95f);
+            else
+                rgb[HEAT_BASE + level] = gradient(level, HEAT_LEVELS - 1);
+        }
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) (rgb[i] >>> 16);
+            g[i] = (byte) (rgb[i] >>> 8);
+            b[i] = (byte) rgb[i];
+        }
+        return new IndexColorModel(8, 256, r, g, b);
+    }
+
+    // color of the heatmap at level out of maxLevel
+    private static int gradient(int level, int maxLevel)
+    {
+        int segments = HEAT_STOPS.length - 1;
+        int scaled = level*segments*256/maxLevel;
+        int stop = Math.min(scaled >>> 8, segments - 1);
+        return TileRenderer.blend(HEAT_STOPS[stop], HEAT_STOPS[stop + 1],
+                                  scaled - (stop << 8), 256);
+    }
+
+    // palette index of the cell at row, col
+    private int colorIndex(int row, int col, Layer layer, VisitLog visits, int maxOrder)
+    {
+        Tile tile = board.getTile(row, col);
+        if (layer == Layer.MAZE || !tile.isAccessible() || tile == Tile.HEART)
+            return tile.ordinal();
+        int cell = row*board.getCols() + col;
+        if (layer == Layer.ORDER) {
+            int order = visits.order(cell);
+            if (order == 0)
+                return tile.ordinal();
+            return HEAT_BASE + (int) ((long) (order - 1)*HEAT_LEVELS/maxOrder);
+        }
+        int worker = visits.worker(cell);
+        if (worker == 0)
+            return tile.ordinal();
+        return HEAT_BASE + (worker - 1) % HEAT_LEVELS;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data)
+    throws IOException
+    {
+        out.write(chunk(type, data));
+    }
+
+    // length, type, data and checksum of a chunk
+    private static byte[] chunk(String type, byte[] data)
+    {
+        byte[] chunk = new byte[12 + data.length];
+        int length = data.length;
+        for (int i = 0; i < 4; i++) {
+            chunk[i] = (byte) (length >>> (24 - 8*i));
+            chunk[4 + i] = (byte) type.charAt(i);
+        }
+        System.arraycopy(data, 0, chunk, 8, data.length);
+        CRC32 crc = new CRC32();
+        crc.update(chunk, 4, 4 + data.length);
+        long value = crc.getValue();
+        for (int i = 0; i < 4; i++)
+            chunk[8 + data.length + i] = (byte) (value >>> (24 - 8*i));
+        return chunk;
+    }
+
+    // Adler-32 checksum of the concatenation of a first sequence with
+    // checksum adler1 and a second of length2 bytes with checksum adler2
+    // (as adler32_combine in zlib)
+    static long combineAdler(long adler1, long adler2, long length2)
+    {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder*sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - remainder;
+        if (sum1 >= base)
+            sum1 -= base;
+        if (sum1 >= base)
+            sum1 -= base;
+        if (sum2 >= (base << 1))
+            sum2 -= (base << 1);
+        if (sum2 >= base)
+            sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    // drawing of the rows of cells in [fromRow, toRow)
+    private class Fill extends RecursiveAction
+    {
+        private final byte[] pixels;
+        private final Layer layer;
+        private final VisitLog visits;
+        private final int cellSize;
+        private final int fromRow;
+        private final int toRow;
+
+        Fill(byte[] pixels, Layer layer, VisitLog visits, int cellSize, int fromRow, int toRow)
+        {
+            this.pixels = pixels;
+            this.layer = layer;
+            this.visits = visits;
+            this.cellSize = cellSize;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toRow - fromRow > BAND_ROWS) {
+                int mid = (fromRow + toRow) >>> 1;
+                invokeAll(new Fill(pixels, layer, visits, cellSize, fromRow, mid),
+                          new Fill(pixels, layer, visits, cellSize, mid, toRow));
+                return;
+            }
+            int nCols = board.getCols();
+            int width = nCols*cellSize;
+            int maxOrder = visits == null ? 1 : Math.max(visits.visited(), 1);
+            for (int row = fromRow; row < toRow; row++) {
+                int line = row*cellSize*width;
+                for (int col = 0; col < nCols; col++) {
+                    byte color = (byte) colorIndex(row, col, layer, visits, maxOrder);
+                    int x = line + col*cellSize;
+                    for (int i = 0; i < cellSize; i++)
+                        pixels[x + i] = color;
+                }
+                for (int i = 1; i < cellSize; i++)
+                    System.arraycopy(pixels, line, pixels, line + i*width, width);
+            }
+        }
+    }
+
+    // compression of the image rows in [fromRow, toRow) into an IDAT
+    // chunk; all but the last band end on a byte boundary, so that the
+    // compressed bands can be concatenated
+    private static class Compress extends RecursiveTask<byte[]>
+    {
+        private final byte[] pixels;
+        private final int width;
+        private final int fromRow;
+        private final int toRow;
+        private final boolean last;
+        // checksum and length of the uncompressed band, after compute
+        long adler;
+        long length;
+
+        Compress(byte[] pixels, int width, int fromRow, int toRow, boolean last)
+        {
+            this.pixels = pixels;
+            this.width = width;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.last = last;
+        }
+
+        @Override
+        protected byte[] compute()
+        {
+            // every row is preceded by its filter type, 0 (none)
+            byte[] raw = new byte[(toRow - fromRow)*(width + 1)];
+            for (int row = fromRow; row < toRow; row++)
+                System.arraycopy(pixels, row*width, raw, (row - fromRow)*(width + 1) + 1, width);
+            Adler32 checksum = new Adler32();
+            checksum.update(raw);
+            adler = checksum.getValue();
+            length = raw.length;
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            deflater.setInput(raw);
+            if (last)
+                deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length/4 + 64);
+            byte[] buffer = new byte[1 << 16];
+            int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+                int n = deflater.deflate(buffer, 0, buffer.length, flush);
+                compressed.write(buffer, 0, n);
+                if (last ? deflater.finished() : n < buffer.length && deflater.needsInput())
+                    break;
+            }
+            deflater.end();
+            return chunk("IDAT", compressed.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <code>SolutionCache</code> keeps the paths found in mazes in the
+ * files of a directory, so that a maze read again from the same map
+ * need not be searched again.
+ * <p>
+ * Entries are keyed by the checksum of the map, which covers the
+ * size, the tiles and the goals of the maze, and by a mode, such as
+ * the name of the solver, since different solvers find different
+ * paths. A path is stored in the binary form of
+ * <code>CompactPath</code>: the row and column of its initial node,
+ * followed by its moves in two bits each; node identifiers, which are
+ * drawn anew whenever a map is read, are not stored. A path read from
+ * the cache is checked with <code>Maze.isValidPath</code> before it
+ * is returned, and its entry is deleted if it is not valid, as after
+ * a collision of checksums or a damaged file.
+ * <p>
+ * Entries are written to a temporary file and then renamed, so that
+ * runs sharing the directory never read half-written entries.
+ * Reading an entry renews its modification time; when the entries
+ * take more than <code>maxBytes</code> in total, the least recently
+ * used ones are deleted. The hits, misses, invalid entries and
+ * evictions are counted both by every cache and, in a file of the
+ * directory updated under a file lock, over all runs sharing it.
+ */
+
+public class SolutionCache
+{
+    private static final int MAGIC = 0x414d5a50;    // "AMZP"
+    private static final int VERSION = 1;
+    // magic, version, checksum
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+    private static final String SUFFIX = ".path";
+    private static final String STATS_FILE = "stats";
+
+    // indexes of the counters
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+    private static final int INVALID = 2;
+    private static final int EVICTIONS = 3;
+    private static final int COUNTERS = 4;
+
+    private final Path directory;
+    private final long maxBytes;
+    // counts of this cache, and over all runs as of the last update
+    private final long[] counts = new long[COUNTERS];
+    private final long[] totals = new long[COUNTERS];
+
+    /**
+     * Creates a cache in a directory, which is created when the cache
+     * is first used.
+     *
+     * @param directory   the name of the directory of the entries
+     * @param maxBytes    the total size of the entries beyond which
+     *                    the least recently used ones are deleted
+     */
+    public SolutionCache(String directory, long maxBytes)
+    {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    // file of the entry of `mode' for the map with `checksum'
+    private Path file(long checksum, String mode)
+    {
+        return directory.resolve(String.format("%016x-%s%s", checksum,
+                                               mode.replaceAll("[^A-Za-z0-9_.-]", "_"), SUFFIX));
+    }
+
+    /**
+     * Returns the path cached for a maze and a mode, if there is one
+     * and it is a valid path in the maze.
+     *
+     * @param maze   the maze to be solved
+     * @param mode   the mode of the search, such as the name of the solver
+     * @return       a list of node identifiers from the start node of
+     *               <code>maze</code> to a goal; <code>null</code> if
+     *               there is no valid path in the cache
+     */
+    public synchronized List<Integer> get(Maze maze, String mode)
+    {
+        long checksum = maze.checksum();
+        Path file = file(checksum, mode);
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (NoSuchFileException e) {
+            record(MISSES);
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error: cannot read solution cache entry " + file);
+            record(MISSES);
+            return null;
+        }
+        List<Integer> path = null;
+        try {
+            if (buffer.remaining() >= HEADER_BYTES && buffer.getInt() == MAGIC
+                && buffer.getInt() == VERSION && buffer.getLong() == checksum) {
+                path = CompactPath.decode(maze, buffer).asList();
+                if (buffer.hasRemaining() || !maze.isValidPath(path))
+                    path = null;
+            }
+        } catch (RuntimeException e) {
+            // moves past the edges of the board, or symbols past the end
+            path = null;
+        }
+        if (path == null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Error: cannot delete solution cache entry " + file);
+            }
+            record(INVALID, MISSES);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // evicted by another run meanwhile
+        }
+        record(HITS);
+        return path;
+    }
+
+    /**
+     * Stores the path found for a maze and a mode, replacing any
+     * previous entry, and evicts the least recently used entries if
+     * the cache grows beyond its size. Errors are reported, but the
+     * path is then simply not cached.
+     *
+     * @param maze   the maze that was solved
+     * @param mode   the mode of the search, such as the name of the solver
+     * @param path   a list of identifiers of adjacent nodes in
+     *               <code>maze</code>
+     */
+    public synchronized void put(Maze maze, String mode, List<Integer> path)
+    {
+        long checksum = maze.checksum();
+        Path file = file(checksum, mode);
+        CompactPath compact = CompactPath.fromIds(maze, path);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + compact.encodedSize());
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(checksum);
+        compact.encode(buffer);
+        buffer.flip();
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            evict();
+        } catch (IOException e) {
+            System.err.println("Error: cannot write solution cache entry " + file);
+        }
+    }
+
+    // delete the least recently used entries until they fit in maxBytes
+    private void evict()
+    throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry: entries) {
+                try {
+                    BasicFileAttributes attribute = Files.readAttributes(entry, BasicFileAttributes.class);
+                    files.add(entry);
+                    attributes.add(attribute);
+                    total += attribute.size();
+                } catch (NoSuchFileException e) {
+                    // evicted by another run meanwhile
+                }
+            }
+        }
+        if (total <= maxBytes)
+            return;
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++)
+            order.add(i);
+        order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        int evicted = 0;
+        for (int i = 0; i < order.size() && total > maxBytes; i++) {
+            int oldest = order.get(i);
+            if (Files.deleteIfExists(files.get(oldest)))
+                evicted += 1;
+            total -= attributes.get(oldest).size();
+        }
+        int[] events = new int[evicted];
+        Arrays.fill(events, EVICTIONS);
+        record(events);
+    }
+
+    // count one of each of `events', here and in the file of the directory
+    private void record(int... events)
+    {
+        for (int event: events)
+            counts[event] += 1;
+        Path file = directory.resolve(STATS_FILE);
+        ByteBuffer buffer = ByteBuffer.allocate(8*COUNTERS);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            System.err.println("Error: cannot create solution cache " + directory);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // other processes sharing the directory update the totals under the same lock
+            FileLock lock = channel.lock();
+            try {
+                while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0)
+                    ;
+                buffer.clear();
+                for (int i = 0; i < COUNTERS; i++)
+                    totals[i] = buffer.getLong(8*i);
+                for (int event: events)
+                    totals[event] += 1;
+                for (int i = 0; i < COUNTERS; i++)
+                    buffer.putLong(8*i, totals[i]);
+                while (buffer.hasRemaining())
+                    buffer.position(buffer.position() + channel.write(buffer, buffer.position()));
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: cannot update solution cache statistics " + file);
+        }
+    }
+
+    /**
+     * Returns the number of paths returned by <code>get</code> from
+     * this cache.
+     *
+     * @return   the number of hits of this cache
+     */
+    public synchronized long hits()
+    {
+        return counts[HITS];
+    }
+
+    /**
+     * Returns the number of calls of <code>get</code> on this cache
+     * that found no valid path.
+     *
+     * @return   the number of misses of this cache, including invalid entries
+     */
+    public synchronized long misses()
+    {
+        return counts[MISSES];
+    }
+
+    /**
+     * Returns the fraction of the calls of <code>get</code> on this
+     * cache that returned a path.
+     *
+     * @return   the hits over the calls of <code>get</code>; 0 if
+     *           there were none
+     */
+    public synchronized double hitRate()
+    {
+        return rate(counts);
+    }
+
+    private static double rate(long[] counts)
+    {
+        long lookups = counts[HITS] + counts[MISSES];
+        return lookups == 0 ? 0 : (double) counts[HITS]/lookups;
+    }
+
+    /**
+     * Returns the counts of this cache, and of all the runs sharing
+     * its directory as of the last update of this cache, on one line.
+     *
+     * @return   a description of the counts of the cache
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("Solution cache %s: %d hits, %d misses, %d invalid, %d evicted; "
+                             + "hit rate %.1f%% (%.1f%% over %d lookups in all runs)",
+                             directory, counts[HITS], counts[MISSES], counts[INVALID], counts[EVICTIONS],
+                             100*rate(counts), 100*rate(totals), totals[HITS] + totals[MISSES]);
+    }
+}
@@ -5,22 +5,38 @@ import java.awt.Image;
 
 public enum Tile
 {
-    EMPTY("empty"),
-    BRICK("brick"),
-    SOLID("solid"),
-    MARKED("marked"),
-    FOUND("found"),
-    HEART("heart");
+    EMPTY("empty", 0x1ba300, 1),
+    BRICK("brick", 0x6f797e, 0),
+    SOLID("solid", 0x3c4448, 0),
+    MARKED("marked", 0xff0000, 0),
+    FOUND("found", 0xffd700, 0),
+    HEART("heart", 0xe0218a, 1),
+    MUD("mud", 0x7a5230, 3),
+    WATER("water", 0x1f6fd0, 8);
+
+    // color of players when cells are drawn as single colored pixels
+    static final int PLAYER_RGB = 0x2060ff;
 
     private final String name;
     private final Image image;
     private final Character text;
+    // color of the tile when cells are drawn as single colored pixels
+    private final int rgb;
+    // cost of entering a cell of the tile, unless a map sets another; 0 if not accessible
+    private final int defaultCost;
 
-    Tile(String name)
+    Tile(String name, int rgb, int defaultCost)
     {
         this.name = name;
         this.image = ImageFactory.getImage(this.name);
         this.text = ImageFactory.getText(this.name);
+        this.rgb = rgb;
+        this.defaultCost = defaultCost;
+    }
+
+    String getName()
+    {
+        return name;
     }
 
     Image getImage()
@@ -28,6 +44,11 @@ public enum Tile
         return image;
     }
 
+    int getRgb()
+    {
+        return rgb;
+    }
+
     Character getText()
     {
         return text;
@@ -37,4 +58,14 @@ public enum Tile
     {
         return text.charValue();
     }
+
+    int getDefaultCost()
+    {
+        return defaultCost;
+    }
+
+    boolean isAccessible()
+    {
+        return defaultCost > 0;
+    }
 }
@@ -0,0 +1,133 @@
+package amazed.maze;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+// colors of the cells of a board, one pixel per cell or per block of cells
+//
+// A pixel stands for a square block of `block' by `block' cells. With
+// block 1 it has the color of the tile of its cell; otherwise it has
+// the color of the most significant tile sampled in the block (found
+// goal, then goal, then marked path) or, if there is none, a blend of
+// the empty and brick colors in proportion to the accessible cells
+// sampled. At most MAX_SAMPLES by MAX_SAMPLES cells are sampled per
+// block, evenly spaced, so that the cost of a pixel is bounded at any
+// zoom level. The rows of pixels are filled in parallel bands, by a
+// small pool of their own rather than the common pool, so that a
+// repaint does not wait for the tasks of a solver running there.
+class TileRenderer
+{
+    // rows of pixels per band below which a filling task does not split further
+    private static final int BAND_ROWS = 32;
+    // maximum number of cells sampled per block, along each axis
+    private static final int MAX_SAMPLES = 8;
+    // maximum number of threads filling bands
+    private static final int MAX_THREADS = 4;
+
+    private static final ForkJoinPool POOL =
+        new ForkJoinPool(Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+
+    private static final Tile[] TILES = Tile.values();
+
+    private final Board board;
+
+    TileRenderer(Board board)
+    {
+        this.board = board;
+    }
+
+    // fill `height' rows of `width' pixels, stored in `pixels' starting
+    // at `offset' with `stride' pixels per row, with the colors of the
+    // blocks starting at row0, col0
+    void fill(int[] pixels, int offset, int stride,
+              int row0, int col0, int width, int height, int block)
+    {
+        POOL.invoke(new Band(pixels, offset, stride, row0, col0, width, 0, height, block));
+    }
+
+    // color of the block of cells whose top-left cell is at row, col
+    int rgb(int row, int col, int block)
+    {
+        if (block == 1)
+            return board.getTile(row, col).getRgb();
+        int toRow = Math.min(row + block, board.getRows());
+        int toCol = Math.min(col + block, board.getCols());
+        int step = Math.max(1, block/MAX_SAMPLES);
+        boolean heart = false, marked = false;
+        int accessible = 0, sampled = 0;
+        for (int r = row; r < toRow; r += step) {
+            for (int c = col; c < toCol; c += step) {
+                Tile tile = board.getTile(r, c);
+                if (tile == Tile.FOUND)
+                    return Tile.FOUND.getRgb();
+                heart |= tile == Tile.HEART;
+                marked |= tile == Tile.MARKED;
+                if (tile.isAccessible() || tile == Tile.MARKED)
+                    accessible += 1;
+                sampled += 1;
+            }
+        }
+        if (heart)
+            return Tile.HEART.getRgb();
+        if (marked)
+            return Tile.MARKED.getRgb();
+        return blend(Tile.BRICK.getRgb(), Tile.EMPTY.getRgb(), accessible, sampled);
+    }
+
+    // mix of rgb colors `from' and `to', with weight part/whole of `to'
+    static int blend(int from, int to, int part, int whole)
+    {
+        int result = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int a = (from >>> shift) & 0xff, b = (to >>> shift) & 0xff;
+            result |= (a + (b - a)*part/whole) << shift;
+        }
+        return result;
+    }
+
+    // filling of the pixel rows in [fromY, toY)
+    private class Band extends RecursiveAction
+    {
+        private final int[] pixels;
+        private final int offset;
+        private final int stride;
+        private final int row0;
+        private final int col0;
+        private final int width;
+        private final int fromY;
+        private final int toY;
+        private final int block;
+
+        Band(int[] pixels, int offset, int stride, int row0, int col0,
+             int width, int fromY, int toY, int block)
+        {
+            this.pixels = pixels;
+            this.offset = offset;
+            this.stride = stride;
+            this.row0 = row0;
+            this.col0 = col0;
+            this.width = width;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.block = block;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toY - fromY > BAND_ROWS) {
+                int mid = (fromY + toY) >>> 1;
+                invokeAll(new Band(pixels, offset, stride, row0, col0, width, fromY, mid, block),
+                          new Band(pixels, offset, stride, row0, col0, width, mid, toY, block));
+                return;
+            }
+            for (int y = fromY; y < toY; y++) {
+                int row = row0 + y*block;
+                int base = offset + y*stride;
+                for (int x = 0; x < width; x++)
+                    pixels[base + x] = rgb(row, col0 + x*block, block);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package amazed.maze;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// when, and by which worker, every cell of a board was first visited
+//
+// A visit is a move of a player onto a cell. The first visit of a cell
+// gets a stamp from a global clock, starting from 1, and the worker
+// that made it: a number given to every thread at its first visit,
+// from 1 in the order of these visits, whether the thread is a
+// fork/join worker or not. Cells never visited have stamp and worker
+// 0. Two threads visiting a cell at the same time may both record
+// their visit; the last one written is kept, which is good enough for
+// a picture of the search.
+class VisitLog
+{
+    // largest worker recorded; workers beyond it are recorded as it
+    static final int MAX_WORKER = 255;
+
+    private final AtomicInteger clock = new AtomicInteger();
+    // number of threads that visited cells, and the number of the current thread
+    private final AtomicInteger workers = new AtomicInteger();
+    private final ThreadLocal<Integer> workerOfThread =
+        ThreadLocal.withInitial(() -> Math.min(workers.incrementAndGet(), MAX_WORKER));
+    // cell index --> stamp of first visit
+    private final int[] order;
+    // cell index --> worker of first visit
+    private final byte[] worker;
+
+    VisitLog(int nCells)
+    {
+        order = new int[nCells];
+        worker = new byte[nCells];
+    }
+
+    void record(int cell)
+    {
+        if (order[cell] != 0)
+            return;
+        order[cell] = clock.incrementAndGet();
+        worker[cell] = (byte) (int) workerOfThread.get();
+    }
+
+    // stamp of the first visit of cell index `cell'; 0 if never visited
+    int order(int cell)
+    {
+        return order[cell];
+    }
+
+    // worker of the first visit of cell index `cell'; 0 if never visited
+    int worker(int cell)
+    {
+        return worker[cell] & 0xff;
+    }
+
+    // largest stamp given, about the number of cells visited
+    int visited()
+    {
+        return clock.get();
+    }
+}
@@ -0,0 +1,82 @@
+package amazed.solver;
+
+import amazed.maze.Bitboard;
+import amazed.maze.Maze;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>BitboardSolver</code> finds a shortest path from the start
+ * node to a goal by growing breadth-first layers on a
+ * <code>Bitboard</code>, 64 cells at a time, and in parallel over
+ * bands of rows.
+ * <p>
+ * Unlike the other solvers, this solver does not move a player
+ * through the maze step by step: a layer grows over many cells at
+ * once. Its player only appears at the start node and, once a path
+ * is found, at the goal.
+ */
+
+public class BitboardSolver
+    extends RecursiveTask<List<Integer>>
+{
+    private final Maze maze;
+    private final AtomicBoolean stop;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BitboardSolver(Maze maze)
+    {
+        this(maze, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, until the search ends or <code>stop</code>
+     * is set.
+     *
+     * @param maze   the maze to be searched
+     * @param stop   a flag that cancels the search when set
+     */
+    public BitboardSolver(Maze maze, AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.stop = stop;
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found, or the search is
+     * stopped, the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        int player = maze.newPlayer(startId);
+        Bitboard bitboard = new Bitboard(maze);
+        try {
+            if (bitboard.layers(maze.cell(startId), stop) < 0)
+                return null;
+        } finally {
+            // the player only moves to the goal: the layers tell what was explored
+            maze.reportExplored(bitboard.visitedCells());
+        }
+        List<Integer> path = bitboard.path().asList();
+        maze.move(player, path.get(path.size() - 1));
+        return path;
+    }
+}
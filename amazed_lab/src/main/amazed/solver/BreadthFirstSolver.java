@@ -0,0 +1,170 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>BreadthFirstSolver</code> implements a single-thread
+ * breadth-first search, which finds a shortest path from the start
+ * node to a goal.
+ * <p>
+ * The search works on cell indexes with primitive arrays, like
+ * <code>PrimitiveSequentialSolver</code>. In its bidirectional variant,
+ * it grows two searches layer by layer: one from the start node and
+ * one from all goals at once, always extending the one with the
+ * smaller frontier, until they meet. Every cell is claimed by at most
+ * one of the two searches, so both fit in one queue of as many
+ * entries as cells: the forward search fills it from the front, the
+ * backward search from the back.
+ * <p>
+ * A solver given a stop flag gives up, returning <code>null</code>,
+ * as soon as it finds the flag set; this lets several solvers race on
+ * the same maze.
+ */
+
+public class BreadthFirstSolver
+    extends RecursiveTask<List<Integer>>
+{
+    // owners of cells
+    private static final byte NONE = 0;
+    private static final byte FORWARD = 1;
+    private static final byte BACKWARD = 2;
+
+    private final Maze maze;
+    private final boolean bidirectional;
+    private final AtomicBoolean stop;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, in one direction.
+     *
+     * @param maze   the maze to be searched
+     */
+    public BreadthFirstSolver(Maze maze)
+    {
+        this(maze, false, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, until the search ends or <code>stop</code>
+     * is set.
+     *
+     * @param maze            the maze to be searched
+     * @param bidirectional   whether the search also proceeds backwards
+     *                        from the goals
+     * @param stop            a flag that cancels the search when set
+     */
+    public BreadthFirstSolver(Maze maze, boolean bidirectional, AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.bidirectional = bidirectional;
+        this.stop = stop;
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found, or the search is
+     * stopped, the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        int start = maze.cell(startId);
+        int nCells = maze.cells();
+
+        byte[] owner = new byte[nCells];
+        // predecessor of forward cells, successor of backward cells
+        int[] link = new int[nCells];
+        Arrays.fill(link, -1);
+        int[] queue = new int[nCells];
+        int[] neighbors = new int[4];
+
+        // forward queue in [forwardHead, forwardTail), backward in (backwardTail, backwardHead]
+        int forwardHead = 0, forwardTail = 0;
+        int backwardHead = nCells - 1, backwardTail = nCells - 1;
+        owner[start] = FORWARD;
+        queue[forwardTail++] = start;
+        if (bidirectional) {
+            for (int cell = 0; cell < nCells; cell++) {
+                if (maze.isGoalCell(cell)) {
+                    if (cell == start)
+                        return CompactPath.fromCellPredecessors(maze, start, start, link).asList();
+                    owner[cell] = BACKWARD;
+                    queue[backwardTail--] = cell;
+                }
+            }
+        }
+
+        int player = maze.newPlayer(startId);
+        while (forwardHead < forwardTail) {
+            int forwardLayer = forwardTail - forwardHead;
+            int backwardLayer = backwardHead - backwardTail;
+            if (bidirectional && backwardLayer > 0 && backwardLayer < forwardLayer) {
+                // one layer of the backward search
+                for (int end = backwardTail; backwardHead > end; backwardHead--) {
+                    if (stop.get())
+                        return null;
+                    int current = queue[backwardHead];
+                    int count = maze.neighborCells(current, neighbors);
+                    for (int i = 0; i < count; i++) {
+                        int nb = neighbors[i];
+                        if (owner[nb] == FORWARD)
+                            return meet(start, nb, current, link);
+                        if (owner[nb] == NONE) {
+                            owner[nb] = BACKWARD;
+                            link[nb] = current;
+                            queue[backwardTail--] = nb;
+                        }
+                    }
+                }
+                continue;
+            }
+            // one layer of the forward search
+            for (int end = forwardTail; forwardHead < end; forwardHead++) {
+                if (stop.get())
+                    return null;
+                int current = queue[forwardHead];
+                maze.move(player, maze.cellId(current));
+                if (!bidirectional && maze.isGoalCell(current))
+                    return CompactPath.fromCellPredecessors(maze, start, current, link).asList();
+                int count = maze.neighborCells(current, neighbors);
+                for (int i = 0; i < count; i++) {
+                    int nb = neighbors[i];
+                    if (owner[nb] == BACKWARD)
+                        return meet(start, current, nb, link);
+                    if (owner[nb] == NONE) {
+                        owner[nb] = FORWARD;
+                        link[nb] = current;
+                        queue[forwardTail++] = nb;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // path through adjacent cells forward, reached from start, and backward, reaching a goal
+    private List<Integer> meet(int start, int forward, int backward, int[] link)
+    {
+        int goal = backward;
+        while (!maze.isGoalCell(goal))
+            goal = link[goal];
+        return CompactPath.fromCellPredecessors(maze, start, forward, link)
+            .append(CompactPath.fromCellSuccessors(maze, backward, goal, link))
+            .asList();
+    }
+}
@@ -0,0 +1,179 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+// state of a depth-first search on cell indexes, saved to and restored
+// from a file named after the checksum of the map
+//
+// The file holds a header, the frontier stack, the visited bitset,
+// and the predecessor of every visited or stacked cell as a two-bit
+// direction (predecessors are always neighbors), packed four per byte:
+// about 3/8 of a byte per cell, plus four bytes per stacked cell.
+// A snapshot is encoded into a buffer by the searching thread, which
+// then goes on while another thread writes the buffer to a temporary
+// file and renames it over the previous checkpoint, so that a crash
+// while writing leaves the previous checkpoint intact.
+class Checkpoint
+{
+    private static final int MAGIC = 0x414d5a43;    // "AMZC"
+    private static final int VERSION = 1;
+    // magic, version, checksum, cells, start, stack size
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+
+    // predecessor directions
+    private static final int NORTH = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int EAST = 3;
+
+    final int start;
+    final int[] stack;
+    final int size;
+    final long[] visited;
+    final int[] predecessor;
+
+    private Checkpoint(int start, int[] stack, int size, long[] visited, int[] predecessor)
+    {
+        this.start = start;
+        this.stack = stack;
+        this.size = size;
+        this.visited = visited;
+        this.predecessor = predecessor;
+    }
+
+    // file of the checkpoints of the map with `checksum' in `directory'
+    static Path file(String directory, long checksum)
+    {
+        return Paths.get(directory, String.format("%016x.ckpt", checksum));
+    }
+
+    // snapshot of a search from `start' in `maze' with the map of `checksum'
+    static ByteBuffer encode(Maze maze, long checksum, int start,
+                             int[] stack, int size, long[] visited, int[] predecessor)
+    {
+        int nCells = maze.cells(), nCols = maze.cols();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4*size + 8*visited.length + (nCells + 3)/4);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(checksum)
+            .putInt(nCells).putInt(start).putInt(size);
+        buffer.asIntBuffer().put(stack, 0, size);
+        buffer.position(buffer.position() + 4*size);
+        buffer.asLongBuffer().put(visited);
+        buffer.position(buffer.position() + 8*visited.length);
+        for (int base = 0; base < nCells; base += 4) {
+            int packed = 0;
+            for (int cell = base; cell < Math.min(base + 4, nCells); cell++)
+                packed |= direction(predecessor[cell], cell, nCols) << (2*(cell - base));
+            buffer.put((byte) packed);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // direction of `from' seen from its neighbor `cell'; any if from < 0
+    private static int direction(int from, int cell, int nCols)
+    {
+        if (from < 0 || from == cell - nCols)
+            return NORTH;
+        if (from == cell + nCols)
+            return SOUTH;
+        return from == cell - 1 ? WEST : EAST;
+    }
+
+    // file where a checkpoint is written before replacing `file'
+    private static Path temporary(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    // write `buffer' to `file', replacing it only once written
+    static void write(ByteBuffer buffer, Path file)
+    throws IOException
+    {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = temporary(file);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // delete `file', and what may be left of writing it
+    static void delete(Path file)
+    throws IOException
+    {
+        Files.deleteIfExists(temporary(file));
+        Files.deleteIfExists(file);
+    }
+
+    // checkpoint in `file' for `maze' with the map of `checksum';
+    // null if there is none, or it is for another map
+    static Checkpoint read(Path file, Maze maze, long checksum)
+    throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE)
+                return null;
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                ;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        buffer.flip();
+        int nCells = maze.cells(), nCols = maze.cols();
+        long[] visited = new long[(nCells + 63) >>> 6];
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum
+            || buffer.getInt() != nCells)
+            return null;
+        int start = buffer.getInt(), size = buffer.getInt();
+        if (start < 0 || start >= nCells || size < 0
+            || buffer.remaining() != 4L*size + 8*visited.length + (nCells + 3)/4)
+            return null;
+
+        int[] stack = new int[Math.max(64, Integer.highestOneBit(Math.max(size, 1)) << 1)];
+        buffer.asIntBuffer().get(stack, 0, size);
+        buffer.position(buffer.position() + 4*size);
+        buffer.asLongBuffer().get(visited);
+        buffer.position(buffer.position() + 8*visited.length);
+
+        // predecessors of visited and stacked cells only
+        long[] known = visited.clone();
+        for (int i = 0; i < size; i++) {
+            if (stack[i] < 0 || stack[i] >= nCells)
+                return null;
+            known[stack[i] >>> 6] |= 1L << stack[i];
+        }
+        int[] predecessor = new int[nCells];
+        for (int base = 0; base < nCells; base += 4) {
+            int packed = buffer.get();
+            for (int cell = base; cell < Math.min(base + 4, nCells); cell++) {
+                int direction = (packed >>> (2*(cell - base))) & 3;
+                if ((known[cell >>> 6] & (1L << cell)) == 0 || cell == start)
+                    predecessor[cell] = -1;
+                else if (direction == NORTH)
+                    predecessor[cell] = cell - nCols;
+                else if (direction == SOUTH)
+                    predecessor[cell] = cell + nCols;
+                else
+                    predecessor[cell] = direction == WEST ? cell - 1 : cell + 1;
+            }
+        }
+        return new Checkpoint(start, stack, size, visited, predecessor);
+    }
+}
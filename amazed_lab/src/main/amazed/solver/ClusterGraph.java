@@ -0,0 +1,378 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+// abstract graph of a maze split into square clusters, searched by
+// HierarchicalSolver
+//
+// The board is split into clusters of `size' by `size' cells, the
+// last ones in a row or column possibly smaller. Along the border of
+// two adjacent clusters, every maximal run of pairs of accessible
+// cells facing each other across the border is an entrance, crossed
+// at its middle pair if it is shorter than LONG_ENTRANCE, and at both
+// of its end pairs otherwise. The cells of the crossings are the
+// nodes of the graph: a crossing joins two nodes in adjacent clusters
+// by an edge of length 1, and the nodes of a cluster are joined by
+// edges as long as the shortest paths between them that stay inside
+// the cluster. Every node also has the length of the shortest path
+// from it to a goal inside its cluster. Since a path moving between
+// clusters can always slide along an entrance to one of its
+// crossings, the nodes that the graph connects are those that the
+// maze connects.
+//
+// The crossings are found in a sequential pass over the borders; the
+// lengths inside clusters by a breadth-first search from every node,
+// confined to its cluster, in parallel over the clusters. Before every
+// border, and before the nodes and the lengths of every cluster, the
+// build checks whether the search that needs it was stopped, or its
+// deadline passed (see Maze.checkDeadline), and then gives up with a
+// CancellationException.
+class ClusterGraph
+{
+    // runs of crossings at least this long are crossed at both ends
+    private static final int LONG_ENTRANCE = 6;
+    // clusters below which a task does not split further
+    private static final int CLUSTERS_PER_TASK = 16;
+
+    final Maze maze;
+    final int size;
+    // flag of the search that builds the graph, which cancels the build when set
+    private final AtomicBoolean stop;
+    final int nRows;
+    final int nCols;
+    final int clusterCols;
+    final int nClusters;
+
+    // cells of the nodes, by cluster, then cell: the nodes of cluster k
+    // are first[k] to first[k + 1] - 1
+    final int[] nodeCell;
+    final int[] first;
+    // nodes across the border from node n, in across[acrossFirst[n]]
+    // to across[acrossFirst[n + 1] - 1]
+    final int[] acrossFirst;
+    final int[] across;
+    // length inside cluster k from its i-th node to its j-th node, at
+    // inside[k][i*m + j] where m is the number of nodes of k; -1 if
+    // they are not connected inside the cluster
+    final short[][] inside;
+    // length from node n to the nearest goal inside its cluster; -1 if none
+    final short[] toGoal;
+    // goals of cluster k, counted while the lengths are computed
+    private final int[] goalsIn;
+    // cells of the goals, if at most JumpPointSolver.MAX_HEURISTIC_GOALS; otherwise null
+    final int[] goalCells;
+
+    ClusterGraph(Maze maze, int size, AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.size = size;
+        this.stop = stop;
+        this.nRows = maze.rows();
+        this.nCols = maze.cols();
+        this.clusterCols = (nCols + size - 1)/size;
+        this.nClusters = clusterCols*((nRows + size - 1)/size);
+
+        // crossings, as pairs of cells on either side of a border
+        IntList pairs = new IntList();
+        for (int col = size; col < nCols; col += size) {
+            checkStopped();
+            for (int row = 0; row < nRows; row += size)
+                addCrossings(pairs, row, col - 1, row, col, 1, 0, Math.min(size, nRows - row));
+        }
+        for (int row = size; row < nRows; row += size) {
+            checkStopped();
+            for (int col = 0; col < nCols; col += size)
+                addCrossings(pairs, row - 1, col, row, col, 0, 1, Math.min(size, nCols - col));
+        }
+
+        // nodes: distinct cells of crossings, sorted by cluster, then
+        // cell; the cells are first bucketed by cluster, and every
+        // bucket is then sorted on its own
+        int[] cells = new int[pairs.size];
+        int[] bucket = new int[nClusters + 1];
+        for (int i = 0; i < pairs.size; i++)
+            bucket[cluster(pairs.values[i]) + 1] += 1;
+        for (int k = 0; k < nClusters; k++)
+            bucket[k + 1] += bucket[k];
+        int[] fill = Arrays.copyOf(bucket, nClusters);
+        for (int i = 0; i < pairs.size; i++)
+            cells[fill[cluster(pairs.values[i])]++] = pairs.values[i];
+        first = new int[nClusters + 1];
+        int nNodes = 0;
+        for (int k = 0; k < nClusters; k++) {
+            checkStopped();
+            Arrays.sort(cells, bucket[k], bucket[k + 1]);
+            for (int i = bucket[k]; i < bucket[k + 1]; i++)
+                if (i == bucket[k] || cells[i] != cells[i - 1])
+                    cells[nNodes++] = cells[i];
+            first[k + 1] = nNodes;
+        }
+        nodeCell = Arrays.copyOf(cells, nNodes);
+
+        acrossFirst = new int[nNodes + 1];
+        int[] ends = new int[pairs.size];
+        for (int i = 0; i < pairs.size; i++) {
+            int k = cluster(pairs.values[i]);
+            ends[i] = Arrays.binarySearch(nodeCell, first[k], first[k + 1], pairs.values[i]);
+            acrossFirst[ends[i] + 1] += 1;
+        }
+        for (int n = 0; n < nNodes; n++)
+            acrossFirst[n + 1] += acrossFirst[n];
+        across = new int[pairs.size];
+        int[] next = Arrays.copyOf(acrossFirst, nNodes);
+        for (int i = 0; i < pairs.size; i += 2) {
+            across[next[ends[i]]++] = ends[i + 1];
+            across[next[ends[i + 1]]++] = ends[i];
+        }
+
+        inside = new short[nClusters][];
+        toGoal = new short[nNodes];
+        goalsIn = new int[nClusters];
+        ForkJoinPool.commonPool().invoke(new Lengths(0, nClusters));
+        goalCells = findGoals();
+    }
+
+    // give up the build if the search that needs it was stopped, or
+    // its deadline passed
+    private void checkStopped()
+    {
+        if (stop.get())
+            throw new CancellationException("graph build stopped");
+        maze.checkDeadline();
+    }
+
+    // cells of the goals, in the clusters that have some; null if too many
+    private int[] findGoals()
+    {
+        long nGoals = 0;
+        for (int count: goalsIn)
+            nGoals += count;
+        if (nGoals > JumpPointSolver.MAX_HEURISTIC_GOALS)
+            return null;
+        IntList goals = new IntList();
+        for (int k = 0; k < nClusters; k++) {
+            if (goalsIn[k] == 0)
+                continue;
+            int firstRow = (k/clusterCols)*size, firstCol = (k%clusterCols)*size;
+            for (int row = firstRow; row < Math.min(firstRow + size, nRows); row++)
+                for (int col = firstCol; col < Math.min(firstCol + size, nCols); col++)
+                    if (maze.isGoalCell(row*nCols + col))
+                        goals.add(row*nCols + col);
+        }
+        return Arrays.copyOf(goals.values, goals.size);
+    }
+
+    // Manhattan distance from a cell to the nearest goal; 0 if the goals are not recorded
+    int heuristic(int cell)
+    {
+        if (goalCells == null)
+            return 0;
+        int row = cell/nCols, col = cell%nCols;
+        int nearest = Integer.MAX_VALUE;
+        for (int goal: goalCells)
+            nearest = Math.min(nearest, Math.abs(goal/nCols - row) + Math.abs(goal%nCols - col));
+        return nearest;
+    }
+
+    // cluster of a cell
+    int cluster(int cell)
+    {
+        int row = cell/nCols, col = cell%nCols;
+        return (row/size)*clusterCols + col/size;
+    }
+
+    // add the crossings of the border between (row0, col0) and (row1,
+    // col1), running for `length' cells in direction dRow, dCol
+    private void addCrossings(IntList pairs, int row0, int col0, int row1, int col1,
+                              int dRow, int dCol, int length)
+    {
+        int run = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && maze.isAccessible(row0 + i*dRow, col0 + i*dCol)
+                && maze.isAccessible(row1 + i*dRow, col1 + i*dCol)) {
+                run += 1;
+                continue;
+            }
+            if (run == 0)
+                continue;
+            int from = i - run, to = i - 1;
+            if (run < LONG_ENTRANCE) {
+                from = (from + to)/2;
+                to = from;
+            }
+            for (int j = from; j <= to; j += Math.max(1, to - from)) {
+                pairs.add((row0 + j*dRow)*nCols + col0 + j*dCol);
+                pairs.add((row1 + j*dRow)*nCols + col1 + j*dCol);
+            }
+            run = 0;
+        }
+    }
+
+    // number of nodes of the graph
+    int nodes()
+    {
+        return nodeCell.length;
+    }
+
+    // lengths inside the clusters in [from, to)
+    private class Lengths extends RecursiveAction
+    {
+        private final int from;
+        private final int to;
+
+        Lengths(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > CLUSTERS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Lengths(from, mid), new Lengths(mid, to));
+                return;
+            }
+            Search search = new Search();
+            for (int k = from; k < to; k++) {
+                checkStopped();
+                int m = first[k + 1] - first[k];
+                short[] lengths = new short[m*m];
+                goalsIn[k] = search.load(k);
+                for (int i = 0; i < m; i++) {
+                    toGoal[first[k] + i] = (short) search.run(nodeCell[first[k] + i]);
+                    for (int j = 0; j < m; j++)
+                        lengths[i*m + j] = (short) search.length(nodeCell[first[k] + j]);
+                }
+                inside[k] = lengths;
+            }
+        }
+    }
+
+    // breadth-first search confined to a cluster, reusing its arrays
+    // from cluster to cluster
+    //
+    // The cells of the cluster are copied to a grid one cell wider on
+    // every side, where the frame is closed, so that neighbors need no
+    // bounds checks; the lengths of a search are valid where the stamp
+    // is the number of the search, so that they need not be cleared.
+    class Search
+    {
+        private final int stride = size + 2;
+        private final boolean[] open = new boolean[stride*stride];
+        private final boolean[] goal = new boolean[stride*stride];
+        private final int[] length = new int[stride*stride];
+        private final int[] stamp = new int[stride*stride];
+        private final int[] parent = new int[stride*stride];
+        private final int[] queue = new int[size*size];
+        private int searches = 0;
+        private int firstRow;
+        private int firstCol;
+        private int source;
+        // nearest goal reached by the last search; -1 if none
+        private int nearestGoal;
+
+        // confine the searches to cluster k; return its number of goals
+        int load(int k)
+        {
+            firstRow = (k/clusterCols)*size;
+            firstCol = (k%clusterCols)*size;
+            int height = Math.min(size, nRows - firstRow);
+            int width = Math.min(size, nCols - firstCol);
+            Arrays.fill(open, false);
+            int goals = 0;
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    int local = (row + 1)*stride + col + 1;
+                    open[local] = maze.isAccessible(firstRow + row, firstCol + col);
+                    goal[local] = maze.isGoalCell((firstRow + row)*nCols + firstCol + col);
+                    if (goal[local])
+                        goals += 1;
+                }
+            }
+            return goals;
+        }
+
+        // search from `cell' in the loaded cluster; return the length to
+        // the nearest goal in the cluster, or -1 if there is none
+        int run(int cell)
+        {
+            searches += 1;
+            source = local(cell);
+            nearestGoal = -1;
+            int head = 0, tail = 0;
+            length[source] = 0;
+            stamp[source] = searches;
+            parent[source] = -1;
+            queue[tail++] = source;
+            while (head < tail) {
+                int current = queue[head++];
+                if (goal[current] && nearestGoal < 0)
+                    nearestGoal = current;
+                tail = visit(current, current - stride, tail);
+                tail = visit(current, current + stride, tail);
+                tail = visit(current, current - 1, tail);
+                tail = visit(current, current + 1, tail);
+            }
+            return nearestGoal < 0 ? -1 : length[nearestGoal];
+        }
+
+        private int visit(int current, int next, int tail)
+        {
+            if (!open[next] || stamp[next] == searches)
+                return tail;
+            length[next] = length[current] + 1;
+            stamp[next] = searches;
+            parent[next] = current;
+            queue[tail] = next;
+            return tail + 1;
+        }
+
+        // length from the source of the last search to `cell'; -1 if not reached
+        int length(int cell)
+        {
+            int local = local(cell);
+            return stamp[local] == searches ? length[local] : -1;
+        }
+
+        // append to `path' the cells after the source of the last search
+        // on the way to `cell', which must have been reached
+        void appendPath(int cell, IntList path)
+        {
+            appendLocal(local(cell), path);
+        }
+
+        // append to `path' the cells after the source of the last search
+        // on the way to the nearest goal, which must have been reached
+        void appendPathToGoal(IntList path)
+        {
+            appendLocal(nearestGoal, path);
+        }
+
+        private void appendLocal(int target, IntList path)
+        {
+            int start = path.size;
+            for (int current = target; current != source; current = parent[current])
+                path.add((firstRow + current/stride - 1)*nCols + firstCol + current%stride - 1);
+            // the cells were appended backwards
+            for (int i = start, j = path.size - 1; i < j; i++, j--) {
+                int swap = path.values[i];
+                path.values[i] = path.values[j];
+                path.values[j] = swap;
+            }
+        }
+
+        private int local(int cell)
+        {
+            return (cell/nCols - firstRow + 1)*stride + cell%nCols - firstCol + 1;
+        }
+    }
+}
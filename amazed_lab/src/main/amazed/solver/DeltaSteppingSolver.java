@@ -0,0 +1,269 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <code>DeltaSteppingSolver</code> implements a parallel
+ * delta-stepping search, which finds a path of minimum cost from the
+ * start node to a goal, where the cost of a path is the sum of the
+ * costs of the cells it enters (see {@link Maze#cellCost(int)}).
+ * <p>
+ * Cells are kept in buckets of tentative costs, each
+ * <code>delta</code> wide, and the buckets are emptied in order of
+ * cost. The cells of a bucket are expanded in parallel, by fork/join
+ * tasks over chunks of the bucket: moves into cells that cost at most
+ * <code>delta</code> (light moves) are relaxed repeatedly, as long as
+ * they put cells back in the same bucket; the other (heavy) moves are
+ * relaxed once, when the bucket is empty, since they can only reach
+ * later buckets. Tentative costs are updated with compare-and-set, so
+ * concurrent relaxations of the same cell keep the smallest cost.
+ * Once the bucket that contains the cheapest goal reached so far has
+ * been emptied, the costs of all cells up to it are final, and the
+ * path is rebuilt backwards from the goal, following neighbors whose
+ * cost plus the cost of entering the next cell is the cost of the
+ * next cell.
+ * <p>
+ * With <code>delta</code> at least the largest cost of a cell, all
+ * moves are light and the search proceeds by layers of cost, like a
+ * parallel breadth-first search; with <code>delta</code> equal to 1,
+ * it behaves like Dijkstra's algorithm with a bucket queue.
+ */
+
+public class DeltaSteppingSolver
+    extends RecursiveTask<List<Integer>>
+{
+    /**
+     * Width of the buckets used by default.
+     */
+    public static final int DEFAULT_DELTA = 4;
+
+    // cells of a bucket below which a relaxation task does not split further
+    private static final int CHUNK = 512;
+
+    private final Maze maze;
+    private final int delta;
+
+    // cost of the cheapest path found so far to every cell, plus one; 0 if not reached
+    private AtomicIntegerArray cost;
+    // cost plus one with which every cell was last expanded; 0 if never
+    private AtomicIntegerArray expanded;
+
+    // buckets of cells by cost/delta; null once emptied
+    private IntList[] buckets = new IntList[16];
+
+    // player of every worker thread
+    private ThreadLocal<Integer> player;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, with buckets <code>DEFAULT_DELTA</code>
+     * wide.
+     *
+     * @param maze   the maze to be searched
+     */
+    public DeltaSteppingSolver(Maze maze)
+    {
+        this(maze, DEFAULT_DELTA);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze    the maze to be searched
+     * @param delta   the width of the buckets of costs, at least 1
+     */
+    public DeltaSteppingSolver(Maze maze, int delta)
+    {
+        this.maze = maze;
+        this.delta = delta;
+    }
+
+    /**
+     * Searches for and returns a path of minimum cost, as a list of
+     * node identifiers, that goes from the start node to a goal node
+     * in the maze. If such a path cannot be found, the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        int start = maze.cell(startId);
+        int nCells = maze.cells();
+        player = ThreadLocal.withInitial(() -> maze.newPlayer(startId));
+        if (maze.isGoalCell(start))
+            return CompactPath.fromCells(maze, new int[] {start}).asList();
+
+        cost = new AtomicIntegerArray(nCells);
+        expanded = new AtomicIntegerArray(nCells);
+        cost.set(start, 1);
+        bucket(0).add(start);
+        // cheapest goal reached so far
+        int goal = -1;
+        for (int index = 0; index < buckets.length; index++) {
+            if (buckets[index] == null || buckets[index].size == 0) {
+                buckets[index] = null;
+                continue;
+            }
+            // cells expanded from this bucket, whose heavy moves are still to be relaxed
+            IntList settled = new IntList();
+            while (buckets[index].size > 0) {
+                IntList frontier = buckets[index];
+                buckets[index] = new IntList();
+                goal = relax(frontier, index, true, settled, goal);
+            }
+            buckets[index] = null;
+            goal = relax(settled, index, false, null, goal);
+            if (goal >= 0 && cost.get(goal) - 1 < (index + 1)*delta)
+                return path(start, goal);
+        }
+        return null;
+    }
+
+    // relax the light or heavy moves out of the cells in `cells' (those
+    // still in bucket `index' if light), in parallel; the cells expanded
+    // are appended to `settled', if not null, and the relaxed ones to
+    // their buckets; the cheapest of `goal' and the goals reached
+    private int relax(IntList cells, int index, boolean light, IntList settled, int goal)
+    {
+        if (cells.size == 0)
+            return goal;
+        int nChunks = (cells.size + CHUNK - 1)/CHUNK;
+        Relax[] chunks = new Relax[nChunks];
+        Relax all = new Relax(cells.values, 0, cells.size, index, light, chunks);
+        if (nChunks <= 1)
+            all.compute();
+        else
+            all.invoke();
+        for (Relax chunk: chunks) {
+            if (settled != null)
+                settled.addAll(chunk.expanded);
+            IntList reached = chunk.reached;
+            for (int i = 0; i < reached.size; i++)
+                bucket((cost.get(reached.values[i]) - 1)/delta).add(reached.values[i]);
+            if (chunk.goal >= 0 && (goal < 0 || cost.get(chunk.goal) < cost.get(goal)))
+                goal = chunk.goal;
+        }
+        return goal;
+    }
+
+    private IntList bucket(int index)
+    {
+        if (index >= buckets.length)
+            buckets = Arrays.copyOf(buckets, Math.max(2*buckets.length, index + 1));
+        if (buckets[index] == null)
+            buckets[index] = new IntList();
+        return buckets[index];
+    }
+
+    // path from start to goal, through neighbors whose costs add up
+    private List<Integer> path(int start, int goal)
+    {
+        IntList reversed = new IntList();
+        int[] neighbors = new int[4];
+        int current = goal;
+        reversed.add(current);
+        while (current != start) {
+            int before = cost.get(current) - maze.cellCost(current);
+            int count = maze.neighborCells(current, neighbors);
+            for (int i = 0; i < count; i++) {
+                if (cost.get(neighbors[i]) == before) {
+                    current = neighbors[i];
+                    break;
+                }
+            }
+            reversed.add(current);
+        }
+        int[] cells = new int[reversed.size];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = reversed.values[cells.length - 1 - i];
+        return CompactPath.fromCells(maze, cells).asList();
+    }
+
+    // relaxation of the moves out of cells[from, to), stored in chunks[from/CHUNK] once split
+    private class Relax extends RecursiveAction
+    {
+        private final int[] cells;
+        private final int from;
+        private final int to;
+        private final int index;
+        private final boolean light;
+        private final Relax[] chunks;
+
+        // cells expanded, cells whose cost decreased, and the cheapest goal among them
+        private final IntList expanded = new IntList();
+        private final IntList reached = new IntList();
+        private int goal = -1;
+
+        Relax(int[] cells, int from, int to, int index, boolean light, Relax[] chunks)
+        {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            this.index = index;
+            this.light = light;
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > CHUNK) {
+                int mid = from + Math.max(1, (to - from)/CHUNK/2)*CHUNK;
+                invokeAll(new Relax(cells, from, mid, index, light, chunks),
+                          new Relax(cells, mid, to, index, light, chunks));
+                return;
+            }
+            chunks[from/CHUNK] = this;
+            int[] neighbors = new int[4];
+            int mover = player.get();
+            for (int i = from; i < to; i++) {
+                int cell = cells[i];
+                int reachedAt = cost.get(cell);
+                if (light) {
+                    // skip cells that moved to another bucket, or already expanded at this cost
+                    if ((reachedAt - 1)/delta != index)
+                        continue;
+                    int last = DeltaSteppingSolver.this.expanded.get(cell);
+                    if (last == reachedAt
+                        || !DeltaSteppingSolver.this.expanded.compareAndSet(cell, last, reachedAt))
+                        continue;
+                    expanded.add(cell);
+                    maze.move(mover, maze.cellId(cell));
+                }
+                int count = maze.neighborCells(cell, neighbors);
+                for (int j = 0; j < count; j++) {
+                    int nb = neighbors[j];
+                    int step = maze.cellCost(nb);
+                    if ((step <= delta) != light)
+                        continue;
+                    int newCost = reachedAt + step;
+                    int current = cost.get(nb);
+                    while (current == 0 || newCost < current) {
+                        if (cost.compareAndSet(nb, current, newCost)) {
+                            reached.add(nb);
+                            if (maze.isGoalCell(nb) && (goal < 0 || newCost < cost.get(goal)))
+                                goal = nb;
+                            break;
+                        }
+                        current = cost.get(nb);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>DijkstraSolver</code> implements a single-thread Dijkstra
+ * search, which finds a path of minimum cost from the start node to
+ * a goal, where the cost of a path is the sum of the costs of the
+ * cells it enters (see {@link Maze#cellCost(int)}).
+ * <p>
+ * The search works on cell indexes with primitive arrays, like
+ * <code>PrimitiveSequentialSolver</code>; its priority queue is a
+ * binary heap of (cost, cell) pairs packed in <code>long</code>
+ * values, where an entry that is superseded by a cheaper one is
+ * skipped when it is removed. It is the sequential baseline against
+ * which <code>DeltaSteppingSolver</code> should be compared.
+ */
+
+public class DijkstraSolver
+    extends RecursiveTask<List<Integer>>
+{
+    private final Maze maze;
+
+    // (cost, cell) entries to settle
+    private final LongHeap open = new LongHeap();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public DijkstraSolver(Maze maze)
+    {
+        this.maze = maze;
+    }
+
+    /**
+     * Searches for and returns a path of minimum cost, as a list of
+     * node identifiers, that goes from the start node to a goal node
+     * in the maze. If such a path cannot be found, the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        int start = maze.cell(startId);
+        int nCells = maze.cells();
+
+        int[] cost = new int[nCells];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        int[] predecessor = new int[nCells];
+        Arrays.fill(predecessor, -1);
+        long[] settled = new long[(nCells + 63) >>> 6];
+        int[] neighbors = new int[4];
+
+        int player = maze.newPlayer(startId);
+        cost[start] = 0;
+        open.push(0, start);
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            if ((settled[current >>> 6] & (1L << current)) != 0)
+                continue;
+            settled[current >>> 6] |= 1L << current;
+            maze.move(player, maze.cellId(current));
+            if (maze.isGoalCell(current))
+                return CompactPath.fromCellPredecessors(maze, start, current, predecessor).asList();
+            int count = maze.neighborCells(current, neighbors);
+            for (int i = 0; i < count; i++) {
+                int nb = neighbors[i];
+                int newCost = cost[current] + maze.cellCost(nb);
+                if (newCost < cost[nb]) {
+                    cost[nb] = newCost;
+                    predecessor[nb] = current;
+                    open.push(newCost, nb);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,408 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>ExternalBreadthFirstSolver</code> implements a breadth-first
+ * search that keeps its state on disk, for mazes whose visited set and
+ * predecessors do not fit in memory.
+ * <p>
+ * Every level of the search is a file of (node, predecessor) records
+ * sorted by node identifier. The next level is built by reading the
+ * current one sequentially and collecting the neighbors of its nodes
+ * in a buffer of bounded size; full buffers are sorted and spilled to
+ * run files. The runs are then merged, dropping duplicate nodes and
+ * the nodes of the current and previous levels: in an undirected
+ * graph, a neighbor of a node of a level lies in the level before,
+ * the same level, or the next one, so no other level has to be read.
+ * Once a goal is reached, the path is rebuilt backwards by looking up
+ * the predecessor of every node in the file of its level, with a
+ * binary search.
+ * <p>
+ * The solver only reads the maze through <code>Maze.neighbors</code>
+ * and <code>Maze.hasGoal</code>. Its memory use is the buffer of
+ * records, plus a read buffer per run while merging.
+ */
+
+public class ExternalBreadthFirstSolver
+    extends RecursiveTask<List<Integer>>
+{
+    /**
+     * Number of records in the buffer of neighbors used by default:
+     * 8 MB of heap.
+     */
+    public static final int DEFAULT_BUFFER_RECORDS = 1 << 20;
+
+    // bytes of the read and write buffers of every file
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    private final Maze maze;
+    private final Path directory;
+    private final int bufferRecords;
+
+    // level files, in order, and run files of the level being built
+    private final List<Path> levels = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, with its files in a new temporary
+     * directory and the default buffer size.
+     *
+     * @param maze   the maze to be searched
+     */
+    public ExternalBreadthFirstSolver(Maze maze)
+    {
+        this(maze, null, DEFAULT_BUFFER_RECORDS);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze            the maze to be searched
+     * @param directory       the directory where the files of the
+     *                        search are written; <code>null</code> for
+     *                        a new temporary directory
+     * @param bufferRecords   number of records collected in memory
+     *                        before they are spilled to a run file
+     */
+    public ExternalBreadthFirstSolver(Maze maze, Path directory, int bufferRecords)
+    {
+        this.maze = maze;
+        this.directory = directory;
+        this.bufferRecords = bufferRecords;
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found, or the files of the
+     * search cannot be written, the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        Path workDirectory = directory;
+        try {
+            if (workDirectory == null)
+                workDirectory = Files.createTempDirectory("amazed-bfs");
+            else
+                Files.createDirectories(workDirectory);
+            return search(workDirectory);
+        } catch (IOException e) {
+            System.err.println("Error: external search failed in " + workDirectory + ": " + e.getMessage());
+            return null;
+        } finally {
+            cleanUp(workDirectory);
+        }
+    }
+
+    private List<Integer> search(Path workDirectory)
+    throws IOException
+    {
+        int start = maze.start();
+        int player = maze.newPlayer(start);
+        Path first = workDirectory.resolve("level-0.bin");
+        try (RecordWriter out = new RecordWriter(first)) {
+            out.write(record(start, -1));
+        }
+        levels.add(first);
+
+        long[] buffer = new long[bufferRecords];
+        while (true) {
+            int level = levels.size() - 1;
+            // expand the last level, until a goal is found
+            int count = 0;
+            try (RecordReader in = new RecordReader(levels.get(level))) {
+                while (in.advance()) {
+                    int node = node(in.head);
+                    maze.move(player, node);
+                    if (maze.hasGoal(node))
+                        return path(level, in.head);
+                    for (int nb: maze.neighbors(node)) {
+                        if (count == buffer.length) {
+                            spill(workDirectory, buffer, count);
+                            count = 0;
+                        }
+                        buffer[count++] = record(nb, node);
+                    }
+                }
+            }
+            Arrays.sort(buffer, 0, count);
+
+            // merge the runs into the next level
+            Path next = workDirectory.resolve("level-" + (level + 1) + ".bin");
+            long size = merge(buffer, count, next);
+            for (Path run: runs)
+                Files.delete(run);
+            runs.clear();
+            levels.add(next);
+            if (size == 0)
+                return null;
+        }
+    }
+
+    // sort and write the first count records of buffer to a new run file
+    private void spill(Path workDirectory, long[] buffer, int count)
+    throws IOException
+    {
+        Arrays.sort(buffer, 0, count);
+        Path run = workDirectory.resolve("run-" + runs.size() + ".bin");
+        runs.add(run);
+        try (RecordWriter out = new RecordWriter(run)) {
+            for (int i = 0; i < count; i++)
+                out.write(buffer[i]);
+        }
+    }
+
+    // merge the runs and the sorted first count records of buffer into
+    // level file `next', without duplicates nor nodes of the last two
+    // levels; the number of records written
+    private long merge(long[] buffer, int count, Path next)
+    throws IOException
+    {
+        int level = levels.size() - 1;
+        List<Source> sources = new ArrayList<>();
+        PriorityQueue<Source> heads = new PriorityQueue<>(Comparator.comparingLong((Source s) -> s.head));
+        try (RecordWriter out = new RecordWriter(next);
+             RecordReader current = new RecordReader(levels.get(level));
+             RecordReader previous = level > 0 ? new RecordReader(levels.get(level - 1)) : null) {
+            for (Path run: runs)
+                sources.add(new RecordReader(run));
+            sources.add(new ArraySource(buffer, count));
+            for (Source source: sources)
+                if (source.advance())
+                    heads.add(source);
+
+            boolean hasCurrent = current.advance();
+            boolean hasPrevious = previous != null && previous.advance();
+            long written = 0;
+            // node of the last record taken; none before the first
+            boolean hasLast = false;
+            int last = 0;
+            while (!heads.isEmpty()) {
+                Source source = heads.poll();
+                long record = source.head;
+                if (source.advance())
+                    heads.add(source);
+                int node = node(record);
+                // records are sorted by node, then by predecessor: keep the first one
+                if (hasLast && node == last)
+                    continue;
+                hasLast = true;
+                last = node;
+                while (hasCurrent && node(current.head) < node)
+                    hasCurrent = current.advance();
+                while (hasPrevious && node(previous.head) < node)
+                    hasPrevious = previous.advance();
+                if ((hasCurrent && node(current.head) == node)
+                    || (hasPrevious && node(previous.head) == node))
+                    continue;
+                out.write(record);
+                written += 1;
+            }
+            return written;
+        } finally {
+            for (Source source: sources)
+                source.close();
+        }
+    }
+
+    // path from the start node to the node of `record', in level `level'
+    private List<Integer> path(int level, long record)
+    throws IOException
+    {
+        int[] cells = new int[level + 1];
+        cells[level] = maze.cell(node(record));
+        int predecessor = predecessor(record);
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES);
+        for (int i = level - 1; i >= 0; i--) {
+            cells[i] = maze.cell(predecessor);
+            try (FileChannel channel = FileChannel.open(levels.get(i), StandardOpenOption.READ)) {
+                // binary search of the record of `predecessor'
+                long lo = 0, hi = channel.size()/Long.BYTES;
+                while (true) {
+                    if (lo >= hi)
+                        throw new IOException("no node " + predecessor + " in " + levels.get(i));
+                    long mid = (lo + hi) >>> 1;
+                    bytes.clear();
+                    while (bytes.hasRemaining() && channel.read(bytes, mid*Long.BYTES + bytes.position()) >= 0)
+                        ;
+                    long found = bytes.getLong(0);
+                    if (node(found) == predecessor) {
+                        predecessor = predecessor(found);
+                        break;
+                    }
+                    if (node(found) < predecessor)
+                        lo = mid + 1;
+                    else
+                        hi = mid;
+                }
+            }
+        }
+        return CompactPath.fromCells(maze, cells).asList();
+    }
+
+    // delete the files of the search, and the directory if temporary
+    private void cleanUp(Path workDirectory)
+    {
+        List<Path> files = new ArrayList<>(levels);
+        files.addAll(runs);
+        levels.clear();
+        runs.clear();
+        try {
+            for (Path file: files)
+                Files.deleteIfExists(file);
+            if (directory == null && workDirectory != null)
+                Files.deleteIfExists(workDirectory);
+        } catch (IOException e) {
+            System.err.println("Error: cannot delete the files of the search in " + workDirectory);
+        }
+    }
+
+    // records sort by node, then by predecessor: node identifiers may be
+    // negative, and sort as signed in the high half, while predecessors
+    // sort as unsigned in the low half
+    private static long record(int node, int predecessor)
+    {
+        return ((long) node << 32) | (predecessor & 0xffffffffL);
+    }
+
+    private static int node(long record)
+    {
+        return (int) (record >>> 32);
+    }
+
+    private static int predecessor(long record)
+    {
+        return (int) record;
+    }
+
+    // sorted records, read one at a time into `head'
+    private abstract static class Source
+    {
+        long head;
+
+        // read the next record into head; false if there is none
+        abstract boolean advance() throws IOException;
+
+        void close() throws IOException
+        {
+        }
+    }
+
+    private static class ArraySource extends Source
+    {
+        private final long[] records;
+        private final int count;
+        private int next = 0;
+
+        ArraySource(long[] records, int count)
+        {
+            this.records = records;
+            this.count = count;
+        }
+
+        @Override
+        boolean advance()
+        {
+            if (next == count)
+                return false;
+            head = records[next++];
+            return true;
+        }
+    }
+
+    private static class RecordReader extends Source implements AutoCloseable
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES);
+
+        RecordReader(Path file)
+        throws IOException
+        {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        @Override
+        boolean advance()
+        throws IOException
+        {
+            if (buffer.remaining() < Long.BYTES) {
+                buffer.compact();
+                while (buffer.position() < Long.BYTES && channel.read(buffer) >= 0)
+                    ;
+                buffer.flip();
+                if (buffer.remaining() < Long.BYTES)
+                    return false;
+            }
+            head = buffer.getLong();
+            return true;
+        }
+
+        @Override
+        public void close()
+        throws IOException
+        {
+            channel.close();
+        }
+    }
+
+    private static class RecordWriter implements AutoCloseable
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES);
+
+        RecordWriter(Path file)
+        throws IOException
+        {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(long record)
+        throws IOException
+        {
+            if (buffer.remaining() < Long.BYTES)
+                flush();
+            buffer.putLong(record);
+        }
+
+        private void flush()
+        throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close()
+        throws IOException
+        {
+            flush();
+            channel.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 
 package amazed.solver;
 
+import amazed.maze.CompactPath;
 import amazed.maze.Maze;
 
 import java.util.*;
@@ -19,10 +20,24 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ForkJoinSolver extends SequentialSolver {
 
-    //Synchronized shared(static) variables Set and Boolean for our parallel solution.
-    private static ConcurrentSkipListSet<Integer> visited = new ConcurrentSkipListSet<>();
-    private static AtomicBoolean foundGoal = new AtomicBoolean(false);
+    // longest chain of forked tasks below a root. A task joins its
+    // children at the end of its search, and the join of a child that
+    // no other worker took runs it on the joining worker's stack, so
+    // that a whole chain of tasks may nest on a single stack; tasks at
+    // this depth search on without forking, whatever forkAfter is.
+    private static final int MAX_DEPTH = 64;
+
+    //Synchronized variables Set and Boolean shared by a root solver and all the tasks it forks.
+    private ConcurrentSkipListSet<Integer> visited = new ConcurrentSkipListSet<>();
+    private AtomicBoolean foundGoal = new AtomicBoolean(false);
     private int currentStart;
+    // whether this task is the root, rather than one forked by a solver
+    private boolean root = true;
+    // number of tasks from the root to this task; a task at MAX_DEPTH
+    // forks no further
+    private int depth = 0;
+    // path found by this task, from currentStart to a goal; read by the parent after join
+    private CompactPath result;
 
     /**
      * Creates a solver that searches in <code>maze</code> from the
@@ -57,13 +72,40 @@ public class ForkJoinSolver extends SequentialSolver {
 
 
 
-    // Constructor for the sub-threads of root, forkAfter is not used in this solution.
+    // Constructor for a root searching from node start.
     public ForkJoinSolver(Maze maze, int start, int forkAfter){
-        this(maze);
+        this(maze, forkAfter);
         //set current start to new start node.
         this.currentStart = start;
     }
 
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, forking after a given number of visited
+     * nodes, until the search ends or <code>stop</code> is set. The
+     * solver sets <code>stop</code> itself when it finds a goal.
+     *
+     * @param maze        the maze to be searched
+     * @param forkAfter   the number of steps (visited nodes) after
+     *                    which a parallel task is forked
+     * @param stop        a flag that cancels the search when set
+     */
+    public ForkJoinSolver(Maze maze, int forkAfter, AtomicBoolean stop)
+    {
+        this(maze, forkAfter);
+        //all the tasks of this root stop when either they or someone else set the flag.
+        this.foundGoal = stop;
+    }
+
+    // Constructor for the sub-threads of root, sharing the root's visited set and goal flag.
+    private ForkJoinSolver(ForkJoinSolver parent, int start){
+        this(parent.maze, start, parent.forkAfter);
+        this.visited = parent.visited;
+        this.foundGoal = parent.foundGoal;
+        this.root = false;
+        this.depth = parent.depth + 1;
+    }
+
     /**
      * Searches for and returns the path, as a list of node
      * identifiers, that goes from the start node to a goal node in
@@ -78,13 +120,19 @@ public class ForkJoinSolver extends SequentialSolver {
     @Override
     public List<Integer> compute()
     {
+        // a root in a component without goals has nothing to find; tasks
+        // it forks start in its component, so they need not check again
+        if (root && !maze.canReachGoal(currentStart))
+            return null;
         return parallelSearch();
     }
 
 
     private List<Integer> parallelSearch() {
-        // the path to be returned.
-        List<Integer> path = null;
+        //create list to keep track of newly created threads
+        List<ForkJoinSolver> solvers = new ArrayList<>();
+        //number of nodes visited since this task started or last forked
+        int steps = 0;
         int player = maze.newPlayer(currentStart);
         frontier.push(currentStart);
 
@@ -93,64 +141,60 @@ public class ForkJoinSolver extends SequentialSolver {
             //pop the first node in frontier and call it current
             int current = frontier.pop();
 
+            //if another thread already visited current, skip it
+            if (!visited.add(current))
+                continue;
+            maze.move(player, current);
+            steps += 1;
+
             //if current node is the goal
             if (maze.hasGoal(current)) {
                 //set boolean to true, indicating all other threads to stop searching.
                 foundGoal.set(true);
-                //move player to that node
-                maze.move(player, current);
                 //the thread that finds the goal return the path from where it started to the goal node.
-                return pathFromTo(this.currentStart, current);
+                result = compactPathFromTo(this.currentStart, current);
+                return result.asList();
             }
 
-            //if not visited => add to visited and move player
-            if(visited.add(current)){
-                maze.move(player, current);
+            //collect the neighbors that nobody visited yet, with current as their predecessor
+            List<Integer> unvisited = new ArrayList<>(4);
+            for (int nb: maze.neighbors(current)) {
+                if (!visited.contains(nb)) {
+                    predecessor.put(nb, current);
+                    unvisited.add(nb);
+                }
             }
 
-            //if more than 2 neighbors
-            if(maze.neighbors(current).size() > 2){
-                //create list to keep track of newly created threads
-                List<ForkJoinSolver> solvers = new ArrayList<>();
-                //for each neighbor
-                for (Integer nb : maze.neighbors(current)) {
-                    //if not visited => add to visited
-                    if (visited.add(nb)) {
-                        //put current as predecessor to neighbor
-                        predecessor.put(nb, current);
-                        //create new thread, fork it and add to list of solvers
-                        ForkJoinSolver solver = new ForkJoinSolver(maze, nb, 1);
-                        solvers.add(solver);
-                        solver.fork();
-                    }
-                }
-                //for each solver
-                for (ForkJoinSolver solver : solvers) {
-                    //wait for each solver to return their search result and store it into a list(if any).
-                    List<Integer> solverPath = solver.join();
-                    //check if the solver found a path to the goal(null mean no path found).
-                    if (solverPath != null) {
-                        //create the path from the current start node to the solvers start node.
-                        path = pathFromTo(currentStart, predecessor.get(solver.currentStart));
-                        //append the path found by the solver to the newly created path.
-                        path.addAll(solverPath);
-                    }
-                }
-                //else if there only was one way to go
-            }else{
-                //for each neighbor
-                for(int nb: maze.neighbors(current)){
-                    //if not visited
-                    if(!visited.contains(nb)){
-                        //put current as predecessor
-                        predecessor.put(nb, current);
-                        //push to frontier
-                        frontier.push(nb);
-                    }
+            //if forkAfter steps have passed, there is more than one way to go and the chain of tasks may grow
+            if (forkAfter > 0 && steps >= forkAfter && unvisited.size() > 1 && depth < MAX_DEPTH) {
+                steps = 0;
+                //keep the first neighbor for this thread, fork a new thread for each of the others
+                for (int i = 1; i < unvisited.size(); i++) {
+                    ForkJoinSolver solver = new ForkJoinSolver(this, unvisited.get(i));
+                    solvers.add(solver);
+                    solver.fork();
                 }
+                frontier.push(unvisited.get(0));
+            } else {
+                //push all to frontier
+                for (int nb: unvisited)
+                    frontier.push(nb);
+            }
+        }
+
+        //for each solver
+        for (ForkJoinSolver solver : solvers) {
+            //wait for each solver to return their search result(if any).
+            solver.join();
+            //check if the solver found a path to the goal(null mean no path found).
+            if (result == null && solver.result != null) {
+                //create the path from the current start node to the solvers start node,
+                //and append the path found by the solver to it.
+                result = compactPathFromTo(currentStart, predecessor.get(solver.currentStart))
+                    .append(solver.result);
             }
         }
         //return path, its either null or contains the path.
-        return path;
+        return result == null ? null : result.asList();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,516 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <code>GoalDistanceField</code> holds, for every cell of a
+ * <code>Maze</code>, the length of the shortest path from the cell to
+ * the nearest goal, so that the path to the nearest goal from any
+ * node is found in time proportional to its length, without a search.
+ * <p>
+ * The field is computed by a breadth-first search backwards from all
+ * goals at once, whose layers are expanded in parallel by fork/join
+ * tasks over chunks of the frontier. A path is then found by gradient
+ * descent: from a cell at distance <i>d</i> from a goal, any neighbor
+ * at distance <i>d</i>-1 is on a shortest path.
+ * <p>
+ * The field can be saved to a file next to the map, which stores the
+ * distances modulo 3 in two bits per cell: since the distances of
+ * neighbors differ by at most one, that is enough to tell, from a
+ * cell, which neighbors are closer to a goal, and to restore the
+ * exact distances, upwards from the goals, when the file is read.
+ * <p>
+ * Goals added or removed with <code>addGoal</code> and
+ * <code>removeGoal</code> are applied to the maze and to the field,
+ * repairing only the distances that change. Walls toggled in the maze
+ * are not tracked: the field has to be computed again. All public
+ * methods are synchronized.
+ */
+
+public class GoalDistanceField
+{
+    /**
+     * Distance of cells from which no goal can be reached.
+     */
+    public static final int UNREACHABLE = -1;
+
+    /**
+     * Extension added to the name of a map file to name the file of
+     * its field.
+     */
+    public static final String EXTENSION = ".dist";
+
+    private static final int MAGIC = 0x414d5a44;    // "AMZD"
+    private static final int VERSION = 1;
+    // magic, version, checksum, cells
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    // two-bit code of unreachable cells; the others are distance % 3
+    private static final int NO_CODE = 3;
+
+    // cells of a layer below which an expansion task does not split further
+    private static final int CHUNK = 4096;
+
+    private final Maze maze;
+    // distance of every cell to the nearest goal, plus one; 0 if unreachable
+    private final AtomicIntegerArray distance;
+
+    private GoalDistanceField(Maze maze, AtomicIntegerArray distance)
+    {
+        this.maze = maze;
+        this.distance = distance;
+    }
+
+    /**
+     * Computes the field of <code>maze</code> with a parallel
+     * breadth-first search from all its goals, in the fork/join pool
+     * of the calling thread if it has one, and in the common pool
+     * otherwise.
+     *
+     * @param maze   the maze whose distances are computed
+     * @return       the field of <code>maze</code>
+     */
+    public static GoalDistanceField build(Maze maze)
+    {
+        int nCells = maze.cells();
+        AtomicIntegerArray distance = new AtomicIntegerArray(nCells);
+        IntList[] goals = new IntList[(nCells + CHUNK - 1)/CHUNK];
+        new Scan(maze, distance, goals, 0, goals.length).invoke();
+        IntList frontier = new IntList();
+        for (IntList chunk: goals)
+            frontier.addAll(chunk);
+        for (int level = 1; frontier.size > 0; level++) {
+            IntList[] next = new IntList[(frontier.size + CHUNK - 1)/CHUNK];
+            Expand all = new Expand(maze, distance, frontier.values, 0, frontier.size, level, next);
+            if (next.length <= 1)
+                all.compute();
+            else
+                all.invoke();
+            frontier = new IntList();
+            for (IntList chunk: next)
+                frontier.addAll(chunk);
+        }
+        return new GoalDistanceField(maze, distance);
+    }
+
+    /**
+     * Returns the file where the field of <code>maze</code> is saved:
+     * the map file of the maze, with <code>EXTENSION</code> appended.
+     *
+     * @param maze   a maze read from a map file
+     * @return       the file of the field of <code>maze</code>;
+     *               <code>null</code> if the maze was not read from a file
+     */
+    public static Path file(Maze maze)
+    {
+        return maze.filename() == null ? null : Paths.get(maze.filename() + EXTENSION);
+    }
+
+    /**
+     * Returns the field of <code>maze</code> read from its file, if the
+     * file is there and was saved for the same map and goals;
+     * otherwise computes it, and saves it for the next time.
+     * Failures to save are reported, but do not prevent the field from
+     * being used.
+     *
+     * @param maze   the maze whose distances are needed
+     * @return       the field of <code>maze</code>
+     */
+    public static GoalDistanceField open(Maze maze)
+    {
+        Path file = file(maze);
+        if (file != null) {
+            try {
+                GoalDistanceField field = load(maze, file);
+                if (field != null)
+                    return field;
+            } catch (IOException e) {
+                System.err.println("Error: cannot read distance field " + file + ": " + e.getMessage());
+            }
+        }
+        GoalDistanceField field = build(maze);
+        if (file != null) {
+            try {
+                field.save(file);
+            } catch (IOException e) {
+                System.err.println("Error: cannot write distance field " + file + ": " + e.getMessage());
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Reads the field of <code>maze</code> from a file written by
+     * <code>save</code>.
+     *
+     * @param maze   the maze whose distances are read
+     * @param file   the file to be read
+     * @return       the field read; <code>null</code> if there is no
+     *               such file, or it is not the field of the current
+     *               map and goals of <code>maze</code>
+     * @throws IOException   if the file cannot be read
+     */
+    public static GoalDistanceField load(Maze maze, Path file)
+    throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE)
+                return null;
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                ;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        buffer.flip();
+        int nCells = maze.cells();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+            || buffer.getLong() != maze.checksum() || buffer.getInt() != nCells
+            || buffer.remaining() != (nCells + 3)/4)
+            return null;
+        byte[] codes = new byte[buffer.remaining()];
+        buffer.get(codes);
+
+        // distances upwards from the goals: a neighbor of a cell at
+        // distance d whose code is (d + 1) % 3 is at distance d + 1
+        AtomicIntegerArray distance = new AtomicIntegerArray(nCells);
+        IntList stack = new IntList();
+        for (int cell = 0; cell < nCells; cell++) {
+            if (maze.isGoalCell(cell)) {
+                distance.set(cell, 1);
+                stack.add(cell);
+            }
+        }
+        int[] neighbors = new int[4];
+        while (stack.size > 0) {
+            int cell = stack.values[--stack.size];
+            int up = distance.get(cell);
+            int count = maze.neighborCells(cell, neighbors);
+            for (int i = 0; i < count; i++) {
+                int nb = neighbors[i];
+                if (distance.get(nb) == 0 && code(codes, nb) == up % 3) {
+                    distance.set(nb, up + 1);
+                    stack.add(nb);
+                }
+            }
+        }
+        for (int cell = 0; cell < nCells; cell++) {
+            int stored = distance.get(cell);
+            if (code(codes, cell) != (stored == 0 ? NO_CODE : (stored - 1) % 3))
+                return null;
+        }
+        return new GoalDistanceField(maze, distance);
+    }
+
+    private static int code(byte[] codes, int cell)
+    {
+        return (codes[cell >>> 2] >>> (2*(cell & 3))) & 3;
+    }
+
+    /**
+     * Writes the field to a file, to be read back with
+     * <code>load</code>. The file is written under a temporary name
+     * and then renamed, so that readers never see it half written.
+     *
+     * @param file   the file to be written
+     * @throws IOException   if the file cannot be written
+     */
+    public synchronized void save(Path file)
+    throws IOException
+    {
+        int nCells = maze.cells();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (nCells + 3)/4);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(maze.checksum()).putInt(nCells);
+        for (int base = 0; base < nCells; base += 4) {
+            int packed = 0;
+            for (int cell = base; cell < Math.min(base + 4, nCells); cell++) {
+                int stored = distance.get(cell);
+                packed |= (stored == 0 ? NO_CODE : (stored - 1) % 3) << (2*(cell - base));
+            }
+            buffer.put((byte) packed);
+        }
+        buffer.flip();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the length of a shortest path from a given cell to a
+     * goal.
+     *
+     * @param cell   the index of a cell in the maze
+     * @return       the number of moves from cell <code>cell</code> to
+     *               the nearest goal; <code>UNREACHABLE</code> if no
+     *               goal can be reached from it
+     */
+    public synchronized int distance(int cell)
+    {
+        return distance.get(cell) - 1;
+    }
+
+    /**
+     * Returns a shortest path, as a list of node identifiers, that
+     * goes from node <code>from</code> to the goal node closest to it,
+     * in time proportional to the length of the path.
+     *
+     * @param from   the identifier of the initial node on the path
+     * @return       the list of node identifiers from <code>from</code>
+     *               to a goal; <code>null</code> if no goal can be
+     *               reached from <code>from</code>
+     * @throws IllegalArgumentException if there is no node <code>from</code>
+     */
+    public synchronized List<Integer> pathToNearestGoal(int from)
+    {
+        int cell = maze.cell(from);
+        int stored = distance.get(cell);
+        if (stored == 0)
+            return null;
+        int[] cells = new int[stored];
+        int[] neighbors = new int[4];
+        cells[0] = cell;
+        for (int i = 1; i < cells.length; i++) {
+            int count = maze.neighborCells(cell, neighbors);
+            for (int j = 0; j < count; j++) {
+                if (distance.get(neighbors[j]) == stored - 1) {
+                    cell = neighbors[j];
+                    break;
+                }
+            }
+            stored -= 1;
+            cells[i] = cell;
+        }
+        return CompactPath.fromCells(maze, cells).asList();
+    }
+
+    /**
+     * Makes an empty node a goal, in the maze and in the field; only
+     * the distances that become shorter are computed again.
+     *
+     * @param id   the identifier of an empty node in the maze
+     * @return     <code>true</code> if the node has become a goal;
+     *             <code>false</code> if it is not an empty node
+     * @throws IllegalArgumentException if there is no node <code>id</code>
+     */
+    public synchronized boolean addGoal(int id)
+    {
+        int cell = maze.cell(id);
+        if (!maze.setGoal(id, true))
+            return false;
+        distance.set(cell, 1);
+        IntList queue = new IntList();
+        queue.add(cell);
+        spread(queue, 0, new long[0]);
+        return true;
+    }
+
+    /**
+     * Makes a goal an empty node, in the maze and in the field; only
+     * the distances of the cells whose nearest goals were all
+     * <code>id</code> are computed again.
+     *
+     * @param id   the identifier of a goal node in the maze
+     * @return     <code>true</code> if the node is no longer a goal;
+     *             <code>false</code> if it was not a goal
+     * @throws IllegalArgumentException if there is no node <code>id</code>
+     */
+    public synchronized boolean removeGoal(int id)
+    {
+        int cell = maze.cell(id);
+        if (!maze.setGoal(id, false))
+            return false;
+        int[] neighbors = new int[4];
+
+        // cells that lost all their shortest paths, by layers of
+        // distance from the goal; they are marked by a negative distance
+        IntList affected = new IntList();
+        distance.set(cell, -1);
+        affected.add(cell);
+        for (int from = 0, to = 1; from < to; from = to, to = affected.size) {
+            for (int i = from; i < to; i++) {
+                int up = -distance.get(affected.values[i]) + 1;
+                int count = maze.neighborCells(affected.values[i], neighbors);
+                for (int j = 0; j < count; j++) {
+                    int nb = neighbors[j];
+                    if (distance.get(nb) == up && !supported(nb, up)) {
+                        distance.set(nb, -up);
+                        affected.add(nb);
+                    }
+                }
+            }
+        }
+
+        // the affected cells next to unaffected ones, with the distance
+        // through them, sorted by distance
+        long[] seeds = new long[affected.size];
+        int nSeeds = 0;
+        for (int i = 0; i < affected.size; i++) {
+            int a = affected.values[i];
+            distance.set(a, 0);
+            int best = 0;
+            int count = maze.neighborCells(a, neighbors);
+            for (int j = 0; j < count; j++) {
+                int stored = distance.get(neighbors[j]);
+                if (stored > 0 && (best == 0 || stored + 1 < best))
+                    best = stored + 1;
+            }
+            if (best > 0)
+                seeds[nSeeds++] = ((long) best << 32) | a;
+        }
+        Arrays.sort(seeds, 0, nSeeds);
+        spread(new IntList(), nSeeds, seeds);
+        return true;
+    }
+
+    // has `cell', at distance `stored' - 1, a neighbor closer to a goal
+    // that is not affected?
+    private boolean supported(int cell, int stored)
+    {
+        int[] neighbors = new int[4];
+        int count = maze.neighborCells(cell, neighbors);
+        for (int i = 0; i < count; i++)
+            if (distance.get(neighbors[i]) == stored - 1)
+                return true;
+        return false;
+    }
+
+    // breadth-first search lowering distances, from the cells in `queue'
+    // (whose distances are set and nondecreasing) and from the first
+    // nSeeds (distance, cell) pairs in `seeds', sorted
+    private void spread(IntList queue, int nSeeds, long[] seeds)
+    {
+        int[] neighbors = new int[4];
+        int head = 0, seed = 0;
+        while (head < queue.size || seed < nSeeds) {
+            int cell;
+            if (seed < nSeeds
+                && (head == queue.size || (int) (seeds[seed] >>> 32) <= distance.get(queue.values[head]))) {
+                cell = (int) seeds[seed];
+                int stored = (int) (seeds[seed++] >>> 32);
+                int current = distance.get(cell);
+                if (current != 0 && current <= stored)
+                    continue;
+                distance.set(cell, stored);
+            } else
+                cell = queue.values[head++];
+            int next = distance.get(cell) + 1;
+            int count = maze.neighborCells(cell, neighbors);
+            for (int i = 0; i < count; i++) {
+                int nb = neighbors[i];
+                int current = distance.get(nb);
+                if (current == 0 || next < current) {
+                    distance.set(nb, next);
+                    queue.add(nb);
+                }
+            }
+        }
+    }
+
+    // goals among the cells of chunks [from, to) of CHUNK cells, at distance 0
+    private static class Scan extends RecursiveAction
+    {
+        private final Maze maze;
+        private final AtomicIntegerArray distance;
+        private final IntList[] goals;
+        private final int from;
+        private final int to;
+
+        Scan(Maze maze, AtomicIntegerArray distance, IntList[] goals, int from, int to)
+        {
+            this.maze = maze;
+            this.distance = distance;
+            this.goals = goals;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from != 1) {
+                int mid = (from + to) >>> 1;
+                if (to - from > 1)
+                    invokeAll(new Scan(maze, distance, goals, from, mid),
+                              new Scan(maze, distance, goals, mid, to));
+                return;
+            }
+            IntList found = new IntList();
+            int end = Math.min((from + 1)*CHUNK, maze.cells());
+            for (int cell = from*CHUNK; cell < end; cell++) {
+                if (maze.isGoalCell(cell)) {
+                    distance.set(cell, 1);
+                    found.add(cell);
+                }
+            }
+            goals[from] = found;
+        }
+    }
+
+    // expansion of frontier[from, to), at distance level - 1, into the
+    // cells at distance `level', stored in next[from/CHUNK] once split
+    private static class Expand extends RecursiveAction
+    {
+        private final Maze maze;
+        private final AtomicIntegerArray distance;
+        private final int[] frontier;
+        private final int from;
+        private final int to;
+        private final int level;
+        private final IntList[] next;
+
+        Expand(Maze maze, AtomicIntegerArray distance, int[] frontier, int from, int to,
+               int level, IntList[] next)
+        {
+            this.maze = maze;
+            this.distance = distance;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.level = level;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > CHUNK) {
+                int mid = from + Math.max(1, (to - from)/CHUNK/2)*CHUNK;
+                invokeAll(new Expand(maze, distance, frontier, from, mid, level, next),
+                          new Expand(maze, distance, frontier, mid, to, level, next));
+                return;
+            }
+            IntList reached = new IntList();
+            int[] neighbors = new int[4];
+            for (int i = from; i < to; i++) {
+                int count = maze.neighborCells(frontier[i], neighbors);
+                for (int j = 0; j < count; j++) {
+                    int nb = neighbors[j];
+                    // claim cells not reached yet
+                    if (distance.get(nb) == 0 && distance.compareAndSet(nb, 0, level + 1))
+                        reached.add(nb);
+                }
+            }
+            next[from/CHUNK] = reached;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>HierarchicalSolver</code> implements hierarchical path-finding
+ * (HPA*): it searches a small abstract graph of the maze instead of
+ * its cells, and then refines the abstract path into a path through
+ * adjacent nodes.
+ * <p>
+ * The board is split into square clusters of <code>clusterSize</code>
+ * cells per side. The nodes of the abstract graph are the cells where
+ * paths cross the borders between clusters, one or two per opening in
+ * a border; the edges join the two cells of a crossing, and the nodes
+ * of a cluster with the lengths of the shortest paths between them
+ * inside the cluster, which are computed in parallel over the
+ * clusters. A search runs A* on this graph, from the start node to
+ * the nodes of its cluster and then to the nearest goal inside the
+ * cluster of some node, with the same heuristic as
+ * <code>JumpPointSolver</code>; each abstract edge is then refined by
+ * a breadth-first search confined to one cluster. Only the clusters
+ * along the abstract path are searched cell by cell.
+ * <p>
+ * The abstract graph of a maze is built on the first search and kept
+ * for the next searches of the same maze with the same cluster size,
+ * until the map is changed by <code>Maze.toggle</code> or
+ * <code>Maze.setGoal</code>. The graph is built by the first search
+ * that needs it, without blocking the searches of other mazes; the
+ * searches that need it meanwhile wait for that build, and build it
+ * themselves if the search building it is stopped. Paths go through
+ * the crossings of the graph, and thus may be a little longer than
+ * shortest paths; every move costs the same, whatever the terrain.
+ */
+
+public class HierarchicalSolver
+    extends RecursiveTask<List<Integer>>
+{
+    /**
+     * Number of cells per side of a cluster, by default.
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    /**
+     * Largest number of cells per side of a cluster, so that lengths
+     * inside a cluster fit in a <code>short</code>.
+     */
+    public static final int MAX_CLUSTER_SIZE = 128;
+
+    // milliseconds between the checks of the stop flag and deadline of
+    // a search waiting for the graph that another search builds
+    private static final long WAIT_MILLIS = 10;
+
+    // last graph built, or being built, for every maze
+    private static final Map<Maze, Build> GRAPHS = new WeakHashMap<>();
+
+    private final Maze maze;
+    private final int clusterSize;
+    private final AtomicBoolean stop;
+
+    // open list: (length, node) entries
+    private final LongHeap open = new LongHeap();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, with clusters of the default size.
+     *
+     * @param maze   the maze to be searched
+     */
+    public HierarchicalSolver(Maze maze)
+    {
+        this(maze, DEFAULT_CLUSTER_SIZE, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, with clusters of <code>clusterSize</code>
+     * cells per side, until the search ends or <code>stop</code> is set.
+     *
+     * @param maze          the maze to be searched
+     * @param clusterSize   the number of cells per side of a cluster,
+     *                      from 2 to <code>MAX_CLUSTER_SIZE</code>
+     * @param stop          a flag that cancels the search when set
+     * @throws IllegalArgumentException if <code>clusterSize</code> is
+     *                      out of range
+     */
+    public HierarchicalSolver(Maze maze, int clusterSize, AtomicBoolean stop)
+    {
+        if (clusterSize < 2 || clusterSize > MAX_CLUSTER_SIZE)
+            throw new IllegalArgumentException("cluster size out of range: " + clusterSize);
+        this.maze = maze;
+        this.clusterSize = clusterSize;
+        this.stop = stop;
+    }
+
+    // abstract graph of the maze, built again if the map or the size
+    // changed; throws CancellationException if the search is stopped,
+    // or its deadline passes, first
+    private ClusterGraph graph()
+    {
+        while (true) {
+            long modifications = maze.modifications();
+            Build build;
+            boolean builder = false;
+            synchronized (GRAPHS) {
+                build = GRAPHS.get(maze);
+                if (build == null || build.size != clusterSize
+                    || build.modifications != modifications
+                    || build.graph.isCompletedExceptionally()) {
+                    build = new Build(clusterSize, modifications);
+                    GRAPHS.put(maze, build);
+                    builder = true;
+                }
+            }
+            if (builder) {
+                try {
+                    ClusterGraph graph = new ClusterGraph(maze, clusterSize, stop);
+                    build.graph.complete(graph);
+                    return graph;
+                } catch (RuntimeException | Error e) {
+                    build.graph.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            try {
+                return build.graph.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (stop.get())
+                    throw new CancellationException("search stopped");
+                maze.checkDeadline();
+            } catch (CancellationException e) {
+                // the search building the graph was stopped: build it again
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("search interrupted");
+            }
+        }
+    }
+
+    /**
+     * Searches for and returns a path, as a list of node identifiers,
+     * that goes from the start node to a goal node in the maze. If
+     * such a path cannot be found, or the search is stopped, the
+     * method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        // the player only moves to the nodes of the graph, not to the cells of the clusters
+        maze.reportExplored(Maze.UNCOUNTED);
+        ClusterGraph graph;
+        try {
+            graph = graph();
+        } catch (CancellationException e) {
+            if (stop.get())
+                return null;
+            throw e;
+        }
+        int start = maze.cell(startId);
+        int startCluster = graph.cluster(start);
+        int nNodes = graph.nodes();
+        // the goal is an extra node, reached from the nodes with a goal in their cluster
+        int target = nNodes;
+        int[] length = new int[nNodes + 1];
+        Arrays.fill(length, Integer.MAX_VALUE);
+        // node before on the shortest path found so far; -1 for the start node
+        int[] parent = new int[nNodes + 1];
+        Arrays.fill(parent, -1);
+        boolean[] closed = new boolean[nNodes + 1];
+
+        ClusterGraph.Search search = graph.new Search();
+        search.load(startCluster);
+        int direct = search.run(start);
+        if (direct >= 0) {
+            length[target] = direct;
+            open.push(direct, target);
+        }
+        // estimated length to the nearest goal, computed on first use
+        int[] estimate = new int[nNodes + 1];
+        Arrays.fill(estimate, 0, nNodes, -1);
+        for (int n = graph.first[startCluster]; n < graph.first[startCluster + 1]; n++) {
+            int reached = search.length(graph.nodeCell[n]);
+            if (reached >= 0) {
+                length[n] = reached;
+                open.push(reached + heuristic(graph, n, estimate), n);
+            }
+        }
+
+        int player = maze.newPlayer(startId);
+        while (!open.isEmpty()) {
+            if (stop.get())
+                return null;
+            int current = open.pop();
+            if (closed[current])
+                continue;
+            if (current == target)
+                return refine(graph, search, start, parent);
+            closed[current] = true;
+            maze.move(player, maze.cellId(graph.nodeCell[current]));
+
+            for (int i = graph.acrossFirst[current]; i < graph.acrossFirst[current + 1]; i++)
+                relax(graph, current, graph.across[i], 1, length, parent, closed, estimate);
+            int k = graph.cluster(graph.nodeCell[current]);
+            int m = graph.first[k + 1] - graph.first[k];
+            short[] inside = graph.inside[k];
+            int i = current - graph.first[k];
+            for (int j = 0; j < m; j++)
+                if (inside[i*m + j] > 0)
+                    relax(graph, current, graph.first[k] + j, inside[i*m + j], length, parent, closed, estimate);
+            if (graph.toGoal[current] >= 0)
+                relax(graph, current, target, graph.toGoal[current], length, parent, closed, estimate);
+        }
+        return null;
+    }
+
+    // update the path to node `next', reached from `current' by an edge of `distance'
+    private void relax(ClusterGraph graph, int current, int next, int distance,
+                       int[] length, int[] parent, boolean[] closed, int[] estimate)
+    {
+        if (closed[next])
+            return;
+        int newLength = length[current] + distance;
+        if (newLength < length[next]) {
+            length[next] = newLength;
+            parent[next] = current;
+            open.push(newLength + heuristic(graph, next, estimate), next);
+        }
+    }
+
+    // Manhattan distance from node `n' to the nearest goal, computed
+    // once per node; 0 for the goal itself
+    private static int heuristic(ClusterGraph graph, int n, int[] estimate)
+    {
+        if (estimate[n] < 0)
+            estimate[n] = graph.heuristic(graph.nodeCell[n]);
+        return estimate[n];
+    }
+
+    // path through adjacent cells from start to a goal, along the nodes
+    // before the goal in `parent'
+    private List<Integer> refine(ClusterGraph graph, ClusterGraph.Search search, int start, int[] parent)
+    {
+        IntList nodes = new IntList();
+        for (int node = parent[graph.nodes()]; node >= 0; node = parent[node])
+            nodes.add(node);
+        IntList cells = new IntList();
+        cells.add(start);
+        int current = start;
+        for (int i = nodes.size - 1; i >= 0; i--) {
+            int next = graph.nodeCell[nodes.values[i]];
+            if (graph.cluster(next) == graph.cluster(current)) {
+                search.load(graph.cluster(current));
+                search.run(current);
+                search.appendPath(next, cells);
+            } else {
+                // the two cells of a crossing
+                cells.add(next);
+            }
+            current = next;
+        }
+        search.load(graph.cluster(current));
+        search.run(current);
+        search.appendPathToGoal(cells);
+        return CompactPath.fromCells(maze, Arrays.copyOf(cells.values, cells.size)).asList();
+    }
+
+    // graph of a maze with clusters of `size' cells per side, for the
+    // map after `modifications' changes, once built
+    private static class Build
+    {
+        final int size;
+        final long modifications;
+        final CompletableFuture<ClusterGraph> graph = new CompletableFuture<>();
+
+        Build(int size, long modifications)
+        {
+            this.size = size;
+            this.modifications = modifications;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * <code>IncrementalSolver</code> keeps a shortest path from the start
+ * node to the nearest goal of a <code>Maze</code> whose walls change
+ * while it is being solved.
+ * <p>
+ * The solver implements Lifelong Planning A* (LPA*) searching
+ * backwards, from all goals towards the start node, as D* Lite does:
+ * <code>distance</code> holds for every node the length of its
+ * shortest path to a goal as of the last search, and
+ * <code>lookahead</code> the one-step lookahead of the same value
+ * computed from the neighbors' <code>distance</code>. Nodes where the
+ * two differ are <em>inconsistent</em> and are kept in a priority
+ * queue ordered by their distance plus the Manhattan distance to the
+ * start node. After a cell is toggled with method
+ * <code>toggle</code>, only the nodes around it become inconsistent,
+ * and method <code>solve</code> repairs the distances of just the
+ * nodes whose change can affect the path, rather than searching the
+ * maze again.
+ * <p>
+ * All public methods are synchronized, so that walls can be toggled
+ * by some threads while others ask for the current path.
+ */
+
+public class IncrementalSolver
+{
+    // distance of nodes from which no goal can be reached
+    private static final int INFINITY = Integer.MAX_VALUE/2;
+
+    private final Maze maze;
+    private final int start;
+    private final int startRow;
+    private final int startCol;
+
+    // node --> length of shortest path to a goal, as of last expansion
+    private final Map<Integer, Integer> distance = new HashMap<>();
+    // node --> one-step lookahead of distance
+    private final Map<Integer, Integer> lookahead = new HashMap<>();
+    // inconsistent nodes; may include outdated entries, skipped on removal
+    private final PriorityQueue<Entry> open = new PriorityQueue<>();
+
+    // number of nodes expanded by all searches so far
+    private long expansions = 0;
+
+    /**
+     * Creates a solver that keeps a path in <code>maze</code> from
+     * the start node to a goal. No search happens until the first
+     * call to <code>solve</code>.
+     *
+     * @param maze   the maze to be searched
+     */
+    public IncrementalSolver(Maze maze)
+    {
+        this.maze = maze;
+        this.start = maze.start();
+        this.startRow = maze.row(start);
+        this.startCol = maze.col(start);
+        for (int row = 0; row < maze.rows(); row++) {
+            for (int col = 0; col < maze.cols(); col++) {
+                int id = maze.id(row, col);
+                if (maze.hasGoal(id)) {
+                    lookahead.put(id, 0);
+                    open.add(new Entry(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Toggles a node of the maze between empty and wall, as described
+     * in {@link amazed.maze.Maze#toggle(int)}, and marks the
+     * distances around it for repair by the next call to
+     * <code>solve</code>.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     <code>true</code> if the node has been toggled;
+     *             <code>false</code> if it cannot be toggled
+     */
+    public synchronized boolean toggle(int id)
+    {
+        if (!maze.toggle(id))
+            return false;
+        update(id);
+        for (int nb: maze.neighbors(id))
+            update(nb);
+        return true;
+    }
+
+    /**
+     * Repairs the distances affected by the changes since the last
+     * call, and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to the nearest goal.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if no goal can
+     *           currently be reached
+     */
+    public synchronized List<Integer> solve()
+    {
+        computeShortestPath();
+        int remaining = distance(start);
+        if (remaining >= INFINITY)
+            return null;
+        List<Integer> path = new ArrayList<>(remaining + 1);
+        int current = start;
+        path.add(current);
+        while (remaining > 0) {
+            // descend to the neighbor closest to a goal
+            int next = current;
+            for (int nb: maze.neighbors(current)) {
+                if (distance(nb) < remaining) {
+                    next = nb;
+                    remaining = distance(nb);
+                }
+            }
+            if (next == current)
+                return null;
+            current = next;
+            path.add(current);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of nodes expanded by all calls to
+     * <code>solve</code> so far.
+     *
+     * @return   the number of expanded nodes
+     */
+    public synchronized long expansions()
+    {
+        return expansions;
+    }
+
+    private void computeShortestPath()
+    {
+        while (true) {
+            Entry top = peekValid();
+            boolean startConsistent = distance(start) == lookahead(start);
+            if (startConsistent && (top == null || top.compareTo(new Entry(start)) >= 0))
+                return;
+            if (top == null)
+                return;
+            open.remove();
+            int u = top.id;
+            expansions += 1;
+            if (distance(u) > lookahead(u)) {
+                // distance decreased: settle it
+                distance.put(u, lookahead(u));
+                for (int nb: maze.neighbors(u))
+                    update(nb);
+            } else {
+                // distance increased: invalidate it and reconsider
+                distance.put(u, INFINITY);
+                update(u);
+                for (int nb: maze.neighbors(u))
+                    update(nb);
+            }
+        }
+    }
+
+    // recompute lookahead of node u, and queue u if inconsistent
+    private void update(int u)
+    {
+        if (!maze.hasGoal(u)) {
+            int best = INFINITY;
+            if (maze.isAccessible(u)) {
+                for (int nb: maze.neighbors(u))
+                    best = Math.min(best, distance(nb) + 1);
+            }
+            lookahead.put(u, Math.min(best, INFINITY));
+        }
+        if (distance(u) != lookahead(u))
+            open.add(new Entry(u));
+    }
+
+    // top of the queue, after dropping entries of consistent nodes and outdated entries
+    private Entry peekValid()
+    {
+        Entry top;
+        while ((top = open.peek()) != null) {
+            if (distance(top.id) != lookahead(top.id) && top.compareTo(new Entry(top.id)) == 0)
+                return top;
+            open.remove();
+        }
+        return null;
+    }
+
+    private int distance(int id)
+    {
+        Integer d = distance.get(id);
+        return d == null ? INFINITY : d;
+    }
+
+    private int lookahead(int id)
+    {
+        Integer d = lookahead.get(id);
+        return d == null ? INFINITY : d;
+    }
+
+    // queue entry of a node, with its priority at creation
+    private class Entry implements Comparable<Entry>
+    {
+        final int id;
+        final int k1;
+        final int k2;
+
+        Entry(int id)
+        {
+            this.id = id;
+            this.k2 = Math.min(distance(id), lookahead(id));
+            int h = Math.abs(maze.row(id) - startRow) + Math.abs(maze.col(id) - startCol);
+            this.k1 = k2 >= INFINITY ? INFINITY : k2 + h;
+        }
+
+        @Override
+        public int compareTo(Entry other)
+        {
+            if (k1 != other.k1)
+                return Integer.compare(k1, other.k1);
+            return Integer.compare(k2, other.k2);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package amazed.solver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+// Chase-Lev work-stealing deque of non-negative ints, for WorkStealingSolver
+//
+// The owner pushes and pops at the bottom, without atomic updates
+// unless a single item is left; thieves take items from the top with
+// a compare-and-set of the top index, so that two thieves, or a thief
+// and the owner, never take the same item. The items live in a
+// circular array, which the owner replaces with one twice as large
+// when it is full; thieves reading the old array meanwhile still find
+// the items they may take there, since an array is never written
+// after it is replaced.
+class IntDeque
+{
+    // returned by pop and steal when there is no item to take
+    static final int EMPTY = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private volatile int[] items = new int[INITIAL_CAPACITY];
+    private final AtomicLong top = new AtomicLong();
+    private volatile long bottom = 0;
+
+    // add `item' at the bottom; owner only
+    void push(int item)
+    {
+        long b = bottom;
+        int[] array = items;
+        if (b - top.get() >= array.length)
+            array = grow(array, b);
+        array[(int) b & (array.length - 1)] = item;
+        // publishes the item to thieves
+        bottom = b + 1;
+    }
+
+    private int[] grow(int[] array, long b)
+    {
+        int[] larger = new int[2*array.length];
+        for (long i = top.get(); i < b; i++)
+            larger[(int) i & (larger.length - 1)] = array[(int) i & (array.length - 1)];
+        items = larger;
+        return larger;
+    }
+
+    // remove and return the item at the bottom; EMPTY if there is none; owner only
+    int pop()
+    {
+        long b = bottom - 1;
+        int[] array = items;
+        // the write of bottom comes before the read of top, so that a
+        // thief either sees the smaller bottom or is seen by the owner
+        bottom = b;
+        long t = top.get();
+        if (t > b) {
+            bottom = b + 1;
+            return EMPTY;
+        }
+        int item = array[(int) b & (array.length - 1)];
+        if (t < b)
+            return item;
+        // the last item: race the thieves for it
+        boolean taken = top.compareAndSet(t, t + 1);
+        bottom = b + 1;
+        return taken ? item : EMPTY;
+    }
+
+    // remove and return the item at the top; EMPTY if there is none,
+    // or another thread took it first; any thread
+    int steal()
+    {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b)
+            return EMPTY;
+        int[] array = items;
+        int item = array[(int) t & (array.length - 1)];
+        return top.compareAndSet(t, t + 1) ? item : EMPTY;
+    }
+
+    // number of items, possibly out of date; any thread
+    long size()
+    {
+        return Math.max(0, bottom - top.get());
+    }
+}
@@ -0,0 +1,28 @@
+package amazed.solver;
+
+import java.util.Arrays;
+
+
+// growable array of ints, for the frontiers, queues and paths of the
+// solvers; the ints are values[0 .. size), which callers read, and
+// pop or reorder, in place
+class IntList
+{
+    int[] values = new int[16];
+    int size = 0;
+
+    void add(int value)
+    {
+        if (size == values.length)
+            values = Arrays.copyOf(values, 2*size);
+        values[size++] = value;
+    }
+
+    void addAll(IntList other)
+    {
+        if (size + other.size > values.length)
+            values = Arrays.copyOf(values, Math.max(2*values.length, size + other.size));
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+}
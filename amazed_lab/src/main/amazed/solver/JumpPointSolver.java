@@ -0,0 +1,235 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>JumpPointSolver</code> implements a single-thread jump point
+ * search, which finds a shortest path from the start node to a goal
+ * without visiting every cell of open areas.
+ * <p>
+ * The search is an A* search over <em>jump points</em>: instead of
+ * moving to an adjacent cell, every step jumps along a straight line
+ * of the grid until it reaches a goal or a cell where a shortest path
+ * may have to turn. Moves are 4-connected, and shortest paths are
+ * taken to move vertically before they move horizontally: a
+ * horizontal jump stops at a cell with a <em>forced</em> neighbor
+ * above or below it, one that the path could not have reached by
+ * moving vertically earlier because the cell next to it, behind the
+ * jump, is a wall; a vertical jump stops at a cell from which a
+ * horizontal jump, to either side, would stop. Open rooms are thus
+ * crossed with a few jumps, which only read the grid, rather than a
+ * visit per cell. Once a goal is reached, the straight lines between
+ * jump points are filled back in, giving a path through adjacent
+ * nodes.
+ * <p>
+ * The heuristic of the search is the Manhattan distance to the
+ * nearest goal if the maze has at most <code>MAX_HEURISTIC_GOALS</code>
+ * goals, and zero otherwise.
+ */
+
+public class JumpPointSolver
+    extends RecursiveTask<List<Integer>>
+{
+    /**
+     * Largest number of goals for which the search computes the
+     * distance to the nearest goal as its heuristic.
+     */
+    public static final int MAX_HEURISTIC_GOALS = 64;
+
+    private final Maze maze;
+    private final AtomicBoolean stop;
+    private int nCols;
+
+    // rows and columns of the goals, if at most MAX_HEURISTIC_GOALS
+    private int[] goalRows = new int[0];
+    private int[] goalCols = new int[0];
+
+    // open list: (estimated length, cell) entries
+    private final LongHeap open = new LongHeap();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public JumpPointSolver(Maze maze)
+    {
+        this(maze, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, until the search ends or <code>stop</code>
+     * is set.
+     *
+     * @param maze   the maze to be searched
+     * @param stop   a flag that cancels the search when set
+     */
+    public JumpPointSolver(Maze maze, AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.stop = stop;
+    }
+
+    /**
+     * Searches for and returns a shortest path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found, or the search is
+     * stopped, the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        // the player only moves to jump points, not to the cells scanned between them
+        maze.reportExplored(Maze.UNCOUNTED);
+        nCols = maze.cols();
+        int nCells = maze.cells();
+        int start = maze.cell(startId);
+        findGoals(nCells);
+
+        // length of the shortest path found so far, and the jump point before on it
+        int[] length = new int[nCells];
+        Arrays.fill(length, Integer.MAX_VALUE);
+        int[] parent = new int[nCells];
+        Arrays.fill(parent, -1);
+        long[] closed = new long[(nCells + 63) >>> 6];
+
+        int player = maze.newPlayer(startId);
+        length[start] = 0;
+        open.push(heuristic(start), start);
+        while (!open.isEmpty()) {
+            if (stop.get())
+                return null;
+            int current = open.pop();
+            if ((closed[current >>> 6] & (1L << current)) != 0)
+                continue;
+            closed[current >>> 6] |= 1L << current;
+            maze.move(player, maze.cellId(current));
+            if (maze.isGoalCell(current))
+                return fillPath(start, current, parent);
+
+            int row = current/nCols, col = current%nCols;
+            int from = parent[current];
+            if (from < 0) {
+                // the start node: jump in every direction
+                relax(current, jump(row, col, -1, 0), length, parent, closed);
+                relax(current, jump(row, col, 1, 0), length, parent, closed);
+                relax(current, jump(row, col, 0, -1), length, parent, closed);
+                relax(current, jump(row, col, 0, 1), length, parent, closed);
+            } else if (from%nCols == col) {
+                // reached vertically: go on, or turn to either side
+                int dRow = from < current ? 1 : -1;
+                relax(current, jump(row, col, dRow, 0), length, parent, closed);
+                relax(current, jump(row, col, 0, -1), length, parent, closed);
+                relax(current, jump(row, col, 0, 1), length, parent, closed);
+            } else {
+                // reached horizontally: go on, or turn to forced neighbors only
+                int dCol = from < current ? 1 : -1;
+                relax(current, jump(row, col, 0, dCol), length, parent, closed);
+                for (int dRow = -1; dRow <= 1; dRow += 2)
+                    if (isForced(row, col, dRow, dCol))
+                        relax(current, jump(row, col, dRow, 0), length, parent, closed);
+            }
+        }
+        return null;
+    }
+
+    // record the goals, if few enough to estimate the distance to the nearest one
+    private void findGoals(int nCells)
+    {
+        int[] rows = new int[MAX_HEURISTIC_GOALS], cols = new int[MAX_HEURISTIC_GOALS];
+        int count = 0;
+        for (int cell = 0; cell < nCells; cell++) {
+            if (maze.isGoalCell(cell)) {
+                if (count == MAX_HEURISTIC_GOALS)
+                    return;
+                rows[count] = cell/nCols;
+                cols[count] = cell%nCols;
+                count += 1;
+            }
+        }
+        goalRows = Arrays.copyOf(rows, count);
+        goalCols = Arrays.copyOf(cols, count);
+    }
+
+    // Manhattan distance from cell to the nearest goal; 0 if goals are not recorded
+    private int heuristic(int cell)
+    {
+        int row = cell/nCols, col = cell%nCols;
+        int nearest = goalRows.length == 0 ? 0 : Integer.MAX_VALUE;
+        for (int i = 0; i < goalRows.length; i++)
+            nearest = Math.min(nearest, Math.abs(goalRows[i] - row) + Math.abs(goalCols[i] - col));
+        return nearest;
+    }
+
+    // update the path to jump point `next', reached from `current' by a straight line
+    private void relax(int current, int next, int[] length, int[] parent, long[] closed)
+    {
+        if (next < 0 || (closed[next >>> 6] & (1L << next)) != 0)
+            return;
+        int distance = Math.abs(next/nCols - current/nCols) + Math.abs(next%nCols - current%nCols);
+        int newLength = length[current] + distance;
+        if (newLength < length[next]) {
+            length[next] = newLength;
+            parent[next] = current;
+            open.push(newLength + heuristic(next), next);
+        }
+    }
+
+    // moving horizontally by dCol onto row, col, must the path turn by dRow here?
+    private boolean isForced(int row, int col, int dRow, int dCol)
+    {
+        return maze.isAccessible(row + dRow, col) && !maze.isAccessible(row + dRow, col - dCol);
+    }
+
+    // next jump point from row, col in direction dRow, dCol; -1 if there is none
+    private int jump(int row, int col, int dRow, int dCol)
+    {
+        while (true) {
+            row += dRow;
+            col += dCol;
+            if (!maze.isAccessible(row, col))
+                return -1;
+            int cell = row*nCols + col;
+            if (maze.isGoalCell(cell))
+                return cell;
+            if (dRow == 0) {
+                if (isForced(row, col, -1, dCol) || isForced(row, col, 1, dCol))
+                    return cell;
+            } else if (jump(row, col, 0, -1) >= 0 || jump(row, col, 0, 1) >= 0) {
+                return cell;
+            }
+        }
+    }
+
+    // path through adjacent cells from start to goal, filling the
+    // lines between jump points back into parent
+    private List<Integer> fillPath(int start, int goal, int[] parent)
+    {
+        int current = goal;
+        while (current != start) {
+            int from = parent[current];
+            int step = from%nCols == current%nCols ? nCols : 1;
+            if (from > current)
+                step = -step;
+            for (int cell = current; cell != from; cell -= step)
+                parent[cell] = cell - step;
+            current = from;
+        }
+        return CompactPath.fromCellPredecessors(maze, start, goal, parent).asList();
+    }
+}
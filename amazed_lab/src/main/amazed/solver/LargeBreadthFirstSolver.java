@@ -0,0 +1,196 @@
+package amazed.solver;
+
+import amazed.maze.LargeMaze;
+import amazed.maze.LongPath;
+import amazed.maze.MappedBytes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>LargeBreadthFirstSolver</code> implements a single-thread
+ * breadth-first search of a <code>LargeMaze</code>, whose cells are
+ * numbered by <code>long</code>s, and finds a shortest path from the
+ * start node to a goal.
+ * <p>
+ * Instead of the predecessor of every cell, the search keeps the
+ * direction of the move into it, in four bits per cell that also
+ * tell whether the cell was visited; these live in
+ * <code>MappedBytes</code>, off the Java heap, so that the search is
+ * not limited by the size of arrays or of the heap. Only the queue of
+ * cells to visit, which holds about one layer of the search, is kept
+ * on the heap.
+ * <p>
+ * A solver given a stop flag gives up, returning <code>null</code>,
+ * as soon as it finds the flag set.
+ */
+
+public class LargeBreadthFirstSolver
+    extends RecursiveTask<LongPath>
+{
+    // marks of cells: not visited, the start cell, or 1 + the direction of the move into the cell
+    private static final int NONE = 0;
+    private static final int START = 5;
+    // directions of moves, in the order of LargeMaze.neighborCells
+    private static final int NORTH = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int EAST = 3;
+
+    private final LargeMaze maze;
+    private final AtomicBoolean stop;
+
+    // marks of the cells, two per byte
+    private MappedBytes marks;
+    // cells to visit, a circular buffer
+    private long[] queue = new long[1024];
+    private int head = 0;
+    private int tail = 0;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public LargeBreadthFirstSolver(LargeMaze maze)
+    {
+        this(maze, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, until the search ends or <code>stop</code>
+     * is set.
+     *
+     * @param maze   the maze to be searched
+     * @param stop   a flag that cancels the search when set
+     */
+    public LargeBreadthFirstSolver(LargeMaze maze, AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.stop = stop;
+    }
+
+    /**
+     * Searches for and returns a shortest path that goes from the
+     * start node to a goal node in the maze. If such a path cannot be
+     * found, or the search is stopped, the method returns
+     * <code>null</code>.
+     *
+     * @return   the path from the start node to a goal node in the
+     *           maze; <code>null</code> if such a path cannot be found
+     * @throws UncheckedIOException if the marks of the cells cannot be stored
+     */
+    @Override
+    public LongPath compute()
+    {
+        try (MappedBytes marks = new MappedBytes((maze.cells() + 1)/2)) {
+            this.marks = marks;
+            return search();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.marks = null;
+        }
+    }
+
+    private LongPath search()
+    {
+        long cols = maze.cols();
+        long start = maze.cell(maze.start());
+        mark(start, START);
+        if (maze.isGoalCell(start))
+            return path(start);
+        enqueue(start);
+        long[] neighbors = new long[4];
+        while (head != tail) {
+            if (stop.get())
+                return null;
+            long cell = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            int count = maze.neighborCells(cell, neighbors);
+            for (int i = 0; i < count; i++) {
+                long next = neighbors[i];
+                if (mark(next) != NONE)
+                    continue;
+                long step = next - cell;
+                mark(next, 1 + (step == -cols ? NORTH : step == cols ? SOUTH : step == -1 ? WEST : EAST));
+                if (maze.isGoalCell(next)) {
+                    stop.set(true);
+                    return path(next);
+                }
+                enqueue(next);
+            }
+        }
+        return null;
+    }
+
+    private int mark(long cell)
+    {
+        return (marks.get(cell >>> 1) >>> (4*(cell & 1))) & 0xf;
+    }
+
+    private void mark(long cell, int mark)
+    {
+        long index = cell >>> 1;
+        int shift = (int) (4*(cell & 1));
+        marks.put(index, (byte) (marks.get(index) & ~(0xf << shift) | mark << shift));
+    }
+
+    private void enqueue(long cell)
+    {
+        queue[tail] = cell;
+        tail = (tail + 1) & (queue.length - 1);
+        if (tail == head) {
+            // full: unroll into an array twice as large
+            long[] larger = new long[2*queue.length];
+            int n = queue.length - head;
+            System.arraycopy(queue, head, larger, 0, n);
+            System.arraycopy(queue, 0, larger, n, head);
+            head = 0;
+            tail = queue.length;
+            queue = larger;
+        }
+    }
+
+    // path from the start cell to `end', along the moves marked in the cells
+    private LongPath path(long end)
+    {
+        long cols = maze.cols();
+        // moves from `end' back to the start, in chunks of 2^20
+        byte[][] moves = new byte[1][];
+        long nMoves = 0;
+        long cell = end;
+        for (int mark = mark(cell); mark != START; mark = mark(cell)) {
+            int chunk = (int) (nMoves >>> 20);
+            if (chunk == moves.length)
+                moves = Arrays.copyOf(moves, 2*chunk);
+            if (moves[chunk] == null)
+                moves[chunk] = new byte[1 << 20];
+            moves[chunk][(int) nMoves & ((1 << 20) - 1)] = (byte) (mark - 1);
+            nMoves += 1;
+            cell -= delta(mark - 1, cols);
+        }
+        LongPath.Builder builder = new LongPath.Builder(maze, cell);
+        for (long i = nMoves - 1; i >= 0; i--) {
+            cell += delta(moves[(int) (i >>> 20)][(int) i & ((1 << 20) - 1)], cols);
+            builder.add(cell);
+        }
+        return builder.build();
+    }
+
+    // change of cell index of a move in `direction'
+    private static long delta(int direction, long cols)
+    {
+        switch (direction) {
+        case NORTH: return -cols;
+        case SOUTH: return cols;
+        case WEST: return -1;
+        default: return 1;
+        }
+    }
+}
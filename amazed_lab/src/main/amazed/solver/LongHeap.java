@@ -0,0 +1,58 @@
+package amazed.solver;
+
+import java.util.Arrays;
+
+
+// binary min-heap of (key, value) pairs of non-negative ints, packed in
+// longs as key << 32 | value, for the open lists of the best-first solvers
+//
+// Pairs compare by key, then by value. The heap never removes an entry
+// but the smallest: a solver that finds a smaller key for a value
+// pushes it again, and skips the stale entry when it pops it.
+class LongHeap
+{
+    private long[] heap = new long[64];
+    private int size = 0;
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    void push(int key, int value)
+    {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, 2*heap.length);
+        long entry = ((long) key << 32) | value;
+        int i = size++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heap[up] <= entry)
+                break;
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = entry;
+    }
+
+    // value of the entry with the smallest key, removed from the heap
+    int pop()
+    {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                child += 1;
+            if (heap[child] >= last)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return (int) top;
+    }
+}
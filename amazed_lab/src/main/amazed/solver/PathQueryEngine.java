@@ -0,0 +1,254 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>PathQueryEngine</code> answers many path queries against the
+ * same <code>Maze</code>, between arbitrary nodes. Paths to the
+ * nearest goal are answered by a <code>GoalDistanceField</code>.
+ * <p>
+ * For every source node that is queried, the engine runs a single
+ * breadth-first search over the whole connected component of the
+ * source, and keeps the resulting <em>predecessor tree</em>: every
+ * later query from the same source is answered by walking the tree
+ * backwards, and the paths are shortest. Both predecessor trees and
+ * query results are kept in bounded caches that evict the least
+ * recently used entry. The caches are dropped, and built again, when
+ * the map changes by <code>Maze.toggle</code> or
+ * <code>Maze.setGoal</code>.
+ * <p>
+ * Instances of <code>PathQueryEngine</code> can be queried by many
+ * threads at once. Concurrent queries from the same source that is
+ * not cached yet share one search.
+ */
+
+public class PathQueryEngine
+{
+    /**
+     * Creates an engine answering queries on <code>maze</code>.
+     *
+     * @param maze         the maze to be queried
+     * @param treeCapacity the maximum number of predecessor trees
+     *                     that are cached
+     * @param pathCapacity the maximum number of query results that are
+     *                     cached
+     */
+    public PathQueryEngine(Maze maze, int treeCapacity, int pathCapacity)
+    {
+        this.maze = maze;
+        this.treeCapacity = treeCapacity;
+        this.pathCapacity = pathCapacity;
+        this.caches = new Caches(maze.modifications(), treeCapacity, pathCapacity);
+    }
+
+    private final Maze maze;
+    private final int treeCapacity;
+    private final int pathCapacity;
+    // caches of the latest version of the map seen by a query
+    private volatile Caches caches;
+
+    private final AtomicLong pathHits = new AtomicLong();
+    private final AtomicLong pathMisses = new AtomicLong();
+    private final AtomicLong treeHits = new AtomicLong();
+    private final AtomicLong treeMisses = new AtomicLong();
+
+    // cached marker for queries without a path
+    private static final List<Integer> NO_PATH = Collections.emptyList();
+
+    /**
+     * Returns a shortest path, as a list of node identifiers, that
+     * goes from node <code>from</code> to node <code>to</code>.
+     *
+     * @param from   the identifier of the initial node on the path
+     * @param to     the identifier of the final node on the path
+     * @return       the unmodifiable list of node identifiers from
+     *               <code>from</code> to <code>to</code>;
+     *               <code>null</code> if <code>to</code> cannot be reached
+     *               from <code>from</code>
+     * @throws IllegalArgumentException if there is no node
+     *         <code>from</code> or no node <code>to</code>
+     */
+    public List<Integer> path(int from, int to)
+    {
+        // unknown nodes fail here, before they reach the caches and searches
+        maze.cell(from);
+        maze.cell(to);
+        Caches caches = caches();
+        long key = ((long) from << 32) | (to & 0xFFFFFFFFL);
+        List<Integer> path = caches.paths.get(key);
+        if (path != null) {
+            pathHits.incrementAndGet();
+        } else {
+            pathMisses.incrementAndGet();
+            Tree tree = tree(caches, from);
+            path = tree.pathTo(to);
+            caches.paths.put(key, path);
+        }
+        return path == NO_PATH ? null : path;
+    }
+
+    // caches of the current map: the last ones, or new empty ones if the
+    // map changed since they were created. Queries that still use the
+    // caches of an earlier map fill those, which are then dropped.
+    private Caches caches()
+    {
+        long modifications = maze.modifications();
+        Caches current = caches;
+        if (current.modifications < modifications) {
+            synchronized (this) {
+                current = caches;
+                if (current.modifications < modifications) {
+                    current = new Caches(modifications, treeCapacity, pathCapacity);
+                    caches = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // predecessor tree of source `from', from `caches' or a new search
+    private Tree tree(Caches caches, int from)
+    {
+        LruCache<Integer, Tree> trees = caches.trees;
+        Map<Integer, CompletableFuture<Tree>> searching = caches.searching;
+        Tree tree = trees.get(from);
+        if (tree != null) {
+            treeHits.incrementAndGet();
+            return tree;
+        }
+        CompletableFuture<Tree> search = new CompletableFuture<>();
+        CompletableFuture<Tree> other = searching.putIfAbsent(from, search);
+        if (other != null) {
+            // another thread is already searching from the same source
+            treeHits.incrementAndGet();
+            return other.join();
+        }
+        try {
+            // the search may have completed since the cache was checked
+            tree = trees.get(from);
+            if (tree == null) {
+                treeMisses.incrementAndGet();
+                tree = new Tree(from);
+            } else
+                treeHits.incrementAndGet();
+            trees.put(from, tree);
+            search.complete(tree);
+        } catch (RuntimeException e) {
+            search.completeExceptionally(e);
+            throw e;
+        } finally {
+            searching.remove(from);
+        }
+        return tree;
+    }
+
+    /**
+     * Returns a one-line summary of the cache hit counters.
+     *
+     * @return   the number of hits and misses of the result cache and
+     *           of the predecessor tree cache
+     */
+    public String cacheStatistics()
+    {
+        return "paths: " + pathHits.get() + " hits, " + pathMisses.get() + " misses; "
+            + "trees: " + treeHits.get() + " hits, " + treeMisses.get() + " misses";
+    }
+
+    // predecessor tree of a breadth-first search from a source
+    private class Tree
+    {
+        private final int source;
+        // node --> node from which it was first reached
+        private final Map<Integer, Integer> predecessor = new HashMap<>();
+
+        Tree(int source)
+        {
+            this.source = source;
+            Queue<Integer> frontier = new ArrayDeque<>();
+            frontier.add(source);
+            predecessor.put(source, source);
+            while (!frontier.isEmpty()) {
+                int current = frontier.remove();
+                for (int nb: maze.neighbors(current)) {
+                    if (!predecessor.containsKey(nb)) {
+                        predecessor.put(nb, current);
+                        frontier.add(nb);
+                    }
+                }
+            }
+        }
+
+        List<Integer> pathTo(int to)
+        {
+            if (!predecessor.containsKey(to))
+                return NO_PATH;
+            LinkedList<Integer> path = new LinkedList<>();
+            int current = to;
+            while (current != source) {
+                path.addFirst(current);
+                current = predecessor.get(current);
+            }
+            path.addFirst(source);
+            return Collections.unmodifiableList(path);
+        }
+    }
+
+    // caches of one version of the map
+    private static class Caches
+    {
+        // Maze.modifications() of the map
+        final long modifications;
+        // source node --> predecessor tree of a search from source
+        final LruCache<Integer, Tree> trees;
+        // (from, to) packed in a long --> path, or NO_PATH
+        final LruCache<Long, List<Integer>> paths;
+        // source node --> search in progress from source
+        final Map<Integer, CompletableFuture<Tree>> searching = new ConcurrentHashMap<>();
+
+        Caches(long modifications, int treeCapacity, int pathCapacity)
+        {
+            this.modifications = modifications;
+            this.trees = new LruCache<>(treeCapacity);
+            this.paths = new LruCache<>(pathCapacity);
+        }
+    }
+
+    // map of bounded size, evicting the least recently accessed entry
+    private static class LruCache<K, V>
+    {
+        private final Map<K, V> map;
+
+        LruCache(final int capacity)
+        {
+            map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized V get(K key)
+        {
+            return map.get(key);
+        }
+
+        synchronized void put(K key, V value)
+        {
+            map.put(key, value);
+        }
+    }
+}
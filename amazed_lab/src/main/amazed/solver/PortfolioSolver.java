@@ -0,0 +1,236 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * <code>PortfolioSolver</code> races several solvers on the same
+ * <code>Maze</code>, and returns the path of the first one that finds
+ * a goal.
+ * <p>
+ * The solvers of the portfolio are forked as tasks of the pool that
+ * runs the portfolio. All of them share a stop flag, which the
+ * winner sets: the other solvers check the flag at every step and
+ * give up as soon as they find it set. The portfolio can append the
+ * name of the winner, with the map and the time it took, to a log
+ * file, one tab-separated line per search; collected over many maps,
+ * the log shows which strategies are worth including.
+ */
+
+public class PortfolioSolver
+    extends RecursiveTask<List<Integer>>
+{
+    /**
+     * A named way of creating a solver that stops when a flag is set.
+     */
+    public static class Strategy
+    {
+        private final String name;
+        private final BiFunction<Maze, AtomicBoolean, RecursiveTask<List<Integer>>> factory;
+
+        /**
+         * Creates a strategy.
+         *
+         * @param name      the name of the strategy, as logged
+         * @param factory   creates a solver of a given maze that stops
+         *                  when a given flag is set
+         */
+        public Strategy(String name,
+                        BiFunction<Maze, AtomicBoolean, RecursiveTask<List<Integer>>> factory)
+        {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        /**
+         * Returns the name of this strategy.
+         *
+         * @return   the name of this strategy
+         */
+        public String name()
+        {
+            return name;
+        }
+
+        /**
+         * Creates a solver of this strategy.
+         *
+         * @param maze   the maze to be searched
+         * @param stop   a flag that cancels the search when set
+         * @return       a new solver of <code>maze</code>
+         */
+        public RecursiveTask<List<Integer>> newSolver(Maze maze, AtomicBoolean stop)
+        {
+            return factory.apply(maze, stop);
+        }
+    }
+
+    /**
+     * Returns the portfolio used by default: depth-first search in
+     * the fixed and in two random orders of neighbors, fork/join
+     * depth-first search, one- and two-directional breadth-first
+     * search, jump point search, and breadth-first search on a
+     * bitboard.
+     *
+     * @return   the strategies of the default portfolio
+     */
+    public static List<Strategy> defaultPortfolio()
+    {
+        List<Strategy> strategies = new ArrayList<>();
+        strategies.add(new Strategy("dfs", PrimitiveSequentialSolver::new));
+        strategies.add(new Strategy("dfs-random-1", (m, stop) -> new PrimitiveSequentialSolver(m, stop, 1)));
+        strategies.add(new Strategy("dfs-random-2", (m, stop) -> new PrimitiveSequentialSolver(m, stop, 2)));
+        strategies.add(new Strategy("parallel-9", (m, stop) -> new ForkJoinSolver(m, 9, stop)));
+        strategies.add(new Strategy("bfs", (m, stop) -> new BreadthFirstSolver(m, false, stop)));
+        strategies.add(new Strategy("bidirectional", (m, stop) -> new BreadthFirstSolver(m, true, stop)));
+        strategies.add(new Strategy("jps", JumpPointSolver::new));
+        strategies.add(new Strategy("bitboard", BitboardSolver::new));
+        return strategies;
+    }
+
+    private final Maze maze;
+    private final List<Strategy> strategies;
+    // null if the winners are not logged
+    private final String logFile;
+
+    // the racer whose path is returned
+    private final AtomicReference<Racer> winner = new AtomicReference<>();
+
+    /**
+     * Creates a solver that races the default portfolio in
+     * <code>maze</code>, without logging.
+     *
+     * @param maze   the maze to be searched
+     */
+    public PortfolioSolver(Maze maze)
+    {
+        this(maze, defaultPortfolio(), null);
+    }
+
+    /**
+     * Creates a solver that races some strategies in
+     * <code>maze</code>.
+     *
+     * @param maze         the maze to be searched
+     * @param strategies   the strategies that race, at least one
+     * @param logFile      the name of the file where the winner of the
+     *                     race is appended; <code>null</code> to log nothing
+     */
+    public PortfolioSolver(Maze maze, List<Strategy> strategies, String logFile)
+    {
+        this.maze = maze;
+        this.strategies = strategies;
+        this.logFile = logFile;
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze, as found first by any of the strategies. If such a
+     * path cannot be found, the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        if (!maze.canReachGoal(maze.start()))
+            return null;
+        AtomicBoolean stop = new AtomicBoolean();
+        long start = System.nanoTime();
+        List<Racer> racers = new ArrayList<>(strategies.size());
+        for (Strategy strategy: strategies)
+            racers.add(new Racer(strategy, stop, start));
+        // fork all the others, and race the first in this thread
+        for (int i = racers.size() - 1; i > 0; i--)
+            racers.get(i).fork();
+        racers.get(0).invoke();
+        for (int i = 1; i < racers.size(); i++)
+            racers.get(i).join();
+        Racer first = winner.get();
+        log(first);
+        return first == null ? null : first.path;
+    }
+
+    /**
+     * Returns the name of the strategy that won the race, after the
+     * search.
+     *
+     * @return   the name of the strategy whose path is returned;
+     *           <code>null</code> if no strategy found a path
+     */
+    public String winner()
+    {
+        Racer first = winner.get();
+        return first == null ? null : first.strategy.name;
+    }
+
+    private void log(Racer first)
+    {
+        if (logFile == null)
+            return;
+        List<String> names = new ArrayList<>(strategies.size());
+        for (Strategy strategy: strategies)
+            names.add(strategy.name);
+        String line = Instant.now() + "\t" + maze.filename()
+            + "\t" + maze.rows() + "x" + maze.cols()
+            + "\t" + (first == null ? "none" : first.strategy.name)
+            + "\t" + (first == null ? "-" : String.format("%.3f", first.elapsed/1e6))
+            + "\t" + String.join(",", names) + "\n";
+        synchronized (PortfolioSolver.class) {
+            try {
+                Files.write(Paths.get(logFile), line.getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Error: cannot write portfolio log " + logFile);
+            }
+        }
+    }
+
+    // one strategy in the race
+    private class Racer extends RecursiveAction
+    {
+        private final Strategy strategy;
+        private final AtomicBoolean stop;
+        private final long start;
+        // path found and nanoseconds from the start of the race, if winner
+        private List<Integer> path;
+        private long elapsed;
+
+        Racer(Strategy strategy, AtomicBoolean stop, long start)
+        {
+            this.strategy = strategy;
+            this.stop = stop;
+            this.start = start;
+        }
+
+        @Override
+        protected void compute()
+        {
+            // a racer that starts after the end of the race does not even set up
+            if (stop.get())
+                return;
+            List<Integer> result = strategy.newSolver(maze, stop).invoke();
+            if (result != null && winner.compareAndSet(null, this)) {
+                path = result;
+                elapsed = System.nanoTime() - start;
+                stop.set(true);
+            }
+        }
+    }
+}
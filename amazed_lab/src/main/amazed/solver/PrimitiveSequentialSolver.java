@@ -0,0 +1,256 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>PrimitiveSequentialSolver</code> implements the same
+ * single-thread depth-first search as <code>SequentialSolver</code>
+ * using only arrays of primitive values.
+ * <p>
+ * The search works on the cell indexes of the maze (see
+ * {@link amazed.maze.Maze#cell(int)}) rather than on node
+ * identifiers: the frontier is a stack of cell indexes in an
+ * <code>int</code> array, the visited set is a bitset, and the
+ * predecessor relation is an <code>int</code> array indexed by cell.
+ * Only neighbors not visited yet are pushed on the stack, which thus
+ * holds at most three entries per visited cell. Apart from the rare
+ * growth of the stack, the search loop allocates no objects; it is
+ * the single-core baseline against which parallel solvers should be
+ * compared.
+ * <p>
+ * The solver can also push the neighbors of every cell in a random
+ * order, and give up as soon as it finds a stop flag set, so that
+ * differently seeded copies can race on the same maze.
+ * <p>
+ * Finally, the solver can save its state periodically to a
+ * checkpoint file named after the checksum of the map (see
+ * {@link amazed.maze.Maze#checksum()}), and resume the search from
+ * the checkpoint of the same map left by a previous run that did not
+ * finish. The search only pauses to copy its state into a buffer,
+ * which another thread writes to the file.
+ */
+
+public class PrimitiveSequentialSolver
+    extends RecursiveTask<List<Integer>>
+{
+    private final Maze maze;
+    private final AtomicBoolean stop;
+    // order of neighbors; null for the fixed order of Maze.neighborCells
+    private final SplittableRandom random;
+
+    // steps between two readings of the clock, minus one
+    private static final int CLOCK_STEPS = 4095;
+
+    // directory of checkpoint files; null if there are no checkpoints
+    private final String checkpointDirectory;
+    private final long checkpointNanos;
+    // checkpoint file of the map, and thread writing to it, during the search
+    private Path checkpointFile;
+    private Thread writer;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public PrimitiveSequentialSolver(Maze maze)
+    {
+        this(maze, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, until the search ends or <code>stop</code>
+     * is set.
+     *
+     * @param maze   the maze to be searched
+     * @param stop   a flag that cancels the search when set
+     */
+    public PrimitiveSequentialSolver(Maze maze, AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.stop = stop;
+        this.random = null;
+        this.checkpointDirectory = null;
+        this.checkpointNanos = 0;
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, visiting the neighbors of every node in
+     * a random order, until the search ends or <code>stop</code> is
+     * set.
+     *
+     * @param maze   the maze to be searched
+     * @param stop   a flag that cancels the search when set
+     * @param seed   the seed of the random order of neighbors
+     */
+    public PrimitiveSequentialSolver(Maze maze, AtomicBoolean stop, long seed)
+    {
+        this.maze = maze;
+        this.stop = stop;
+        this.random = new SplittableRandom(seed);
+        this.checkpointDirectory = null;
+        this.checkpointNanos = 0;
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, saving its state every
+     * <code>checkpointMillis</code> milliseconds to a file in
+     * <code>checkpointDirectory</code>. If the directory holds a
+     * checkpoint of the same map, the search resumes from it; the
+     * checkpoint is deleted when the search ends.
+     *
+     * @param maze                  the maze to be searched
+     * @param checkpointDirectory   the directory of the checkpoint files,
+     *                              created if needed
+     * @param checkpointMillis      milliseconds between two checkpoints
+     */
+    public PrimitiveSequentialSolver(Maze maze, String checkpointDirectory, long checkpointMillis)
+    {
+        this.maze = maze;
+        this.stop = new AtomicBoolean();
+        this.random = null;
+        this.checkpointDirectory = checkpointDirectory;
+        this.checkpointNanos = 1_000_000*checkpointMillis;
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found, or the search is
+     * stopped, the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        int start = maze.cell(startId);
+        int nCells = maze.cells();
+
+        long[] visited = new long[(nCells + 63) >>> 6];
+        int[] predecessor = new int[nCells];
+        Arrays.fill(predecessor, -1);
+        int[] frontier = new int[64];
+        int size = 0;
+        int[] neighbors = new int[4];
+
+        long checksum = 0;
+        Checkpoint resumed = null;
+        if (checkpointDirectory != null) {
+            checksum = maze.checksum();
+            checkpointFile = Checkpoint.file(checkpointDirectory, checksum);
+            try {
+                resumed = Checkpoint.read(checkpointFile, maze, checksum);
+            } catch (IOException e) {
+                System.err.println("Error: cannot read checkpoint " + checkpointFile);
+            }
+        }
+        if (resumed != null && resumed.start == start) {
+            System.out.println("Resuming from checkpoint " + checkpointFile);
+            visited = resumed.visited;
+            predecessor = resumed.predecessor;
+            frontier = resumed.stack;
+            size = resumed.size;
+        } else
+            frontier[size++] = start;
+
+        int player = maze.newPlayer(startId);
+        long nextCheckpoint = System.nanoTime() + checkpointNanos;
+        int steps = 0;
+        while (size > 0) {
+            if (stop.get())
+                return null;
+            if (checkpointFile != null && (++steps & CLOCK_STEPS) == 0
+                && System.nanoTime() >= nextCheckpoint) {
+                checkpoint(Checkpoint.encode(maze, checksum, start, frontier, size, visited, predecessor));
+                nextCheckpoint = System.nanoTime() + checkpointNanos;
+            }
+            int current = frontier[--size];
+            if ((visited[current >>> 6] & (1L << current)) != 0)
+                continue;
+            visited[current >>> 6] |= 1L << current;
+            maze.move(player, maze.cellId(current));
+            if (maze.isGoalCell(current)) {
+                endCheckpoints();
+                return CompactPath.fromCellPredecessors(maze, start, current, predecessor).asList();
+            }
+            int count = maze.neighborCells(current, neighbors);
+            if (random != null)
+                shuffle(neighbors, count);
+            if (size + count > frontier.length)
+                frontier = Arrays.copyOf(frontier, 2*frontier.length);
+            for (int i = 0; i < count; i++) {
+                int nb = neighbors[i];
+                if ((visited[nb >>> 6] & (1L << nb)) == 0) {
+                    predecessor[nb] = current;
+                    frontier[size++] = nb;
+                }
+            }
+        }
+        endCheckpoints();
+        return null;
+    }
+
+    // write a snapshot in the background, unless the previous one is still being written
+    private void checkpoint(ByteBuffer snapshot)
+    {
+        if (writer != null && writer.isAlive())
+            return;
+        Path file = checkpointFile;
+        writer = new Thread(() -> {
+            try {
+                Checkpoint.write(snapshot, file);
+            } catch (IOException e) {
+                System.err.println("Error: cannot write checkpoint " + file);
+            }
+        }, "checkpoint");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // the search is over: its checkpoint is no longer needed
+    private void endCheckpoints()
+    {
+        if (checkpointFile == null)
+            return;
+        try {
+            if (writer != null)
+                writer.join();
+            Checkpoint.delete(checkpointFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error: cannot delete checkpoint " + checkpointFile);
+        }
+    }
+
+    // random permutation of the first count elements of values
+    private void shuffle(int[] values, int count)
+    {
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+    }
+}
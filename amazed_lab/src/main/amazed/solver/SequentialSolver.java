@@ -1,17 +1,16 @@
 package amazed.solver;
 
+import amazed.maze.CompactPath;
 import amazed.maze.Maze;
 
 import java.util.concurrent.RecursiveTask;
 
 import java.util.List;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Stack;
-import java.util.Collections;
 
 /**
  * <code>SequentialSolver</code> implements a solver for
@@ -103,7 +102,8 @@ public class SequentialSolver
      * identifiers, that goes from the start node to a goal node in
      * the maze. If such a path cannot be found (because there are no
      * goals, or all goals are unreacheable), the method returns
-     * <code>null</code>.
+     * <code>null</code> &mdash; without searching if no goal is in the
+     * connected component of the start node.
      *
      * @return   the list of node identifiers from the start node to a
      *           goal node in the maze; <code>null</code> if such a path cannot
@@ -112,6 +112,8 @@ public class SequentialSolver
     @Override
     public List<Integer> compute()
     {
+        if (!maze.canReachGoal(start))
+            return null;
         return depthFirstSearch();
     }
 
@@ -159,6 +161,7 @@ public class SequentialSolver
      * following the inverse of relation <code>predecessor</code>. If
      * such a path cannot be reconstructed from
      * <code>predecessor</code>, the method returns <code>null</code>.
+     * The list is a read-only view of a <code>CompactPath</code>.
      *
      * @param from   the identifier of the initial node on the path
      * @param to     the identifier of the final node on the path
@@ -167,16 +170,23 @@ public class SequentialSolver
      *               <code>predecessor</code>; <code>null</code> otherwise
      */
     protected List<Integer> pathFromTo(int from, int to) {
-        List<Integer> path = new LinkedList<>();
-        Integer current = to;
-        while (current != from) {
-            path.add(current);
-            current = predecessor.get(current);
-            if (current == null)
-                return null;
-        }
-        path.add(from);
-        Collections.reverse(path);
-        return path;
+        CompactPath path = compactPathFromTo(from, to);
+        return path == null ? null : path.asList();
+    }
+
+    /**
+     * Returns the connected path that goes from node
+     * <code>from</code> to node <code>to</code> following the inverse
+     * of relation <code>predecessor</code>, encoded as a
+     * <code>CompactPath</code>.
+     *
+     * @param from   the identifier of the initial node on the path
+     * @param to     the identifier of the final node on the path
+     * @return       the path from <code>from</code> to <code>to</code> if
+     *               it can be reconstructed from <code>predecessor</code>;
+     *               <code>null</code> otherwise
+     */
+    protected CompactPath compactPathFromTo(int from, int to) {
+        return CompactPath.fromPredecessors(maze, from, to, predecessor);
     }
 }
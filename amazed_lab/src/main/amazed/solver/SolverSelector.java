@@ -0,0 +1,318 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.MazeProfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * <code>SolverSelector</code> picks a solver for a maze from its
+ * <code>MazeProfile</code>, with three thresholds:
+ * <ul>
+ * <li>mazes whose fraction of open cells is at least
+ *     <code>jpsOpenFraction</code> are searched by jump point search,
+ *     which skips across open areas;</li>
+ * <li>otherwise, mazes with at least <code>parallelCellsPerGoal</code>
+ *     cells per goal, where searches are long, are searched by the
+ *     fork/join solver, forking after <code>forkFactor</code> times the
+ *     mean length of the corridors, so that tasks fork at about every
+ *     few junctions;</li>
+ * <li>the other mazes are searched by the sequential solver on
+ *     primitive arrays.</li>
+ * </ul>
+ * The fork/join solver is never chosen on a single processor.
+ * <p>
+ * The thresholds depend on the machine as much as on the mazes:
+ * <code>fit</code> sets them from the times that the candidate
+ * solvers take on sample mazes, as measured by the calibration
+ * command, which saves them to a file read by <code>load</code>.
+ */
+
+public class SolverSelector
+{
+    /**
+     * File where the thresholds are saved by default, in the working
+     * directory.
+     */
+    public static final String DEFAULT_FILE = "solver-selection.properties";
+
+    /**
+     * Values of <code>forkAfter</code> among the candidates, for
+     * which the fork/join solver is measured.
+     */
+    public static final int[] FORK_AFTER = {1, 4, 16, 64, 256};
+
+    private static final int MAX_FORK_AFTER = 1024;
+
+    // thresholds used until some are fitted
+    private static final double DEFAULT_JPS_OPEN_FRACTION = 0.5;
+    private static final double DEFAULT_PARALLEL_CELLS_PER_GOAL = 250000;
+    private static final double DEFAULT_FORK_FACTOR = 4;
+
+    // indexes of the candidates; the fork/join solvers follow, in order of FORK_AFTER
+    private static final int PRIMITIVE = 0;
+    private static final int JPS = 1;
+    private static final int PARALLEL = 2;
+
+    private final double jpsOpenFraction;
+    private final double parallelCellsPerGoal;
+    private final double forkFactor;
+
+    // last maze passed to a factory, and the strategy chosen for it
+    private Maze lastMaze;
+    private PortfolioSolver.Strategy lastChoice;
+
+    /**
+     * Creates a selector with the default thresholds.
+     */
+    public SolverSelector()
+    {
+        this(DEFAULT_JPS_OPEN_FRACTION, DEFAULT_PARALLEL_CELLS_PER_GOAL, DEFAULT_FORK_FACTOR);
+    }
+
+    /**
+     * Creates a selector with given thresholds.
+     *
+     * @param jpsOpenFraction        the fraction of open cells from
+     *                               which jump point search is chosen
+     * @param parallelCellsPerGoal   the number of cells per goal from
+     *                               which the fork/join solver is chosen
+     * @param forkFactor             the number of steps before forking,
+     *                               per cell of the mean corridor length
+     */
+    public SolverSelector(double jpsOpenFraction, double parallelCellsPerGoal, double forkFactor)
+    {
+        this.jpsOpenFraction = jpsOpenFraction;
+        this.parallelCellsPerGoal = parallelCellsPerGoal;
+        this.forkFactor = forkFactor;
+    }
+
+    /**
+     * Reads a selector from a file written by <code>save</code>.
+     *
+     * @param file   the name of the file to be read
+     * @return       the selector with the thresholds in
+     *               <code>file</code>; the default selector if there is
+     *               no such file, or it cannot be read
+     */
+    public static SolverSelector load(String file)
+    {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(Paths.get(file))) {
+            properties.load(in);
+            return new SolverSelector(Double.parseDouble(properties.getProperty("jpsOpenFraction")),
+                                      Double.parseDouble(properties.getProperty("parallelCellsPerGoal")),
+                                      Double.parseDouble(properties.getProperty("forkFactor")));
+        } catch (NoSuchFileException e) {
+            return new SolverSelector();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error: cannot read solver selection " + file + ", using defaults");
+            return new SolverSelector();
+        }
+    }
+
+    /**
+     * Writes the thresholds of this selector to a file.
+     *
+     * @param file   the name of the file to be written
+     * @throws IOException   if the file cannot be written
+     */
+    public void save(String file)
+    throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("jpsOpenFraction", Double.toString(jpsOpenFraction));
+        properties.setProperty("parallelCellsPerGoal", Double.toString(parallelCellsPerGoal));
+        properties.setProperty("forkFactor", Double.toString(forkFactor));
+        try (Writer out = Files.newBufferedWriter(Paths.get(file))) {
+            properties.store(out, "thresholds of the auto solver, fitted by calibration");
+        }
+    }
+
+    /**
+     * Returns the candidate solvers, among which <code>fit</code>
+     * chooses: the sequential solver on primitive arrays, jump point
+     * search, and the fork/join solver for every value of
+     * <code>FORK_AFTER</code>, in this order.
+     *
+     * @return   the candidate strategies
+     */
+    public static List<PortfolioSolver.Strategy> candidates()
+    {
+        List<PortfolioSolver.Strategy> candidates = new ArrayList<>();
+        candidates.add(new PortfolioSolver.Strategy("primitive", PrimitiveSequentialSolver::new));
+        candidates.add(new PortfolioSolver.Strategy("jps", JumpPointSolver::new));
+        for (int forkAfter: FORK_AFTER)
+            candidates.add(parallel(forkAfter));
+        return candidates;
+    }
+
+    private static PortfolioSolver.Strategy parallel(int forkAfter)
+    {
+        return new PortfolioSolver.Strategy("parallel-" + forkAfter,
+                                            (m, stop) -> new ForkJoinSolver(m, forkAfter, stop));
+    }
+
+    /**
+     * Returns the solver that this selector picks for a maze with a
+     * given profile.
+     *
+     * @param profile   the profile of a maze
+     * @return          the strategy of the solver picked
+     */
+    public PortfolioSolver.Strategy choose(MazeProfile profile)
+    {
+        int choice = choose(profile, forkFactor, jpsOpenFraction, parallelCellsPerGoal);
+        if (choice == PRIMITIVE || choice == JPS || Runtime.getRuntime().availableProcessors() == 1)
+            return candidates().get(choice == JPS ? JPS : PRIMITIVE);
+        return parallel(forkAfter(profile, forkFactor));
+    }
+
+    // PRIMITIVE, JPS, or PARALLEL + the index of the nearest value of FORK_AFTER
+    private static int choose(MazeProfile profile, double forkFactor,
+                              double jpsOpenFraction, double parallelCellsPerGoal)
+    {
+        if (profile.openFraction() >= jpsOpenFraction)
+            return JPS;
+        if (profile.cellsPerGoal() < parallelCellsPerGoal)
+            return PRIMITIVE;
+        // nearest on a logarithmic scale
+        int forkAfter = forkAfter(profile, forkFactor);
+        int nearest = 0;
+        for (int i = 1; i < FORK_AFTER.length; i++)
+            if (Math.abs(Math.log((double) FORK_AFTER[i]/forkAfter))
+                < Math.abs(Math.log((double) FORK_AFTER[nearest]/forkAfter)))
+                nearest = i;
+        return PARALLEL + nearest;
+    }
+
+    private static int forkAfter(MazeProfile profile, double forkFactor)
+    {
+        long steps = Math.round(forkFactor*Math.max(1, profile.meanCorridorLength()));
+        return (int) Math.max(1, Math.min(MAX_FORK_AFTER, steps));
+    }
+
+    /**
+     * Returns a solver factory that profiles every maze and creates
+     * the solver this selector picks for it, printing the choice.
+     * Consecutive solvers of the same maze reuse the first choice.
+     *
+     * @return   a factory of solvers of any maze
+     */
+    public Function<Maze, RecursiveTask<List<Integer>>> factory()
+    {
+        return maze -> {
+            PortfolioSolver.Strategy choice;
+            synchronized (this) {
+                if (maze != lastMaze) {
+                    MazeProfile profile = maze.profile();
+                    lastChoice = choose(profile);
+                    lastMaze = maze;
+                    System.out.println("Auto solver: " + lastChoice.name() + " for " + profile);
+                }
+                choice = lastChoice;
+            }
+            return choice.newSolver(maze, new AtomicBoolean());
+        };
+    }
+
+    /**
+     * Returns the selector whose choices take the least time on sample
+     * mazes. Times are compared relative to the fastest candidate on
+     * every maze, so that large mazes do not outweigh the others.
+     * The fork factor is fitted first, as the one that picks the
+     * fastest fork/join solvers, and the two thresholds then by trying
+     * the values of the samples.
+     *
+     * @param profiles   the profiles of the sample mazes
+     * @param millis     the time taken by every candidate, in the order
+     *                   of <code>candidates</code>, on every sample maze
+     * @return           the selector fitted to the samples
+     */
+    public static SolverSelector fit(List<MazeProfile> profiles, double[][] millis)
+    {
+        int n = profiles.size();
+        double[][] relative = new double[n][];
+        for (int m = 0; m < n; m++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (double time: millis[m])
+                best = Math.min(best, time);
+            relative[m] = new double[millis[m].length];
+            for (int c = 0; c < millis[m].length; c++)
+                relative[m][c] = millis[m][c]/best;
+        }
+
+        TreeSet<Double> factors = new TreeSet<>();
+        factors.add(DEFAULT_FORK_FACTOR);
+        for (MazeProfile profile: profiles)
+            for (int forkAfter: FORK_AFTER)
+                factors.add(forkAfter/Math.max(1, profile.meanCorridorLength()));
+        double forkFactor = DEFAULT_FORK_FACTOR;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (double factor: factors) {
+            // as if the fork/join solver were always chosen
+            double cost = total(profiles, relative, factor, Double.POSITIVE_INFINITY, 0);
+            if (cost < bestCost) {
+                bestCost = cost;
+                forkFactor = factor;
+            }
+        }
+
+        TreeSet<Double> openFractions = new TreeSet<>();
+        TreeSet<Double> cellsPerGoal = new TreeSet<>();
+        openFractions.add(Double.POSITIVE_INFINITY);
+        cellsPerGoal.add(Double.POSITIVE_INFINITY);
+        for (MazeProfile profile: profiles) {
+            openFractions.add(profile.openFraction());
+            cellsPerGoal.add(profile.cellsPerGoal());
+        }
+        SolverSelector best = null;
+        bestCost = Double.POSITIVE_INFINITY;
+        // from the highest thresholds, so that ties keep the simpler solvers
+        for (double open: openFractions.descendingSet()) {
+            for (double cells: cellsPerGoal.descendingSet()) {
+                double cost = total(profiles, relative, forkFactor, open, cells);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = new SolverSelector(open, cells, forkFactor);
+                }
+            }
+        }
+        return best;
+    }
+
+    // total relative time of the choices with the given thresholds
+    private static double total(List<MazeProfile> profiles, double[][] relative,
+                                double forkFactor, double jpsOpenFraction, double parallelCellsPerGoal)
+    {
+        double total = 0;
+        for (int m = 0; m < profiles.size(); m++)
+            total += relative[m][choose(profiles.get(m), forkFactor, jpsOpenFraction, parallelCellsPerGoal)];
+        return total;
+    }
+
+    /**
+     * Returns the thresholds of this selector, on one line.
+     *
+     * @return   a description of the selector
+     */
+    @Override
+    public String toString()
+    {
+        return "jps from open fraction " + jpsOpenFraction
+            + ", parallel from " + parallelCellsPerGoal + " cells per goal"
+            + ", forking after " + forkFactor + " x mean corridor length";
+    }
+}
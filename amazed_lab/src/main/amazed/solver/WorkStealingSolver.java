@@ -0,0 +1,305 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Maze;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <code>WorkStealingSolver</code> implements a multi-thread
+ * depth-first search on its own worker threads, whose unit of work is
+ * a cell index rather than a task object.
+ * <p>
+ * Every worker searches depth first from the cells in its own
+ * Chase-Lev deque of <code>int</code>s: it pops a cell from the
+ * bottom, visits it if it is the first to claim it, by a
+ * compare-and-set in a shared bitset, and pushes its neighbors not
+ * visited yet, as <code>PrimitiveSequentialSolver</code> does with a
+ * single stack. A worker whose deque is empty
+ * steals from a victim with cells, chosen at random: it moves up to
+ * half of the victim's cells, oldest first, to its own deque, one
+ * compare-and-set each. Forking a branch thus costs a push, and a
+ * whole batch of branches changes hands per steal.
+ * <p>
+ * Termination is detected with a single counter of the workers that
+ * may hold cells: a worker leaves the count when its deque is empty,
+ * and joins it again before it tries to steal. Since only counted
+ * workers push cells, the search has visited all that it can reach
+ * when the count drops to zero.
+ * <p>
+ * When run in a <code>ForkJoinPool</code>, the solver starts as many
+ * workers as the parallelism of the pool, unless it is given a number
+ * of workers; the thread that runs the solver is one of them.
+ */
+
+public class WorkStealingSolver
+    extends RecursiveTask<List<Integer>>
+{
+    // failed rounds of stealing after which an idle worker yields, and then parks
+    private static final int SPINS = 64;
+    private static final int YIELDS = 128;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Maze maze;
+    private final int workers;
+    private final ThreadFactory threadFactory;
+    private final AtomicBoolean stop;
+
+    private IntDeque[] deques;
+    // visited cells, one bit each
+    private AtomicLongArray visited;
+    // cell from which every pushed cell was last pushed
+    private AtomicIntegerArray predecessor;
+    // workers that may hold cells
+    private final AtomicInteger active = new AtomicInteger();
+    // goal reached first; -1 until then
+    private final AtomicInteger goal = new AtomicInteger(-1);
+    // first exception thrown by a worker; null if none
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, with as many workers as the parallelism
+     * of the pool that runs it.
+     *
+     * @param maze   the maze to be searched
+     */
+    public WorkStealingSolver(Maze maze)
+    {
+        this(maze, 0, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal with a given number of workers, until the
+     * search ends or <code>stop</code> is set. The solver sets
+     * <code>stop</code> itself when it finds a goal.
+     *
+     * @param maze      the maze to be searched
+     * @param workers   the number of worker threads; if
+     *                  <code>workers &lt;= 0</code>, the parallelism of
+     *                  the pool that runs the solver, or the number of
+     *                  processors outside of a pool
+     * @param stop      a flag that cancels the search when set
+     */
+    public WorkStealingSolver(Maze maze, int workers, AtomicBoolean stop)
+    {
+        this(maze, workers, Thread::new, stop);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal with a given number of workers, started as
+     * threads made by <code>threadFactory</code>, until the search
+     * ends or <code>stop</code> is set. The solver names the threads
+     * and makes them daemons.
+     *
+     * @param maze            the maze to be searched
+     * @param workers         the number of worker threads, as in
+     *                        the constructor without factory
+     * @param threadFactory   the factory of the worker threads other
+     *                        than the one that runs the solver
+     * @param stop            a flag that cancels the search when set
+     */
+    public WorkStealingSolver(Maze maze, int workers, ThreadFactory threadFactory,
+                              AtomicBoolean stop)
+    {
+        this.maze = maze;
+        this.workers = workers;
+        this.threadFactory = threadFactory;
+        this.stop = stop;
+    }
+
+    /**
+     * Searches for and returns a path, as a list of node identifiers,
+     * that goes from the start node to a goal node in the maze. If
+     * such a path cannot be found, or the search is stopped, the
+     * method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute()
+    {
+        int startId = maze.start();
+        if (!maze.canReachGoal(startId))
+            return null;
+        int nWorkers = workers > 0 ? workers
+            : inForkJoinPool() ? getPool().getParallelism()
+            : Runtime.getRuntime().availableProcessors();
+        int start = maze.cell(startId);
+        visited = new AtomicLongArray((maze.cells() + 63) >>> 6);
+        predecessor = new AtomicIntegerArray(maze.cells());
+
+        deques = new IntDeque[nWorkers];
+        for (int w = 0; w < nWorkers; w++)
+            deques[w] = new IntDeque();
+        deques[0].push(start);
+        active.set(nWorkers);
+        Thread[] threads = new Thread[nWorkers];
+        for (int w = 1; w < nWorkers; w++) {
+            final int worker = w;
+            threads[w] = threadFactory.newThread(() -> guardedWork(worker));
+            threads[w].setName("amazed-steal-" + w);
+            threads[w].setDaemon(true);
+            threads[w].start();
+        }
+        guardedWork(0);
+        boolean interrupted = false;
+        for (int w = 1; w < nWorkers; w++) {
+            try {
+                threads[w].join();
+            } catch (InterruptedException e) {
+                // the other workers stop on their own: wait for them anyway
+                interrupted = true;
+                stop.set(true);
+                w -= 1;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure.get() != null)
+            throw failure.get();
+        int found = goal.get();
+        return found < 0 ? null : path(start, found);
+    }
+
+    // work, and stop all workers if this one fails, as when the maze
+    // cancels a search past its deadline; the first failure is thrown
+    // by compute once all workers stopped
+    private void guardedWork(int worker)
+    {
+        try {
+            work(worker);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            stop.set(true);
+        }
+    }
+
+    // search from the cells of deque `worker', and of its victims
+    private void work(int worker)
+    {
+        IntDeque own = deques[worker];
+        int[] neighbors = new int[4];
+        int player = -1;
+        while (true) {
+            int cell = own.pop();
+            if (cell == IntDeque.EMPTY) {
+                if (!steal(worker))
+                    return;
+                continue;
+            }
+            if (stop.get())
+                return;
+            if (!visit(cell))
+                continue;
+            if (player < 0)
+                player = maze.newPlayer(maze.cellId(cell));
+            else
+                maze.move(player, maze.cellId(cell));
+            if (maze.isGoalCell(cell)) {
+                if (goal.compareAndSet(-1, cell))
+                    stop.set(true);
+                return;
+            }
+            int count = maze.neighborCells(cell, neighbors);
+            for (int i = 0; i < count; i++) {
+                int next = neighbors[i];
+                if ((visited.get(next >>> 6) & (1L << next)) == 0) {
+                    // a cell pushed by several workers keeps the last
+                    // predecessor, which was visited before the cell
+                    predecessor.set(next, cell);
+                    own.push(next);
+                }
+            }
+        }
+    }
+
+    // mark `cell' visited; return false if it already was
+    private boolean visit(int cell)
+    {
+        long bit = 1L << cell;
+        while (true) {
+            long word = visited.get(cell >>> 6);
+            if ((word & bit) != 0)
+                return false;
+            if (visited.compareAndSet(cell >>> 6, word, word | bit))
+                return true;
+        }
+    }
+
+    // move half of the cells of some victim to the deque of `worker',
+    // which is empty; return false if the search is over
+    private boolean steal(int worker)
+    {
+        active.decrementAndGet();
+        IntDeque own = deques[worker];
+        for (int round = 0; ; round++) {
+            if (stop.get() || active.get() == 0)
+                return false;
+            IntDeque victim = victim(worker);
+            if (victim != null) {
+                active.incrementAndGet();
+                long half = (victim.size() + 1)/2;
+                int stolen = 0;
+                for (int cell; stolen < half && (cell = victim.steal()) != IntDeque.EMPTY; stolen++)
+                    own.push(cell);
+                if (stolen > 0)
+                    return true;
+                active.decrementAndGet();
+            }
+            if (round < SPINS)
+                Thread.onSpinWait();
+            else if (round < YIELDS)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    // deque with cells of another worker, starting at a random one; null if none
+    private IntDeque victim(int worker)
+    {
+        int n = deques.length;
+        int first = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int w = (first + i)%n;
+            if (w != worker && deques[w].size() > 0)
+                return deques[w];
+        }
+        return null;
+    }
+
+    // path from `start' to `end' along the predecessors
+    private List<Integer> path(int start, int end)
+    {
+        int[] cells = new int[16];
+        int size = 0;
+        for (int cell = end; ; cell = predecessor.get(cell)) {
+            if (size == cells.length)
+                cells = Arrays.copyOf(cells, 2*size);
+            cells[size++] = cell;
+            if (cell == start)
+                break;
+        }
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int swap = cells[i];
+            cells[i] = cells[j];
+            cells[j] = swap;
+        }
+        return CompactPath.fromCells(maze, Arrays.copyOf(cells, size)).asList();
+    }
+}